@@ -0,0 +1,180 @@
+// Standard imports:
+import java.util.*;
+
+// Project imports:
+import security.IceKey;
+
+
+/**
+ * This class measures how fast IceKey encrypts compared
+ * to OldIceKey, the version from before the key schedule
+ * and the S-boxes were flattened. Each key is run at the
+ * levels 0, 1 and 2 on the same random key and blocks,
+ * first for a while to warm up and then for the timed
+ * runs. The output of the keys is compared, so a change
+ * that breaks the cipher is seen at once.
+ *
+ * Compile and run from winv/bench/ with:
+ *
+ * <code>javac -classpath ../src -d . *.java</code>
+ * <code>java IceBench [blocks]</code>
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see security.IceKey
+ */
+public class IceBench {
+
+    /**
+     * The default number of 8 byte blocks in a timed run
+     */
+    private static final int BLOCKS = 2000000;
+
+    /**
+     * The number of timed runs, the best one is reported
+     */
+    private static final int RUNS = 5;
+
+
+    /**
+     * Encrypts the blocks with the old key
+     *
+     * @param key the key
+     * @param data the blocks
+     * @param out the array to encrypt to
+     */
+    private static void encryptOld(OldIceKey key, byte[][] data,
+				   byte[][] out) {
+	for (int i = 0; i < data.length; i++)
+	    key.encrypt(data[i], out[i]);
+    }
+
+
+    /**
+     * Encrypts the blocks with the new key, a byte
+     * array at a time just like the old key
+     *
+     * @param key the key
+     * @param data the blocks
+     * @param out the array to encrypt to
+     */
+    private static void encryptBytes(IceKey key, byte[][] data,
+				     byte[][] out) {
+	for (int i = 0; i < data.length; i++)
+	    key.encrypt(data[i], out[i]);
+    }
+
+
+    /**
+     * Encrypts the blocks with the new key, a long at a
+     * time as the counter mode of FrameCipher does
+     *
+     * @param key the key
+     * @param data the blocks
+     * @param out the array to encrypt to
+     */
+    private static void encryptLongs(IceKey key, long[] data, long[] out) {
+	for (int i = 0; i < data.length; i++)
+	    out[i] = key.encrypt(data[i]);
+    }
+
+
+    /**
+     * Converts a time to a throughput
+     *
+     * @param blocks the number of blocks
+     * @param nanos the time it took
+     * @return the throughput in megabytes per second
+     */
+    private static double rate(int blocks, long nanos) {
+	return blocks * 8.0 / (1 << 20) / (nanos / 1e9);
+    }
+
+
+    /**
+     * Runs the benchmark at one level
+     *
+     * @param level the level of the keys
+     * @param blocks the number of blocks
+     * @param random the source of the key and the blocks
+     */
+    private static void run(int level, int blocks, Random random) {
+	OldIceKey oldKey = new OldIceKey(level);
+	IceKey newKey = new IceKey(level);
+	byte[] k = new byte[newKey.keySize()];
+	random.nextBytes(k);
+	oldKey.set(k);
+	newKey.set(k);
+
+	byte[][] data = new byte[blocks][8];
+	byte[][] oldOut = new byte[blocks][8];
+	byte[][] newOut = new byte[blocks][8];
+	long[] longs = new long[blocks];
+	long[] longOut = new long[blocks];
+	for (int i = 0; i < blocks; i++) {
+	    random.nextBytes(data[i]);
+	    for (int j = 0; j < 8; j++)
+		longs[i] = (longs[i] << 8) | (data[i][j] & 0xff);
+	}
+
+	long bestOld = Long.MAX_VALUE;
+	long bestBytes = Long.MAX_VALUE;
+	long bestLongs = Long.MAX_VALUE;
+	for (int run = -1; run < RUNS; run++) {
+	    long start = System.nanoTime();
+	    encryptOld(oldKey, data, oldOut);
+	    long t1 = System.nanoTime();
+	    encryptBytes(newKey, data, newOut);
+	    long t2 = System.nanoTime();
+	    encryptLongs(newKey, longs, longOut);
+	    long t3 = System.nanoTime();
+
+	    // The first run only warms up
+	    if (run >= 0) {
+		bestOld = Math.min(bestOld, t1 - start);
+		bestBytes = Math.min(bestBytes, t2 - t1);
+		bestLongs = Math.min(bestLongs, t3 - t2);
+	    }
+	}
+
+	for (int i = 0; i < blocks; i++) {
+	    long l = 0;
+	    for (int j = 0; j < 8; j++)
+		l = (l << 8) | (oldOut[i][j] & 0xff);
+	    if (!Arrays.equals(oldOut[i], newOut[i]) || l != longOut[i])
+		throw new RuntimeException("Output differs at level " + level +
+					   ", block " + i);
+	}
+
+	System.out.println("level " + level + ":  old " +
+			   format(rate(blocks, bestOld)) + "  new bytes " +
+			   format(rate(blocks, bestBytes)) + "  new longs " +
+			   format(rate(blocks, bestLongs)) + "  MB/s");
+    }
+
+
+    /**
+     * Formats a throughput with one decimal
+     *
+     * @param rate the throughput
+     * @return the string
+     */
+    private static String format(double rate) {
+	return Math.round(rate * 10) / 10.0 + "";
+    }
+
+
+    /**
+     * Runs the benchmark at the levels 0, 1 and 2
+     *
+     * @param args the number of blocks in a run, optional
+     */
+    public static void main(String[] args) {
+	int blocks = args.length > 0 ? Integer.parseInt(args[0]) : BLOCKS;
+	Random random = new Random(17);
+	System.out.println("IceKey, " + blocks + " blocks, best of " +
+			   RUNS + " runs");
+	for (int level = 0; level <= 2; level++)
+	    run(level, blocks, random);
+    }
+}
@@ -7,6 +7,8 @@ import javax.swing.*;
 import java.rmi.*;
 import java.applet.*;
 import java.util.*;
+import java.io.*;
+import java.net.URI;
 
 // Project imports:
 import gui.*;
@@ -15,6 +17,7 @@ import security.*;
 import rmiserver.RMIServerInterface;
 import rmiserver.RMILoginInterface;
 import imageconversion.*;
+import input.*;
 
 /**
  * This is the main class of the client. 
@@ -29,6 +32,11 @@ public class Client extends JApplet {
      */
     private MainFrame gui;
     
+    /**
+     * The host of the server
+     */
+    private String host;
+
     /**
      * A reference to the login server
      */
@@ -39,6 +47,12 @@ public class Client extends JApplet {
      */
     private RMIServerInterface server;
     
+    /**
+     * The queue that sends the mouse and key
+     * events to the server
+     */
+    private InputQueue inputQueue;
+
     /**
      * The image update thread used to repeatedly ask the server 
      * for new images
@@ -54,11 +68,25 @@ public class Client extends JApplet {
      * The image converter used to convert incoming images
      */
     private ImageConverter converter;
+
+    /**
+     * The image converter used to decode the overview. The
+     * overview is decoded by the update thread while the
+     * frames are decoded by the decode stage, and a converter
+     * must only be used by one thread at a time.
+     */
+    private ImageConverter overviewConverter;
         
     /**
-     * The cipher object used to decrypt incoming images
+     * The frame decoder used to patch incoming
+     * tiles into the current image
      */
-    private IceKey decrypter;
+    private FrameDecoder decoder;
+
+    /**
+     * The cipher suite used to decrypt incoming images
+     */
+    private CipherSuite decrypter;
     
     /**
      * A timer for measuring the time between image updates
@@ -83,6 +111,12 @@ public class Client extends JApplet {
      */
     private float JPEGQuality;
 
+    /**
+     * The current color mode
+     * (see ImageConverter.COLOR24 and the following)
+     */
+    private int colorMode;
+
     /**
      * The horisontal position of the top left corner
      * of the current image
@@ -104,6 +138,31 @@ public class Client extends JApplet {
      * The height of the current image
      */
     private int height;
+
+    /**
+     * The size of the remote screen
+     */
+    private Dimension screen;
+
+    /**
+     * The current status of the overview
+     * (false = off / true = on)
+     */
+    private boolean overviewStatus;
+
+    /**
+     * The generation of the image area on the server
+     * that the current image belongs to
+     */
+    private int generation;
+
+    /**
+     * The lock that guards the current image and its
+     * generation while they are read or replaced. The
+     * pixels are not guarded, so a frame can be decoded
+     * while the one before it is painted.
+     */
+    private Object imageLock;
     
 
     /**
@@ -117,12 +176,17 @@ public class Client extends JApplet {
 	
 	try {
 	    loginserver = (RMILoginInterface) Naming.lookup (rmi);
+	    host = new URI(rmi).getHost();
 	} catch(Exception e) {
 	    System.exit(-1);
 	}
 	
 	converter = new ImageConverter();
-	decrypter = new IceKey(0);
+	overviewConverter = new ImageConverter();
+	decoder = new FrameDecoder(converter);
+	imageLock = new Object();
+	screen = new Dimension();
+	overviewStatus = false;
 	gui = new MainFrame(this, http);
     }	
     
@@ -136,14 +200,16 @@ public class Client extends JApplet {
 	try {
 	    server.reset();
 	    Dimension d = server.getScreenSize();
+	    screen = d;
 	    x = 0;
 	    y = 0;
 	    width = (int) d.getWidth();
 	    height = (int) d.getHeight();
-	    img = converter.createBlack(width, height);	
+	    resetImage();
 	} catch(Exception e) {}	
 	
 	iu.restart();	
+	gui.repaintImage();
     }
     
 
@@ -164,51 +230,101 @@ public class Client extends JApplet {
     
 
     /**
-     * Sets the image in the imagePane. 
-     * The byte array is first decrypted if nedded
-     * and then decoded into a BufferedImage.
-     * The image is delta-restored if needed
-     * and finally passed to the gui for 
-     * display.
+     * Decrypts a frame data buffer if needed. This is
+     * the first stage of the FramePipeline, where the
+     * statusbar is also updated.
      *
-     * @param JPEGArray the incoming image data buffer
+     * @param frameArray the incoming frame data buffer
+     * @return the decrypted frame
+     * @throws IOException if the frame is corrupt
      */
-    public synchronized void setImage(byte[] JPEGArray) {
+    public byte[] decryptFrame(byte[] frameArray) throws IOException {
+
+	// Update the statusbar
+	gui.setSize(frameArray.length);
+	long newTime = new Date().getTime();
+	gui.setTime(newTime - timer);
+	timer = newTime;
 
+	if (!encryptionStatus) return frameArray;
+	return decrypter.decrypt(frameArray);
+    }
+
+
+    /**
+     * Decodes the tiles of a decrypted frame, delta
+     * restores them if needed and patches them into
+     * the current image. A moved mouse pointer is
+     * sent to the gui at once.
+     *
+     * @param frameArray the decrypted frame data buffer
+     * @return a Vector with a Rectangle for each updated
+     *         area, or null if nothing was updated
+     * @throws Exception if the frame can't be decoded
+     */
+    public Vector patchFrame(byte[] frameArray) throws Exception {
+	BufferedImage current;
+	synchronized (imageLock) {
+	    current = img;
+	}
+	CursorShape cursor = decoder.getCursor();
+	int cursorx = decoder.getCursorX();
+	int cursory = decoder.getCursorY();
+	Vector updated = decoder.decode(frameArray, frameArray.length,
+					current, deltaStatus);
+
+	// Send a moved mouse pointer to the gui
+	if (cursor != decoder.getCursor() || cursorx != decoder.getCursorX() ||
+	    cursory != decoder.getCursorY())
+	    gui.setPointer(decoder.getCursorX(), decoder.getCursorY(),
+			   decoder.getCursor());
+	return updated.isEmpty() ? null : updated;
+    }
+
+
+    /**
+     * Passes the updated areas of the current
+     * image to the gui for display
+     *
+     * @param areas a Vector with a Rectangle for each updated area
+     */
+    public void paintFrame(Vector areas) {
+	BufferedImage current;
+	synchronized (imageLock) {
+	    current = img;
+	}
+	gui.setImage(current, areas);
+    }
+
+
+    /**
+     * Shows the average time each stage takes
+     * for a frame in the statusbar
+     *
+     * @param fetch the time to fetch a frame
+     * @param decrypt the time to decrypt a frame
+     * @param decode the time to decode a frame
+     * @param paint the time to paint the image
+     */
+    public void setStageTimes(long fetch, long decrypt, long decode,
+			      long paint) {
+	gui.setStageTimes(fetch, decrypt, decode, paint);
+    }
+
+
+    /**
+     * Fetches a new overview of the whole screen and
+     * passes it to the gui. The gui decides the size of
+     * the overview. Nothing happens if the screen hasn't
+     * changed since the last overview.
+     */
+    public void updateOverview() {
 	try {
-	    // Update the statusbar
-	    gui.setSize(JPEGArray.length);
-	    long newTime = new Date().getTime();
-	    gui.setTime( newTime - timer);
-	    timer = newTime;	
-
-	    // Decrypt if needed
-	    if (encryptionStatus) {
-		byte[] plain = new byte[8];
-		byte[] cipher = new byte[8];
-		for (int i = 0; i < JPEGArray.length - 8; i = i + 8) {
-       		    System.arraycopy(JPEGArray, i, cipher, 0, 8);
-		    decrypter.decrypt(cipher, plain);
-		    System.arraycopy(plain, 0, JPEGArray, i, 8);
-		}
-	    }
-	  
-	    // Decode the JPEG image data
-	    BufferedImage newimg = converter.decodeJPEG(JPEGArray);
-	    
-	    // Delta-restore if needed
-	    if (deltaStatus) {
-		BufferedImage tmp = newimg;
-		newimg = converter.restoreDelta(img, newimg);
-		tmp.flush();
-	    }
-	    
-	    // Send to gui and flush old image
-	    BufferedImage tmp = img;
-	    img = newimg;
-	    gui.setImage(img);
-	    tmp.flush();
-		    
+	    Dimension d = gui.getOverviewSize();
+	    byte[] overviewArray = server.getOverview(d.width, d.height);
+	    if (overviewArray.length == 0) return;
+	    if (encryptionStatus) overviewArray = decrypter.decrypt(overviewArray);
+	    gui.setOverview(overviewConverter.decodeJPEG(overviewArray));
 	} catch(Exception e){} // Ignore errors!
     }
     
@@ -216,8 +332,12 @@ public class Client extends JApplet {
      * Performs the client-side login ritual.
      * The incoming login request key is hashed
      * with the password and returned to the server.
+     * A session key is derived from the same key and
+     * the password to decrypt the images with.
      * If the login is successfull a RMIServer is
      * received and an ImageUpdateThread is started.
+     * The images are pushed over a stream if the
+     * server offers one.
      *
      * @param username the username
      * @param password the password
@@ -226,8 +346,10 @@ public class Client extends JApplet {
     public boolean login(String username, String password) {
 	
 	// Perform the login
+	byte[] sessionKey;
 	try {
 	    byte[] key = loginserver.loginrequest();
+	    sessionKey = PasswordHash.sessionKey(key, password);
 	    byte[] hash = PasswordHash.hash(key, password);
 	    server = loginserver.login(username, hash);
         }
@@ -235,31 +357,43 @@ public class Client extends JApplet {
 	    return false; // Return false if login failed
         }
 
+	// Use the same cipher suite as the server
+	try {
+	    decrypter = CipherSuite.getInstance(server.getCipherSuite(), sessionKey);
+	} catch(Exception e) {
+	    logout();
+	    return false;
+	}
+
 	try {
 	    // Get settings from server
 	    deltaStatus = server.getDeltaStatus();
 	    encryptionStatus = server.getEncryptionStatus();
 	    JPEGQuality = server.getJPEGQuality();
+	    colorMode = server.getColorMode();
 
 	    // Reset server and initialize the image
 	    server.reset();
 	    Dimension d = server.getScreenSize();
+	    screen = d;
 	    x = 0;
 	    y = 0;
 	    width = (int) d.getWidth();
 	    height = (int) d.getHeight();
-	    img = converter.createBlack(width, height);	
+	    resetImage();
 	} catch (Exception e) {} // Ignore errors!		  
 	
-	// Initialize the decrypter with the password
-	byte[] passwd = password.getBytes();
-	byte[] key = new byte[8];
-        for (int i = 0; i < 8; i++)
-	    key[i] = passwd[i % passwd.length];
-	decrypter.set(key);
-	
-	// Start an ImageUpdateThread
-	iu = new ImageUpdateThread(this, server);
+	// Start sending the input events, or give up the
+	// login if the input object can't be reached
+	try {
+	    inputQueue = new InputQueue(server.getInput());
+	} catch(Exception e) {
+	    logout();
+	    return false;
+	}
+
+	// Start an ImageUpdateThread, with a stream if there is one
+	iu = new ImageUpdateThread(this, server, openStream());
 	
 	// Reset the timer
 	timer = new Date().getTime();	
@@ -269,10 +403,30 @@ public class Client extends JApplet {
     }
     
 
+    /**
+     * Connects to the stream of the server if the
+     * user has it turned on
+     *
+     * @return the receiver of the stream, or null if the
+     *         images are to be fetched by RMI
+     */
+    private FrameReceiver openStream() {
+	try {
+	    int port = server.openStream();
+	    if (port == 0) return null;
+	    return new FrameReceiver(host, port, server.getStreamTicket());
+	} catch(Exception e) {
+	    return null;
+	}
+    }
+
+
     /**
      * Logs out the user
      */
     public void logout() {
+	if (inputQueue != null) inputQueue.close();
+	if (iu != null) iu.shutdown();
 	try {
 	    // Tell the server we're logging out
 	    server.logout();
@@ -299,22 +453,59 @@ public class Client extends JApplet {
 	    // Tell the server about the new area
 	    server.setArea(nx, ny, nwidth, nheight);
 	    
-	    // Flush the current image and create a new one
-	    img.flush();
- 	    img = converter.createBlack(nwidth, nheight);
-	    
 	    // Set the new image size
 	    x = nx;
 	    y = ny;
             height = nheight;
 	    width = nwidth;
+
+	    // Return the current image to the pool and create a new one
+	    resetImage();
 	    
 	    // Restart the image update thread
 	    iu.restart();
+
+	    // The old area and its outline are repainted away
+	    gui.repaintImage();
 	} catch(Exception e) {} // Ignore errors!		
     }
 
 
+    /**
+     * Replaces the current image with a black one. This
+     * is done each time the server has been told to start
+     * over with a black image, so that the frames are delta
+     * restored against the same image on both sides. The
+     * new generation of the image area is fetched so that
+     * frames encoded before can be told apart.
+     */
+    public void resetImage() {
+	int g = getGeneration();
+	try {
+	    g = server.getGeneration();
+	} catch (Exception e) {} // Ignore errors!
+	synchronized (imageLock) {
+	    ImagePool.getInstance().release(img);
+	    img = converter.createBlack(width, height);
+	    generation = g;
+	}
+    }
+
+
+    /**
+     * Gets the generation of the image area on the
+     * server that the current image belongs to
+     *
+     * @return the generation
+     * @see rmiserver.RMIServer#getGeneration
+     */
+    public int getGeneration() {
+	synchronized (imageLock) {
+	    return generation;
+	}
+    }
+
+
     /**
      * Sets the status bar status string
      *
@@ -365,69 +556,69 @@ public class Client extends JApplet {
     public int getHeight() {
 	return height;
     }
+
+
+    /**
+     * Gets the size of the remote screen
+     *
+     * @return the size of the screen
+     */
+    public Dimension getScreenSize() {
+	return screen;
+    }
     
     
     /**
-     * Forwards a mousePressed event to
-     * the server
+     * Queues a mousePressed event to be
+     * sent to the server
      *
      * @param e the MouseEvent to pass to the server
      */
     public void mousePressed(MouseEvent e) {
-	try {
-	    server.mousePressed(e);
-	} catch (Exception x) {}
+	inputQueue.add(InputRecord.mouse(InputRecord.PRESS, e));
     }
     
     /**
-     * Forwards a mouseReleased event to
-     * the server
+     * Queues a mouseReleased event to be
+     * sent to the server
      *
      * @param e the MouseEvent to pass to the server
      */
     public void mouseReleased(MouseEvent e) {
-	try {
-	    server.mouseReleased(e);
-	} catch (Exception x) {}
+	inputQueue.add(InputRecord.mouse(InputRecord.RELEASE, e));
     }
     
 
     /**
-     * Forwards a mouseMoved event to
-     * the server
+     * Queues a mouseMoved event to be
+     * sent to the server
      *
      * @param e the MouseEvent to pass to the server
      */
     public void mouseMoved(MouseEvent e) {
-	try {
-	    server.mouseMoved(e);
-	} catch (Exception x) {}
+	inputQueue.add(InputRecord.mouse(InputRecord.MOVE, e));
     }
     
 
     /**
-     * Forwards a keyPressed event to
-     * the server
+     * Queues a keyPressed event to be
+     * sent to the server
      *
      * @param e the KeyEvent to pass to the server
      */
     public void keyPressed(KeyEvent e) {
-	try {
-	    server.keyPressed(e);
-	} catch (Exception x) {}
+	inputQueue.add(InputRecord.key(InputRecord.KEYPRESS, e));
     }
 
     
     /**
-     * Forwards a keyReleased event to
-     * the server
+     * Queues a keyReleased event to be
+     * sent to the server
      *
      * @param e the KeyEvent to pass to the server
      */
     public void keyReleased(KeyEvent e) {
-	try {
-	    server.keyReleased(e);
-	} catch (Exception x) {}
+	inputQueue.add(InputRecord.key(InputRecord.KEYRELEASE, e));
     }
     
     
@@ -441,7 +632,7 @@ public class Client extends JApplet {
 	deltaStatus = b;
 	try {
 	    server.setDeltaStatus(b);
-	    img = converter.createBlack(width, height);
+	    resetImage();
 	} catch (Exception e) {}
     }
    
@@ -502,4 +693,51 @@ public class Client extends JApplet {
     public float getJPEGQuality() {
 	return JPEGQuality;
     }
+
+
+    /**
+     * Sets both server side and client side
+     * color mode
+     *
+     * @param mode the new color mode
+     */
+    public void setColorMode(int mode) {
+	colorMode = mode;
+	try {
+	    server.setColorMode(mode);
+	} catch (Exception e) {}
+    }
+
+
+    /**
+     * Gets the current color mode
+     *
+     * @return the current color mode
+     */
+    public int getColorMode() {
+	return colorMode;
+    }
+
+
+    /**
+     * Turns the overview of the whole screen on or off.
+     * It is fetched now and then by the image update thread
+     * and shown around the image area.
+     *
+     * @param b the boolean value of the new overview status
+     */
+    public void setOverviewStatus(boolean b) {
+	overviewStatus = b;
+	gui.showOverview(b);
+    }
+
+
+    /**
+     * Gets the current overview status
+     *
+     * @return the current overview status
+     */
+    public boolean getOverviewStatus() {
+	return overviewStatus;
+    }
 }
@@ -62,6 +62,8 @@ public class WinV {
 		    registryport = Integer.parseInt(args[++i]);
 		else if (args[i].equals("-normi"))
 		    rmiregistry = false;	
+		else if (args[i].equals("-fps") && i < args.length - 1)
+		    CaptureService.setFrameRate(Integer.parseInt(args[++i]));
 		else if (args[i].equals("-adduser")) {
 		    addUser();
 		}
@@ -27,16 +27,10 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
 						   KeyListener {
     
     /**
-     * The smallest interval between two
-     * forwarded mouse move events
+     * The overview is this many times smaller than
+     * the screen unless the view is zoomed to fit
      */
-    private static long interval = 100; // 100 ms
-    
-    /**
-     * Static variable for setting the maximum
-     * size of the imagepanel
-     */
-    private static int MAXDIM = 2000;
+    private static int OVERVIEWSCALE = 4;
     
     /**
      * The client that owns the gui
@@ -44,21 +38,17 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
     private Client client;
 
     /**
-     * The main image
+     * The canvas that the received areas are drawn
+     * to, as large as the remote screen. It is null
+     * until the first image is received.
      */
     private BufferedImage img;
 
     /**
-     * A representation of the time when
-     * the last mouse move event was recoreded
+     * The lock that guards the canvas, since it is drawn
+     * to by the paint stage and painted by the event thread
      */
-    private long lastmove;
-
-    /**
-     * An ImageConverter that is used 
-     * to create black images
-     */
-    private ImageConverter converter;
+    private Object canvasLock;
 
     /**
      * boolean that indicates weather a 
@@ -88,6 +78,62 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
      */
     private int outlineheight;
 
+    /**
+     * The shape of the remote mouse pointer
+     */
+    private CursorShape pointer;
+
+    /**
+     * The horisontal position of the remote
+     * mouse pointer as reported by the server
+     */
+    private int pointerx;
+
+    /**
+     * The vertical position of the remote
+     * mouse pointer as reported by the server
+     */
+    private int pointery;
+
+    /**
+     * The horisontal position of the local mouse
+     */
+    private int localx;
+
+    /**
+     * The vertical position of the local mouse
+     */
+    private int localy;
+
+    /**
+     * boolean that tells if the local mouse
+     * is inside the image panel
+     */
+    private boolean inside;
+
+    /**
+     * An invisible cursor that hides the local
+     * mouse pointer
+     */
+    private Cursor blankCursor;
+
+    /**
+     * The last overview of the whole screen
+     */
+    private BufferedImage overview;
+
+    /**
+     * boolean that tells if the overview is shown
+     * around the image area
+     */
+    private boolean overviewStatus;
+
+    /**
+     * boolean that tells if the whole screen is
+     * scaled to fit in the panel
+     */
+    private boolean zoom;
+
 
     /**
      * The constructor
@@ -97,23 +143,68 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
     public ImagePanel(Client c) {
 	super();
 	client = c;
+	canvasLock = new Object();
 	movingoutline = false;
 	addMouseMotionListener(this);
 	addMouseListener(this);
 	addKeyListener(this);
-	lastmove = new Date().getTime();
-	converter = new ImageConverter();
-	img = converter.createBlack(MAXDIM, MAXDIM);
+	inside = false;
+	overviewStatus = false;
+	zoom = false;
+
+	// The remote mouse pointer is drawn instead of the local one
+	BufferedImage blank = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+	blankCursor = Toolkit.getDefaultToolkit().createCustomCursor(blank,
+						new Point(0, 0), "none");
+	setCursor(blankCursor);
     }
     
     /**
      * Paints the imagePanel by drawing the 
-     * image and any outlines
+     * image and any outlines. If the overview is shown
+     * it is drawn first and only the image area on top.
+     * Only the part of the image inside the clip is
+     * drawn, which is the repainted area or the part
+     * that shows in the scroll pane.
      *
      * @param g the Graphics object to draw to
      */
     public void paint(Graphics g) {
-	g.drawImage(img, 0, 0, this);
+	Graphics2D g2 = (Graphics2D) g;
+	double scale = getScale();
+	if (scale != 1.0) {
+	    g.setColor(getBackground());
+	    g.fillRect(0, 0, getWidth(), getHeight());
+	    g2.scale(scale, scale);
+	}
+
+	// The clip in screen coordinates
+	Rectangle clip = g.getClipBounds();
+	if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+	synchronized (canvasLock) {
+	    Rectangle drawn = new Rectangle();
+	    if (img != null) drawn.setSize(img.getWidth(), img.getHeight());
+
+	    if (overviewStatus && overview != null) {
+		Dimension screen = client.getScreenSize();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(overview, 0, 0, screen.width, screen.height, this);
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		drawn = drawn.intersection(new Rectangle(client.getx(),
+							 client.gety(),
+							 client.getWidth(),
+							 client.getHeight()));
+		drawCanvas(g, drawn.intersection(clip));
+	    } else {
+		if (!drawn.contains(clip)) {
+		    g.setColor(getBackground());
+		    g.fillRect(clip.x, clip.y, clip.width, clip.height);
+		}
+		drawCanvas(g, drawn.intersection(clip));
+	    }
+	}
 	g.setColor(Color.red);
 	
 	if (movingoutline) {
@@ -123,6 +214,188 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
 	    g.drawRect(client.getx(), client.gety(), client.getWidth() - 1, 
 		       client.getHeight() - 1);
 	}
+
+	// Draw the mouse pointer at the local mouse position if
+	// possible so that it moves without waiting for the server
+	if (pointer != null) {
+	    Rectangle r = getPointerBounds();
+	    g.drawImage(pointer.getImage(), r.x, r.y, this);
+	}
+    }
+
+
+    /**
+     * Draws a part of the canvas at the same position
+     * on the panel. The canvas lock must be held.
+     *
+     * @param g the Graphics object to draw to
+     * @param r the part to draw, in screen coordinates
+     */
+    private void drawCanvas(Graphics g, Rectangle r) {
+	if (img == null || r.isEmpty()) return;
+	g.drawImage(img, r.x, r.y, r.x + r.width, r.y + r.height,
+		    r.x, r.y, r.x + r.width, r.y + r.height, this);
+    }
+
+
+    /**
+     * Sets the position and shape of the remote mouse pointer
+     *
+     * @param x the horisontal position of the pointer
+     * @param y the vertical position of the pointer
+     * @param shape the shape of the pointer
+     */
+    public void setPointer(int x, int y, CursorShape shape) {
+	if (pointer != null) repaintArea(getPointerBounds());
+	pointerx = x;
+	pointery = y;
+	pointer = shape;
+	if (pointer != null) repaintArea(getPointerBounds());
+    }
+
+
+    /**
+     * Gets the area covered by the mouse pointer. The local
+     * mouse position is used while the mouse is inside
+     * the image panel.
+     *
+     * @return the area of the pointer
+     */
+    private Rectangle getPointerBounds() {
+	int x = inside ? localx : pointerx;
+	int y = inside ? localy : pointery;
+	return new Rectangle(x - pointer.getHotX(), y - pointer.getHotY(),
+			     pointer.getWidth(), pointer.getHeight());
+    }
+
+
+    /**
+     * Shows or hides the local mouse pointer. It is shown
+     * while other listeners than this object handles the
+     * mouse, and the remote pointer is then drawn at
+     * the position reported by the server.
+     *
+     * @param b true if the local pointer shall be shown
+     */
+    public void showLocalPointer(boolean b) {
+	if (b) {
+	    setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
+	    moveLocalPointer(localx, localy, false);
+	} else {
+	    setCursor(blankCursor);
+	}
+    }
+
+
+    /**
+     * Moves the locally drawn mouse pointer
+     *
+     * @param x the new horisontal position
+     * @param y the new vertical position
+     * @param in true if the mouse is inside the image panel
+     */
+    private void moveLocalPointer(int x, int y, boolean in) {
+	if (pointer != null) repaintArea(getPointerBounds());
+	localx = x;
+	localy = y;
+	inside = in;
+	if (pointer != null) repaintArea(getPointerBounds());
+    }
+
+
+    /**
+     * Repaints an area given in screen coordinates
+     *
+     * @param r the area to repaint
+     */
+    private void repaintArea(Rectangle r) {
+	double scale = getScale();
+	repaint((int) (r.x * scale) - 1, (int) (r.y * scale) - 1,
+		(int) Math.ceil(r.width * scale) + 2,
+		(int) Math.ceil(r.height * scale) + 2);
+    }
+
+
+    /**
+     * Gets the factor that the screen is scaled by
+     *
+     * @return the factor, 1.0 unless the view is zoomed to fit
+     */
+    private double getScale() {
+	Dimension screen = client.getScreenSize();
+	if (!zoom || screen == null || screen.width == 0 || screen.height == 0)
+	    return 1.0;
+	return Math.min(1.0, Math.min((double) getWidth() / screen.width,
+				      (double) getHeight() / screen.height));
+    }
+
+
+    /**
+     * Converts a mouse event on the panel to screen
+     * coordinates. This only changes anything when
+     * the view is zoomed to fit.
+     *
+     * @param e the incoming MouseEvent
+     * @return a MouseEvent at the position on the screen
+     */
+    public MouseEvent toScreen(MouseEvent e) {
+	double scale = getScale();
+	if (scale == 1.0) return e;
+	return new MouseEvent((Component) e.getSource(), e.getID(), e.getWhen(),
+			      e.getModifiers(), (int) (e.getX() / scale),
+			      (int) (e.getY() / scale), e.getClickCount(),
+			      e.isPopupTrigger());
+    }
+
+
+    /**
+     * Shows or hides the overview of the whole screen
+     * around the image area
+     *
+     * @param b true if the overview shall be shown
+     */
+    public void showOverview(boolean b) {
+	overviewStatus = b;
+	repaint();
+    }
+
+
+    /**
+     * Turns zoom to fit on or off. When it is on the whole
+     * screen is scaled to fit in the panel and the mouse
+     * events are scaled back to screen coordinates.
+     *
+     * @param b true if the view shall be zoomed to fit
+     */
+    public void setZoomToFit(boolean b) {
+	zoom = b;
+	repaint();
+    }
+
+
+    /**
+     * Gets the size that the overview should be fetched
+     * in. When the view is zoomed to fit this is the size
+     * it is shown in, so the server does all the scaling.
+     *
+     * @return the size of the overview
+     */
+    public Dimension getOverviewSize() {
+	Dimension screen = client.getScreenSize();
+	double scale = zoom ? getScale() : 1.0 / OVERVIEWSCALE;
+	return new Dimension((int) Math.ceil(screen.width * scale),
+			     (int) Math.ceil(screen.height * scale));
+    }
+
+
+    /**
+     * Sets a new overview of the whole screen
+     *
+     * @param newOverview the overview, any size
+     */
+    public void setOverview(BufferedImage newOverview) {
+	overview = newOverview;
+	if (overviewStatus) repaint();
     }
     
     
@@ -140,21 +413,75 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
 	outlinewidth = width;
 	outlineheight = height;
 	movingoutline = true;
-	repaint(new Rectangle(0, 0, MAXDIM, MAXDIM));
+	repaint();
     }
 
     
     /**
-     * Draws the image and repaints the imagePanel
+     * Draws the updated areas of the image area to the
+     * canvas and repaints only them. The whole image area
+     * is drawn when the canvas is new.
      *
-     * @param newImg the image to draw
+     * @param newImg the image of the image area
+     * @param areas a Vector with a Rectangle for each
+     *        updated area, in image area coordinates
      */
-    public void setImage(BufferedImage newImg) {
-	Graphics g = img.getGraphics();
+    public void setImage(BufferedImage newImg, Vector areas) {
 	int x = client.getx();
 	int y = client.gety();
-	g.drawImage(newImg, x, y, this);
-	repaint(0, 0, MAXDIM, MAXDIM);
+
+	// The configuration takes the tree lock, so it is
+	// fetched before the canvas lock is taken
+	GraphicsConfiguration gc = getGraphicsConfiguration();
+	synchronized (canvasLock) {
+	    if (createCanvas(gc)) {
+		areas = new Vector();
+		areas.addElement(new Rectangle(0, 0, newImg.getWidth(),
+					       newImg.getHeight()));
+	    }
+	    Graphics g = img.getGraphics();
+	    for (int i = 0; i < areas.size(); i++) {
+		Rectangle r = (Rectangle) areas.elementAt(i);
+		g.drawImage(newImg, x + r.x, y + r.y,
+			    x + r.x + r.width, y + r.y + r.height,
+			    r.x, r.y, r.x + r.width, r.y + r.height, null);
+		repaintArea(new Rectangle(x + r.x, y + r.y, r.width, r.height));
+	    }
+	    g.dispose();
+	}
+    }
+
+
+    /**
+     * Creates a canvas as large as the remote screen if
+     * there is none or the screen has changed size. The
+     * canvas is an image that is compatible with the
+     * display, so that it can be kept in video memory.
+     * The old canvas is drawn on the new one. The canvas
+     * lock must be held.
+     *
+     * @param gc the configuration of the display, or null
+     * @return true if a new canvas was created
+     */
+    private boolean createCanvas(GraphicsConfiguration gc) {
+	Dimension screen = client.getScreenSize();
+	if (img != null && img.getWidth() == screen.width &&
+	    img.getHeight() == screen.height)
+	    return false;
+	BufferedImage canvas;
+	if (gc != null)
+	    canvas = gc.createCompatibleImage(screen.width, screen.height);
+	else
+	    canvas = new BufferedImage(screen.width, screen.height,
+				       BufferedImage.TYPE_INT_RGB);
+	if (img != null) {
+	    Graphics g = canvas.getGraphics();
+	    g.drawImage(img, 0, 0, null);
+	    g.dispose();
+	}
+	img = canvas;
+	repaint();
+	return true;
     }
 
 
@@ -187,16 +514,20 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
      */
     public void mouseEntered(MouseEvent e) {
 	requestFocus();
+	e = toScreen(e);
+	moveLocalPointer(e.getX(), e.getY(), true);
     }
 
 
     /**
      * Called when the mousepointer leaves the image panel.
-     * Does nothing
+     * The mouse pointer is drawn at the remote position again
      *
      * @param e the incoming MouseEvent
      */
     public void mouseExited(MouseEvent e) {
+	e = toScreen(e);
+	moveLocalPointer(e.getX(), e.getY(), false);
     }
 
             
@@ -209,7 +540,7 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
      */
     public void mousePressed(MouseEvent e) {
 	requestFocus();
-	client.mousePressed(e);
+	client.mousePressed(toScreen(e));
     }
 
             
@@ -221,7 +552,7 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
      * @param e the incoming MouseEvent
      */
     public void mouseReleased(MouseEvent e) {
-	client.mouseReleased(e);
+	client.mouseReleased(toScreen(e));
     }
 
     
@@ -238,19 +569,16 @@ public class ImagePanel extends JPanel implements  MouseInputListener,
 
     /**
      * Called when the user moves the mouse on the 
-     * image panel. Checks if enough time has passed
-     * since the last forwarded move before it 
-     * sends the move to the server via the client
+     * image panel. The mouse pointer is moved at once
+     * and the move is sent to the server via the client,
+     * which batches the moves
      *
      * @param e the incoming MouseEvent
      */
     public void mouseMoved(MouseEvent e) {
-
-	long now = new Date().getTime();
-	if (now - lastmove > interval) {
-	    client.mouseMoved(e);
-	    lastmove = now;
-	}
+	e = toScreen(e);
+	moveLocalPointer(e.getX(), e.getY(), true);
+	client.mouseMoved(e);
     }
 
 
@@ -66,6 +66,7 @@ public class LockingAdapter extends MouseInputAdapter {
      */
     public void activate() {
 	client.pause();
+	imagePane.showLocalPointer(true);
 	imagePane.removeMouseMotionListener(imagePane);
 	imagePane.removeMouseListener(imagePane);
 	imagePane.addMouseMotionListener(this);
@@ -79,6 +80,7 @@ public class LockingAdapter extends MouseInputAdapter {
      * @param e the incoming mouse event
      */
     public void mousePressed(MouseEvent e) {
+	e = imagePane.toScreen(e);
 	x1 = e.getX();
 	y1 = e.getY();
     }
@@ -91,6 +93,7 @@ public class LockingAdapter extends MouseInputAdapter {
      */
     public void mouseDragged(MouseEvent e) {
 	
+	e = imagePane.toScreen(e);
 	int x2 = e.getX();
 	int y2 = e.getY();
 	int x1t = x1;
@@ -115,6 +118,7 @@ public class LockingAdapter extends MouseInputAdapter {
      * @param e the incoming mouse event
      */
     public void mouseReleased(MouseEvent e) {
+	e = imagePane.toScreen(e);
 	int x2 = e.getX();
 	int y2 = e.getY();
 	if (x2 < x1) {
@@ -135,7 +139,11 @@ public class LockingAdapter extends MouseInputAdapter {
 	imagePane.removeMouseListener(this);
 	imagePane.addMouseMotionListener(imagePane);
 	imagePane.addMouseListener(imagePane);
+	imagePane.showLocalPointer(false);
 	client.restart();
+
+	// The last outline is repainted away
+	imagePane.repaint();
     }
 }
 
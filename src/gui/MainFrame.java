@@ -7,8 +7,10 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.*;
 import java.net.*;
+import java.util.Vector;
 
 // Project imports:
+import imageconversion.*;
 import Client;
 
 /**
@@ -79,6 +81,16 @@ public class MainFrame extends JFrame implements ActionListener{
      */
     private JButton lockButton;
 
+    /**
+     * The overview button
+     */
+    private JToggleButton overviewButton;
+
+    /**
+     * The zoom to fit button
+     */
+    private JToggleButton zoomButton;
+
     /**
      * The error icon
      */
@@ -145,6 +157,7 @@ public class MainFrame extends JFrame implements ActionListener{
 		settingsDialog.setDeltaStatus(client.getDeltaStatus());
 		settingsDialog.setEncryptionStatus(client.getEncryptionStatus());
 		settingsDialog.setJPEGQuality(client.getJPEGQuality());
+		settingsDialog.setColorMode(client.getColorMode());
 		imagePane.setPreferredSize(new Dimension(client.getWidth(), client.getHeight()));
 		imageScrollPane.update(imageScrollPane.getGraphics());
 	    } else {
@@ -170,6 +183,7 @@ public class MainFrame extends JFrame implements ActionListener{
 	    enableButtons(false);
 	    setTime(0);
 	    setSize(0);
+	    setStageTimes(0, 0, 0, 0);
 	    setStatus("");
 	    client.logout();
             loginDialog.reset();
@@ -210,6 +224,31 @@ public class MainFrame extends JFrame implements ActionListener{
 	if (event.getActionCommand() == "MAIN_LOCK") {
 	    lockingAdapter.activate();
 	}
+
+	// Main overview button
+	if (event.getActionCommand() == "MAIN_OVERVIEW") {
+	    if (!overviewButton.isSelected() && zoomButton.isSelected()) {
+		zoomButton.setSelected(false);
+		imagePane.setZoomToFit(false);
+		imagePane.setPreferredSize(new Dimension(client.getWidth(), client.getHeight()));
+		imageScrollPane.revalidate();
+	    }
+	    client.setOverviewStatus(overviewButton.isSelected());
+	}
+
+	// Main zoom to fit button, the zoomed view is
+	// drawn on top of an overview scaled by the server
+	if (event.getActionCommand() == "MAIN_ZOOM") {
+	    if (zoomButton.isSelected()) {
+		overviewButton.setSelected(true);
+		imagePane.setPreferredSize(new Dimension(0, 0));
+	    } else {
+		imagePane.setPreferredSize(new Dimension(client.getWidth(), client.getHeight()));
+	    }
+	    imagePane.setZoomToFit(zoomButton.isSelected());
+	    client.setOverviewStatus(overviewButton.isSelected());
+	    imageScrollPane.revalidate();
+	}
 	
 	// Settings ok button
 	if (event.getActionCommand() == "SETTINGS_OK") {
@@ -219,6 +258,7 @@ public class MainFrame extends JFrame implements ActionListener{
             client.setDeltaStatus(settingsDialog.getDeltaStatus());
 	    client.setEncryptionStatus(settingsDialog.getEncryptionStatus());
 	    client.setJPEGQuality(settingsDialog.getJPEGQuality());
+	    client.setColorMode(settingsDialog.getColorMode());
 	    client.restart();
 	}	
 
@@ -230,6 +270,7 @@ public class MainFrame extends JFrame implements ActionListener{
             settingsDialog.setDeltaStatus(client.getDeltaStatus());
 	    settingsDialog.setEncryptionStatus(client.getEncryptionStatus());
 	    settingsDialog.setJPEGQuality(client.getJPEGQuality());
+	    settingsDialog.setColorMode(client.getColorMode());
 	}
     }
     
@@ -246,20 +287,77 @@ public class MainFrame extends JFrame implements ActionListener{
 	resetButton.setEnabled(b);
 	pauseButton.setEnabled(b);
 	lockButton.setEnabled(b);
+	overviewButton.setEnabled(b);
+	zoomButton.setEnabled(b);
     }
     
     
     /**
-     * Forwards a new image to the image pane
+     * Forwards the updated areas of a new image
+     * to the image pane
      *
      * @param newImage the new image
+     * @param areas a Vector with a Rectangle for each updated area
      */
-    public void setImage (BufferedImage newImage) {
-	imagePane.setImage(newImage);
+    public void setImage (BufferedImage newImage, Vector areas) {
+	imagePane.setImage(newImage, areas);
 	
     }
+
+
+    /**
+     * Repaints the whole image pane. This is done
+     * when the image area has changed, since only
+     * the updated areas are repainted otherwise.
+     */
+    public void repaintImage() {
+	imagePane.repaint();
+    }
+
+
+    /**
+     * Forwards a new overview of the whole screen
+     * to the image pane
+     *
+     * @param newOverview the new overview
+     */
+    public void setOverview (BufferedImage newOverview) {
+	imagePane.setOverview(newOverview);
+    }
+
+
+    /**
+     * Shows or hides the overview in the image pane
+     *
+     * @param b true if the overview shall be shown
+     */
+    public void showOverview (boolean b) {
+	imagePane.showOverview(b);
+    }
+
+
+    /**
+     * Gets the size the image pane wants the overview in
+     *
+     * @return the size of the overview
+     */
+    public Dimension getOverviewSize () {
+	return imagePane.getOverviewSize();
+    }
     
     
+    /**
+     * Forwards the remote mouse pointer to the image pane
+     *
+     * @param x the horisontal position of the pointer
+     * @param y the vertical position of the pointer
+     * @param shape the shape of the pointer
+     */
+    public void setPointer (int x, int y, CursorShape shape) {
+	imagePane.setPointer(x, y, shape);
+    }
+
+
     /**
      * Sets the status string in the status bar
      *
@@ -294,6 +392,23 @@ public class MainFrame extends JFrame implements ActionListener{
 	statusBar.timeLabel.setPreferredSize(d);
     }
 
+
+    /**
+     * Sets the stage times in the status bar
+     *
+     * @param fetch the time to fetch a frame in milliseconds
+     * @param decrypt the time to decrypt a frame in milliseconds
+     * @param decode the time to decode a frame in milliseconds
+     * @param paint the time to paint the image in milliseconds
+     */
+    public void setStageTimes(long fetch, long decrypt, long decode,
+			      long paint) {
+	Dimension d = statusBar.stageLabel.getPreferredSize();
+	statusBar.stageLabel.setText(" Stages: " + fetch + "/" + decrypt +
+				     "/" + decode + "/" + paint + "ms");
+	statusBar.stageLabel.setPreferredSize(d);
+    }
+
     /**
      * The constructor initializes the entire gui
      *
@@ -310,6 +425,7 @@ public class MainFrame extends JFrame implements ActionListener{
 	statusBar = new StatusBar();
 	setTime(0);
 	setSize(0);
+	setStageTimes(0, 0, 0, 0);
 	setStatus("");
 	
 	// Load the images	
@@ -355,12 +471,26 @@ public class MainFrame extends JFrame implements ActionListener{
 	lockButton.setActionCommand("MAIN_LOCK");
 	lockButton.addActionListener(this);
 
+	// The overview button
+	overviewButton = new JToggleButton("Overview");
+	overviewButton.setToolTipText("Show the whole screen around the locked area");
+	overviewButton.setActionCommand("MAIN_OVERVIEW");
+	overviewButton.addActionListener(this);
+
+	// The zoom to fit button
+	zoomButton = new JToggleButton("Fit");
+	zoomButton.setToolTipText("Zoom to fit");
+	zoomButton.setActionCommand("MAIN_ZOOM");
+	zoomButton.addActionListener(this);
+
 	// The toolbar
 	toolbar = new JToolBar();
 	toolbar.add(exitButton);
 	toolbar.add(pauseButton);
 	toolbar.add(resetButton);
 	toolbar.add(lockButton);
+	toolbar.add(overviewButton);
+	toolbar.add(zoomButton);
 	toolbar.add(settingsButton);
 
 	// The imagepane
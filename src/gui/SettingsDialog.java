@@ -47,6 +47,16 @@ public class SettingsDialog extends JDialog {
      * The quality slider label
      */
     private JSlider qualitySlider;
+
+    /**
+     * The color mode label
+     */
+    private JLabel colorLabel;
+
+    /**
+     * The color mode combo box
+     */
+    private JComboBox colorComboBox;
     
     /**
      * The ok button
@@ -115,6 +125,24 @@ public class SettingsDialog extends JDialog {
     public float getJPEGQuality() {
 	return (float) qualitySlider.getValue() / 10.0f;
     }
+
+    /**
+     * Sets the selected color mode
+     *
+     * @param mode the color mode
+     */
+    public void setColorMode(int mode) {
+	colorComboBox.setSelectedIndex(mode);
+    }
+
+    /**
+     * Gets the selected color mode
+     *
+     * @return the color mode
+     */
+    public int getColorMode() {
+	return colorComboBox.getSelectedIndex();
+    }
     
     /**
      * The constructor creates the settings dialog
@@ -198,6 +226,28 @@ public class SettingsDialog extends JDialog {
 	gridbagLayout.setConstraints(qualitySlider, constraints);
 	dialogPane.add(qualitySlider);
 	
+	// New constraints
+	constraints.anchor = GridBagConstraints.WEST;
+	constraints.insets = new Insets(10,0,0,5);
+	constraints.gridwidth = 1;
+
+	// The color mode label
+	colorLabel = new JLabel("Colors");
+	colorLabel.setToolTipText("Fewer colors gives faster update");
+	colorLabel.setForeground(Color.black);
+	gridbagLayout.setConstraints(colorLabel, constraints);
+	dialogPane.add(colorLabel);
+
+	// The color mode combo box, in the order of the color modes
+	colorComboBox = new JComboBox(new String[] {"Full color (24 bit)",
+						    "High color (16 bit)",
+						    "256 colors (8 bit)",
+						    "Grayscale"});
+	colorComboBox.setToolTipText("Fewer colors gives faster update");
+	constraints.gridwidth = GridBagConstraints.REMAINDER;
+	gridbagLayout.setConstraints(colorComboBox, constraints);
+	dialogPane.add(colorComboBox);
+
 	// The option pane
 	JPanel optionPane = 
 	    new JPanel(new FlowLayout(FlowLayout.RIGHT), false);
@@ -7,7 +7,9 @@ import java.awt.*;
 
 /**
  * This class draws a statusbar consisting
- * of three fields: status, size and time
+ * of four fields: status, size, time and the
+ * times of the fetch, decrypt, decode and
+ * paint stages
  *
  * @author Bjorn Husberg and Louise Tysk
  * @version 1.0
@@ -28,6 +30,11 @@ class StatusBar extends JPanel {
      * The update time label
      */
     protected JLabel timeLabel;
+
+    /**
+     * The stage times label
+     */
+    protected JLabel stageLabel;
     
     
     /**
@@ -66,6 +73,14 @@ class StatusBar extends JPanel {
 	constraints.gridx = 2;
 	gridbagLayout.setConstraints(timeLabel, constraints);
 	add(timeLabel);
+
+	// The stage times label
+	stageLabel = new JLabel("dummy");
+	stageLabel.setBorder(BorderFactory.createLoweredBevelBorder());
+	stageLabel.setForeground(Color.black);
+	constraints.gridx = 3;
+	gridbagLayout.setConstraints(stageLabel, constraints);
+	add(stageLabel);
     }
 }
 
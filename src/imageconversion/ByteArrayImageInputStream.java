@@ -0,0 +1,99 @@
+package imageconversion;
+
+// Standard imports:
+import java.io.*;
+import javax.imageio.stream.*;
+
+
+/**
+ * This class is an image input stream that reads from a
+ * part of a byte array. The stream can be pointed at new
+ * data so that the same stream can be used for every
+ * decoded image.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see ByteArrayImageOutputStream
+ */
+public class ByteArrayImageInputStream extends ImageInputStreamImpl {
+
+    /**
+     * The array that is read from
+     */
+    private byte[] buf;
+
+    /**
+     * The position of the first byte in the array
+     */
+    private int offset;
+
+    /**
+     * The number of bytes to read
+     */
+    private int count;
+
+
+    /**
+     * The constructor creates an empty stream
+     */
+    public ByteArrayImageInputStream() {
+	setData(new byte[0], 0, 0);
+    }
+
+
+    /**
+     * Points the stream at new data and rewinds it
+     *
+     * @param data the array to read from
+     * @param off the position of the first byte
+     * @param len the number of bytes
+     */
+    public void setData(byte[] data, int off, int len) {
+	buf = data;
+	offset = off;
+	count = len;
+	streamPos = 0;
+	flushedPos = 0;
+	bitOffset = 0;
+    }
+
+
+    /**
+     * Reads a byte at the current position
+     *
+     * @return the byte or -1 at the end of the stream
+     */
+    public int read() throws IOException {
+	bitOffset = 0;
+	if (streamPos >= count) return -1;
+	return buf[offset + (int) streamPos++] & 0xff;
+    }
+
+
+    /**
+     * Reads bytes at the current position
+     *
+     * @param b the array to read into
+     * @param off the position of the first byte in b
+     * @param len the largest number of bytes to read
+     * @return the number of bytes read or -1 at the end of the stream
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+	bitOffset = 0;
+	if (streamPos >= count) return -1;
+	len = (int) Math.min(len, count - streamPos);
+	System.arraycopy(buf, offset + (int) streamPos, b, off, len);
+	streamPos += len;
+	return len;
+    }
+
+
+    /**
+     * Gets the length of the stream
+     *
+     * @return the number of bytes
+     */
+    public long length() {
+	return count;
+    }
+}
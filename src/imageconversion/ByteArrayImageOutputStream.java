@@ -0,0 +1,166 @@
+package imageconversion;
+
+// Standard imports:
+import java.io.*;
+import javax.imageio.stream.*;
+
+
+/**
+ * This class is an image output stream that writes to a
+ * growable byte array. The array is kept when the stream
+ * is reset so that the same stream can be used for every
+ * encoded image without allocating new buffers.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see ByteArrayImageInputStream
+ */
+public class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+
+    /**
+     * The buffer
+     */
+    private byte[] buf;
+
+    /**
+     * The number of valid bytes in the buffer
+     */
+    private int count;
+
+
+    /**
+     * The constructor
+     *
+     * @param size the initial size of the buffer
+     */
+    public ByteArrayImageOutputStream(int size) {
+	buf = new byte[Math.max(size, 16)];
+	count = 0;
+    }
+
+
+    /**
+     * Empties the stream but keeps the buffer
+     */
+    public void reset() {
+	count = 0;
+	streamPos = 0;
+	flushedPos = 0;
+	bitOffset = 0;
+    }
+
+
+    /**
+     * Gets the buffer. Only the first size() bytes are valid
+     * and the buffer may change when more bytes are written.
+     *
+     * @return the buffer
+     */
+    public byte[] getBuffer() {
+	return buf;
+    }
+
+
+    /**
+     * Gets the number of valid bytes in the buffer
+     *
+     * @return the number of bytes
+     */
+    public int size() {
+	return count;
+    }
+
+
+    /**
+     * Writes the valid bytes to another stream
+     *
+     * @param out the stream to write to
+     * @throws IOException if the other stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+	out.write(buf, 0, count);
+    }
+
+
+    /**
+     * Makes sure the buffer can hold the given number of bytes
+     *
+     * @param size the number of bytes
+     */
+    private void ensureCapacity(long size) {
+	if (size > buf.length) {
+	    byte[] tmp = new byte[(int) Math.max(size, buf.length * 2L)];
+	    System.arraycopy(buf, 0, tmp, 0, count);
+	    buf = tmp;
+	}
+    }
+
+
+    /**
+     * Writes a byte at the current position
+     *
+     * @param b the byte
+     */
+    public void write(int b) throws IOException {
+	flushBits();
+	ensureCapacity(streamPos + 1);
+	buf[(int) streamPos++] = (byte) b;
+	if (streamPos > count) count = (int) streamPos;
+    }
+
+
+    /**
+     * Writes bytes at the current position
+     *
+     * @param b the bytes
+     * @param off the position of the first byte in b
+     * @param len the number of bytes
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+	flushBits();
+	ensureCapacity(streamPos + len);
+	System.arraycopy(b, off, buf, (int) streamPos, len);
+	streamPos += len;
+	if (streamPos > count) count = (int) streamPos;
+    }
+
+
+    /**
+     * Reads a byte at the current position
+     *
+     * @return the byte or -1 at the end of the stream
+     */
+    public int read() throws IOException {
+	bitOffset = 0;
+	if (streamPos >= count) return -1;
+	return buf[(int) streamPos++] & 0xff;
+    }
+
+
+    /**
+     * Reads bytes at the current position
+     *
+     * @param b the array to read into
+     * @param off the position of the first byte in b
+     * @param len the largest number of bytes to read
+     * @return the number of bytes read or -1 at the end of the stream
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+	bitOffset = 0;
+	if (streamPos >= count) return -1;
+	len = (int) Math.min(len, count - streamPos);
+	System.arraycopy(buf, (int) streamPos, b, off, len);
+	streamPos += len;
+	return len;
+    }
+
+
+    /**
+     * Gets the length of the stream
+     *
+     * @return the number of bytes
+     */
+    public long length() {
+	return count;
+    }
+}
@@ -0,0 +1,203 @@
+package imageconversion;
+
+// Standard imports:
+import java.awt.image.*;
+
+
+/**
+ * This class holds the shape of a mouse pointer. The
+ * screenshots don't contain the mouse pointer so it is
+ * sent as a shape that the client draws by itself. Each
+ * shape has an id so that it only has to be sent once.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ */
+public class CursorShape {
+
+    /**
+     * The id of the default arrow shape
+     */
+    public static final int ARROW = 0;
+
+    /**
+     * The arrow shape as text, X is black
+     * and . is white
+     */
+    private static final String[] arrow = {
+	"X           ",
+	"XX          ",
+	"X.X         ",
+	"X..X        ",
+	"X...X       ",
+	"X....X      ",
+	"X.....X     ",
+	"X......X    ",
+	"X.......X   ",
+	"X........X  ",
+	"X.....XXXXX ",
+	"X..X..X     ",
+	"X.X X..X    ",
+	"XX  X..X    ",
+	"X    X..X   ",
+	"     X..X   ",
+	"      XX    "};
+
+    /**
+     * Private variable to hold the default arrow shape
+     */
+    private static CursorShape defaultShape = null;
+
+    /**
+     * The id of the shape
+     */
+    private int id;
+
+    /**
+     * The width of the shape
+     */
+    private int width;
+
+    /**
+     * The height of the shape
+     */
+    private int height;
+
+    /**
+     * The horisontal position of the hot spot
+     */
+    private int hotx;
+
+    /**
+     * The vertical position of the hot spot
+     */
+    private int hoty;
+
+    /**
+     * The ARGB pixels of the shape
+     */
+    private int[] pixels;
+
+    /**
+     * The shape as an image, created when needed
+     */
+    private BufferedImage img;
+
+
+    /**
+     * The constructor
+     *
+     * @param id the id of the shape
+     * @param width the width of the shape
+     * @param height the height of the shape
+     * @param hotx the horisontal position of the hot spot
+     * @param hoty the vertical position of the hot spot
+     * @param pixels the ARGB pixels of the shape
+     */
+    public CursorShape(int id, int width, int height, int hotx, int hoty,
+		       int[] pixels) {
+	this.id = id;
+	this.width = width;
+	this.height = height;
+	this.hotx = hotx;
+	this.hoty = hoty;
+	this.pixels = pixels;
+    }
+
+
+    /**
+     * Gets the default arrow shape
+     *
+     * @return the arrow shape
+     */
+    public static synchronized CursorShape getDefault() {
+	if (defaultShape == null) {
+	    int width = arrow[0].length();
+	    int height = arrow.length;
+	    int[] pixels = new int[width * height];
+	    for (int y = 0; y < height; y++) {
+		for (int x = 0; x < width; x++) {
+		    char c = arrow[y].charAt(x);
+		    if (c == 'X') pixels[y * width + x] = 0xff000000;
+		    if (c == '.') pixels[y * width + x] = 0xffffffff;
+		}
+	    }
+	    defaultShape = new CursorShape(ARROW, width, height, 0, 0, pixels);
+	}
+	return defaultShape;
+    }
+
+
+    /**
+     * Gets the id of the shape
+     *
+     * @return the id
+     */
+    public int getId() {
+	return id;
+    }
+
+
+    /**
+     * Gets the width of the shape
+     *
+     * @return the width
+     */
+    public int getWidth() {
+	return width;
+    }
+
+
+    /**
+     * Gets the height of the shape
+     *
+     * @return the height
+     */
+    public int getHeight() {
+	return height;
+    }
+
+
+    /**
+     * Gets the horisontal position of the hot spot
+     *
+     * @return the x value of the hot spot
+     */
+    public int getHotX() {
+	return hotx;
+    }
+
+
+    /**
+     * Gets the vertical position of the hot spot
+     *
+     * @return the y value of the hot spot
+     */
+    public int getHotY() {
+	return hoty;
+    }
+
+
+    /**
+     * Gets the ARGB pixels of the shape
+     *
+     * @return the pixels row by row
+     */
+    public int[] getPixels() {
+	return pixels;
+    }
+
+
+    /**
+     * Gets the shape as a transparent image
+     *
+     * @return the image
+     */
+    public synchronized BufferedImage getImage() {
+	if (img == null) {
+	    img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	    img.setRGB(0, 0, width, height, pixels, 0, width);
+	}
+	return img;
+    }
+}
@@ -0,0 +1,358 @@
+package imageconversion;
+
+// Standard imports:
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+// Project imports:
+import exceptions.*;
+import security.*;
+
+
+/**
+ * This class decodes frame data buffers created by a
+ * FrameEncoder and patches the tiles into an image.
+ * The frame is first scanned for the positions of the
+ * tiles which are then decoded in parallel by the
+ * shared TileWorkers pool. Afterwards the tile cache
+ * is updated in the order of the records, just like
+ * the FrameEncoder did, and cached tiles are drawn.
+ * Encrypted frames are decrypted into a buffer of
+ * the decoder before they are scanned.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FrameEncoder
+ */
+public class FrameDecoder {
+
+    /**
+     * The image converter that is used to
+     * convert the tiles
+     */
+    private ImageConverter converter;
+
+    /**
+     * The jobs that decode the tiles in parallel
+     */
+    private TileDecodeJob[] jobs;
+
+    /**
+     * The cache of received tiles
+     */
+    private TileCache cache;
+
+    /**
+     * The tile cache operations of a frame in order, an int
+     * array {operation, slot, x, y, width, height} each
+     */
+    private Vector operations;
+
+    /**
+     * The cipher suite that decrypts the frames,
+     * null if encryption is disabled
+     */
+    private CipherSuite cipher;
+
+    /**
+     * The buffer that encrypted frames are decrypted to
+     */
+    private byte[] plain;
+
+    /**
+     * The received mouse pointer shapes by id
+     */
+    private Hashtable shapes;
+
+    /**
+     * The horisontal position of the mouse pointer
+     */
+    private int cursorx;
+
+    /**
+     * The vertical position of the mouse pointer
+     */
+    private int cursory;
+
+    /**
+     * The shape of the mouse pointer
+     */
+    private CursorShape cursor;
+
+
+    /**
+     * The constructor
+     *
+     * @param c the image converter to use
+     */
+    public FrameDecoder(ImageConverter c) {
+	converter = c;
+	shapes = new Hashtable();
+	jobs = new TileDecodeJob[0];
+	cache = new TileCache();
+	operations = new Vector();
+	plain = new byte[0];
+	cursorx = -1;
+	cursory = -1;
+    }
+
+
+    /**
+     * Sets the cipher suite that decrypts the frames. It
+     * must be the same as the one of the FrameEncoder.
+     *
+     * @param c the suite or null to disable encryption
+     */
+    public void setCipher(CipherSuite c) {
+	cipher = c;
+    }
+
+
+    /**
+     * Gets the horisontal screen position of the
+     * mouse pointer in the last received cursor record
+     *
+     * @return the x value or -1 if unknown
+     */
+    public int getCursorX() {
+	return cursorx;
+    }
+
+
+    /**
+     * Gets the vertical screen position of the
+     * mouse pointer in the last received cursor record
+     *
+     * @return the y value or -1 if unknown
+     */
+    public int getCursorY() {
+	return cursory;
+    }
+
+
+    /**
+     * Gets the shape of the mouse pointer in the
+     * last received cursor record
+     *
+     * @return the shape or null if unknown
+     */
+    public CursorShape getCursor() {
+	return cursor;
+    }
+
+
+    /**
+     * Decodes a frame data buffer and patches the tiles
+     * into the given image. If delta is true the tiles are
+     * delta restored against the image before they are patched.
+     *
+     * @param data the frame data buffer
+     * @param img the image to patch
+     * @param delta true if the tiles are delta precompressed
+     * @throws IOException if the frame can't be decoded
+     * @throws IncompatibleImageException if a tile doesn't fit the image
+     * @return a Vector with a Rectangle for each updated area
+     */
+    public Vector decode(byte[] data, BufferedImage img, boolean delta)
+    throws IOException, IncompatibleImageException {
+	return decode(data, img, delta, true);
+    }
+
+
+    /**
+     * Decodes a frame data buffer and patches the tiles
+     * into the given image. The copy records are skipped
+     * unless copies is true. This is used by the server
+     * whose FrameEncoder has already done the copies.
+     *
+     * @param data the frame data buffer
+     * @param img the image to patch
+     * @param delta true if the tiles are delta precompressed
+     * @param copies true if the copy records shall be performed
+     * @throws IOException if the frame can't be decoded
+     * @throws IncompatibleImageException if a tile doesn't fit the image
+     * @return a Vector with a Rectangle for each updated area
+     */
+    public Vector decode(byte[] data, BufferedImage img, boolean delta,
+			 boolean copies)
+    throws IOException, IncompatibleImageException {
+
+	// Decrypt a copy of the frame
+	int size = data.length;
+	if (cipher != null) {
+	    if (plain.length < size) plain = new byte[size];
+	    size = cipher.decrypt(data, 0, data.length, plain);
+	    data = plain;
+	}
+	return patch(data, size, img, delta, copies);
+    }
+
+
+    /**
+     * Decodes a frame data buffer that is already
+     * decrypted and patches the tiles into the given
+     * image. This is used by a client that decrypts the
+     * frames in a stage of its own.
+     *
+     * @param data the decrypted frame data buffer
+     * @param size the length of the frame in the buffer
+     * @param img the image to patch
+     * @param delta true if the tiles are delta precompressed
+     * @throws IOException if the frame can't be decoded
+     * @throws IncompatibleImageException if a tile doesn't fit the image
+     * @return a Vector with a Rectangle for each updated area
+     */
+    public Vector decode(byte[] data, int size, BufferedImage img, boolean delta)
+    throws IOException, IncompatibleImageException {
+	return patch(data, size, img, delta, true);
+    }
+
+
+    /**
+     * Scans a decrypted frame, decodes the tiles
+     * and patches them into the given image
+     *
+     * @param data the decrypted frame data buffer
+     * @param size the length of the frame in the buffer
+     * @param img the image to patch
+     * @param delta true if the tiles are delta precompressed
+     * @param copies true if the copy records shall be performed
+     * @throws IOException if the frame can't be decoded
+     * @throws IncompatibleImageException if a tile doesn't fit the image
+     * @return a Vector with a Rectangle for each updated area
+     */
+    private Vector patch(byte[] data, int size, BufferedImage img,
+			 boolean delta, boolean copies)
+    throws IOException, IncompatibleImageException {
+	Vector updated = new Vector();
+	operations.removeAllElements();
+	int count = 0;
+	ByteArrayInputStream bytes = new ByteArrayInputStream(data, 0, size);
+	DataInputStream in = new DataInputStream(bytes);
+	Graphics g = img.getGraphics();
+
+	try {
+	    byte type = in.readByte();
+	    while (type != FrameEncoder.END) {
+		if (type == FrameEncoder.COPY) {
+		    int sx = in.readShort();
+		    int sy = in.readShort();
+		    int x = in.readShort();
+		    int y = in.readShort();
+		    int w = in.readShort();
+		    int h = in.readShort();
+		    if (copies) {
+			g.copyArea(sx, sy, w, h, x - sx, y - sy);
+			updated.addElement(new Rectangle(x, y, w, h));
+		    }
+		    type = in.readByte();
+		    continue;
+		}
+		if (type == FrameEncoder.CURSOR) {
+		    readCursor(in);
+		    type = in.readByte();
+		    continue;
+		}
+		if (type == FrameEncoder.CLEAR) {
+		    operations.addElement(new int[] {FrameEncoder.CLEAR, 0, 0, 0, 0, 0});
+		    type = in.readByte();
+		    continue;
+		}
+		if (type == FrameEncoder.CACHED) {
+		    int x = in.readShort();
+		    int y = in.readShort();
+		    int w = in.readShort();
+		    int h = in.readShort();
+		    int slot = in.readShort();
+		    if (x + w > img.getWidth() || y + h > img.getHeight())
+			throw new IncompatibleImageException();
+		    operations.addElement(new int[] {FrameEncoder.CACHED, slot, x, y, w, h});
+		    updated.addElement(new Rectangle(x, y, w, h));
+		    type = in.readByte();
+		    continue;
+		}
+		if (type != FrameEncoder.TILE && type != FrameEncoder.PALETTE &&
+		    type != FrameEncoder.DEFLATE && type != FrameEncoder.GRAYTILE)
+		    throw new IOException("Unknown record type " + type);
+
+		int x = in.readShort();
+		int y = in.readShort();
+		int w = in.readShort();
+		int h = in.readShort();
+		int length = in.readInt();
+		int position = size - bytes.available();
+
+		if (x + w > img.getWidth() || y + h > img.getHeight())
+		    throw new IncompatibleImageException();
+
+		if (count == jobs.length) {
+		    TileDecodeJob[] tmp = new TileDecodeJob[count * 2 + 16];
+		    System.arraycopy(jobs, 0, tmp, 0, count);
+		    for (int i = count; i < tmp.length; i++)
+			tmp[i] = new TileDecodeJob();
+		    jobs = tmp;
+		}
+		jobs[count++].set(data, position, length, img, x, y, w, h, delta, type);
+		operations.addElement(new int[] {type, 0, x, y, w, h});
+		in.skipBytes(length);
+
+		updated.addElement(new Rectangle(x, y, w, h));
+		type = in.readByte();
+	    }
+	} finally {
+	    g.dispose();
+	}
+
+	// Decode the tiles in parallel
+	try {
+	    TileWorkers.getInstance().execute(jobs, count, converter);
+	} catch (IOException e) {
+	    throw e;
+	} catch (IncompatibleImageException e) {
+	    throw e;
+	} catch (Exception e) {
+	    throw new IOException(e.toString());
+	}
+
+	// Keep the tile cache in step with the encoder
+	for (int i = 0; i < operations.size(); i++) {
+	    int[] op = (int[]) operations.elementAt(i);
+	    if (op[0] == FrameEncoder.CLEAR)
+		cache.clear();
+	    else if (op[0] == FrameEncoder.CACHED)
+		cache.load(op[1], img, op[2], op[3], op[4], op[5]);
+	    else
+		cache.store(cache.insert(), img, op[2], op[3], op[4], op[5]);
+	}
+	return updated;
+    }
+
+
+    /**
+     * Reads a cursor record and stores any new shape
+     *
+     * @param in the stream to read from
+     * @throws IOException if the record can't be read
+     */
+    private void readCursor(DataInputStream in) throws IOException {
+	int x = in.readShort();
+	int y = in.readShort();
+	Integer id = new Integer(in.readShort());
+	if (in.readByte() == 1) {
+	    int w = in.readShort();
+	    int h = in.readShort();
+	    int hotx = in.readShort();
+	    int hoty = in.readShort();
+	    int[] pixels = new int[w * h];
+	    for (int i = 0; i < pixels.length; i++) pixels[i] = in.readInt();
+	    shapes.put(id, new CursorShape(id.intValue(), w, h, hotx, hoty, pixels));
+	}
+	CursorShape shape = (CursorShape) shapes.get(id);
+	if (shape == null) throw new IOException("Unknown cursor shape " + id);
+	cursorx = x;
+	cursory = y;
+	cursor = shape;
+    }
+}
@@ -0,0 +1,770 @@
+package imageconversion;
+
+// Standard imports:
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+// Project imports:
+import exceptions.*;
+import security.*;
+
+
+/**
+ * This class splits images into tiles and encodes only
+ * the tiles that have changed since the last encoded
+ * image into a frame data buffer. Each tile is stored
+ * as a record together with its coordinates. Areas
+ * that have only been moved, as when a window is
+ * scrolled, are sent as copy records instead.
+ * The position and shape of the mouse pointer is
+ * sent in a cursor record when it has changed. The
+ * pixels of a shape are only sent the first time.
+ * Tiles with few colours, such as text, are sent
+ * losslessly in palette records instead of as JPEG.
+ * Tiles that have been sent as JPEG and then stay
+ * unchanged for a while are refined, that is sent
+ * again losslessly, a few at a time when the frame
+ * has room for them. The client image thereby ends
+ * up pixel exact once the screen settles.
+ * The colors can be reduced to save bandwidth. In the
+ * 8 bit mode no JPEG is used at all and in grayscale
+ * mode the JPEG tiles are sent as GRAYTILE records.
+ * If the user works somewhere in the image, the tiles
+ * around that focus are written first and with a higher
+ * JPEG quality while the tiles further away get a lower
+ * one, so that the stream gets no larger on the whole.
+ * Every tile that is sent is also stored in a TileCache
+ * on both sides. A tile that is found in the cache is
+ * sent as a CACHED record that refers to the slot.
+ * If a cipher suite is set the frame is encrypted and
+ * sealed by the suite after the END record. The frame
+ * is kept unencrypted as well, so that the server can
+ * restore the client image without decrypting it.
+ * The tiles are encoded in parallel by the shared
+ * TileWorkers pool. Since every record holds its
+ * length the decoder finds all tiles with a quick
+ * scan and can decode them in parallel as well.
+ *
+ * The frame data buffer is a sequence of records that
+ * is terminated by an END record:
+ *
+ * <pre>
+ * COPY: type, source x, source y, x, y, width, height
+ * TILE: type, x, y, width, height, length, JPEG data
+ * PALETTE: type, x, y, width, height, length, palette data
+ * DEFLATE: type, x, y, width, height, length, color mode, deflated pixels
+ * GRAYTILE: type, x, y, width, height, length, grayscale JPEG data
+ * CACHED: type, x, y, width, height, tile cache slot
+ * CLEAR: type
+ * CURSOR: type, x, y, shape id, 1, width, height, hot x, hot y, ARGB pixels
+ * CURSOR: type, x, y, shape id, 0
+ * END:  type
+ * </pre>
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FrameDecoder
+ */
+public class FrameEncoder {
+
+    /**
+     * The width and height of a tile
+     */
+    public static final int TILESIZE = 64;
+
+    /**
+     * The record type that terminates a frame
+     */
+    public static final byte END = 0;
+
+    /**
+     * The record type of a JPEG encoded tile
+     */
+    public static final byte TILE = 1;
+
+    /**
+     * The record type of an area that is copied
+     * from another place in the image
+     */
+    public static final byte COPY = 2;
+
+    /**
+     * The record type of the mouse pointer
+     */
+    public static final byte CURSOR = 3;
+
+    /**
+     * The record type of a losslessly encoded tile
+     *
+     * @see PaletteCodec
+     */
+    public static final byte PALETTE = 4;
+
+    /**
+     * The record type of a deflated tile
+     */
+    public static final byte DEFLATE = 5;
+
+    /**
+     * The record type of a grayscale JPEG encoded tile
+     */
+    public static final byte GRAYTILE = 6;
+
+    /**
+     * The record type of a tile that is taken
+     * from the tile cache
+     */
+    public static final byte CACHED = 7;
+
+    /**
+     * The record type that empties the tile cache
+     */
+    public static final byte CLEAR = 8;
+
+    /**
+     * The largest number of tiles in a frame for
+     * refinement to take place. Refined tiles are
+     * only sent to fill up frames with fewer tiles.
+     */
+    private static final int REFINETILES = 8;
+
+    /**
+     * The distance in pixels from the focus within which
+     * tiles get the highest quality
+     */
+    private static final int FOCUSRADIUS = 128;
+
+    /**
+     * The distance in pixels from the focus beyond which
+     * tiles get the lowest quality
+     */
+    private static final int PERIPHERY = 512;
+
+    /**
+     * The factor of the stream quality that the tiles
+     * furthest away from the focus get
+     */
+    private static final float PERIPHERYQUALITY = 0.6f;
+
+    /**
+     * The image converter that is used to
+     * convert the tiles
+     */
+    private ImageConverter converter;
+
+    /**
+     * The pixels of the last encoded image
+     */
+    private int[] reference;
+
+    /**
+     * The image that is being encoded with its colors
+     * reduced to the color mode
+     */
+    private BufferedImage work;
+
+    /**
+     * The pixels of the image that is being encoded,
+     * the array behind the work image
+     */
+    private int[] pixels;
+
+    /**
+     * The color mode
+     */
+    private int colorMode;
+
+    /**
+     * The tiles that have changed in the
+     * image that is being encoded
+     */
+    private boolean[] dirty;
+
+    /**
+     * The jobs that encode the tiles in parallel,
+     * one for each tile
+     */
+    private TileEncodeJob[] jobs;
+
+    /**
+     * The time when each tile last changed
+     */
+    private long[] changed;
+
+    /**
+     * The tiles that the client has pixel exact
+     */
+    private boolean[] exact;
+
+    /**
+     * The changed tiles in the order they are written,
+     * the squared distance to the focus in the high bits
+     * and the tile number in the low 20 bits
+     */
+    private long[] order;
+
+    /**
+     * The horisontal position of the focus
+     */
+    private int focusx;
+
+    /**
+     * The vertical position of the focus
+     */
+    private int focusy;
+
+    /**
+     * The number of milliseconds a tile must be unchanged
+     * before it is refined, zero if refinement is disabled
+     */
+    private long refineDelay;
+
+    /**
+     * The detector that searches for moved areas
+     */
+    private ScrollDetector detector;
+
+    /**
+     * The cache of sent tiles
+     */
+    private TileCache cache;
+
+    /**
+     * The horisontal position of the mouse pointer
+     */
+    private int cursorx;
+
+    /**
+     * The vertical position of the mouse pointer
+     */
+    private int cursory;
+
+    /**
+     * The shape of the mouse pointer
+     */
+    private CursorShape cursor;
+
+    /**
+     * The last sent horisontal position of the mouse pointer
+     */
+    private int sentx;
+
+    /**
+     * The last sent vertical position of the mouse pointer
+     */
+    private int senty;
+
+    /**
+     * The last sent shape of the mouse pointer
+     */
+    private CursorShape sentcursor;
+
+    /**
+     * The ids of the shapes that have been sent
+     */
+    private Hashtable sentshapes;
+
+    /**
+     * The width of the last encoded image
+     */
+    private int width;
+
+    /**
+     * The height of the last encoded image
+     */
+    private int height;
+
+    /**
+     * The buffer that the frame is written to
+     */
+    private ByteArrayOutputStream buffer;
+
+    /**
+     * The last encoded frame before it was encrypted
+     */
+    private byte[] plainFrame;
+
+    /**
+     * The cipher suite that encrypts the frames,
+     * null if encryption is disabled
+     */
+    private CipherSuite cipher;
+
+
+    /**
+     * The constructor
+     *
+     * @param c the image converter to use
+     */
+    public FrameEncoder(ImageConverter c) {
+	converter = c;
+	buffer = new ByteArrayOutputStream();
+	plainFrame = new byte[0];
+	detector = new ScrollDetector();
+	cache = new TileCache();
+	sentshapes = new Hashtable();
+	focusx = -1;
+	focusy = -1;
+	reset();
+    }
+
+
+    /**
+     * Forgets the last encoded image. The next
+     * frame will contain all tiles.
+     */
+    public void reset() {
+	reference = null;
+	sentcursor = null;
+    }
+
+
+    /**
+     * Looks for a tile in the tile cache. A tile that is found
+     * is marked as cached, otherwise it is given a new slot.
+     * This must be done in the order that the tiles are written
+     * since the decoder does the same with its cache.
+     *
+     * @param job the job of the tile
+     * @param refine true if the tile must be pixel exact
+     */
+    private void lookup(TileEncodeJob job, boolean refine) {
+	Object key = cache.getKey(pixels, width, job.x, job.y,
+				  job.width, job.height);
+	int slot = cache.lookup(key);
+	if (slot >= 0 && (!refine || cache.isExact(slot))) {
+	    cache.touch(slot);
+	    job.slot = slot;
+	    job.cached = true;
+	} else {
+	    job.slot = cache.insert(key);
+	}
+    }
+
+
+    /**
+     * Sets the cipher suite that encrypts the frames
+     *
+     * @param c the suite or null to disable encryption
+     */
+    public void setCipher(CipherSuite c) {
+	cipher = c;
+    }
+
+
+    /**
+     * Gets the last encoded frame as it was before it was
+     * encrypted. It is the same as the frame that encode
+     * returned if encryption is disabled.
+     *
+     * @return the unencrypted frame data buffer
+     */
+    public byte[] getPlainFrame() {
+	return plainFrame;
+    }
+
+
+    /**
+     * Sets the color mode. The next frame will contain all tiles.
+     *
+     * @param mode the color mode
+     * @see ImageConverter#COLOR24
+     */
+    public void setColorMode(int mode) {
+	colorMode = mode;
+	reset();
+    }
+
+
+    /**
+     * Sets how long a tile must be unchanged before it
+     * is sent again losslessly
+     *
+     * @param delay the time in milliseconds, zero
+     *        disables refinement
+     */
+    public void setRefineDelay(long delay) {
+	refineDelay = Math.max(delay, 0);
+    }
+
+
+    /**
+     * Sets the position and shape of the mouse pointer
+     * that will be sent with the next frame if it has changed
+     *
+     * @param x the horisontal position on the screen
+     * @param y the vertical position on the screen
+     * @param shape the shape of the pointer
+     */
+    public void setCursor(int x, int y, CursorShape shape) {
+	cursorx = x;
+	cursory = y;
+	cursor = shape;
+    }
+
+
+    /**
+     * Sets the position the user works at, normally the
+     * position of the last mouse event. A position outside
+     * the image turns the focus off and all tiles get the
+     * same quality.
+     *
+     * @param x the horisontal position in the image
+     * @param y the vertical position in the image
+     */
+    public void setFocus(int x, int y) {
+	focusx = x;
+	focusy = y;
+    }
+
+
+    /**
+     * Checks if the focus is inside the last encoded image
+     *
+     * @return true if the tiles are prioritised
+     */
+    private boolean hasFocus() {
+	return focusx >= 0 && focusy >= 0 && focusx < width && focusy < height;
+    }
+
+
+    /**
+     * Gets the distance from the focus to the nearest
+     * pixel of a tile
+     *
+     * @param tile the tile number
+     * @param columns the number of tiles per row
+     * @return the squared distance in pixels
+     */
+    private long getDistance(int tile, int columns) {
+	if (!hasFocus()) return 0;
+	int tx = (tile % columns) * TILESIZE;
+	int ty = (tile / columns) * TILESIZE;
+	long dx = Math.max(0, Math.max(tx - focusx, focusx - (tx + TILESIZE - 1)));
+	long dy = Math.max(0, Math.max(ty - focusy, focusy - (ty + TILESIZE - 1)));
+	return dx * dx + dy * dy;
+    }
+
+
+    /**
+     * Gets the JPEG image quality of a tile. Tiles near the
+     * focus get a quality between the stream quality and the
+     * highest quality, and it falls off to a lower quality
+     * further away.
+     *
+     * @param distance the squared distance to the focus
+     * @param quality the quality of the stream
+     * @return the quality of the tile
+     */
+    private float getQuality(long distance, float quality) {
+	if (!hasFocus()) return quality;
+	float high = quality + (1.0f - quality) * 0.5f;
+	float low = quality * PERIPHERYQUALITY;
+	double d = Math.sqrt(distance);
+	if (d <= FOCUSRADIUS) return high;
+	if (d >= PERIPHERY) return low;
+	return (float) (high + (low - high) * (d - FOCUSRADIUS) /
+			(PERIPHERY - FOCUSRADIUS));
+    }
+
+
+    /**
+     * Copies the pixels of the tiles that may have changed to
+     * the pixel array and reduces their colors. The other tiles
+     * are left as they were in the last image. The raster of an
+     * RGB image is read directly, which also works for an image
+     * that is a part of a larger screenshot.
+     *
+     * @param img the new image
+     * @param hint one boolean per tile row by row, or null
+     *        if all tiles may have changed
+     * @param columns the number of tiles per row
+     * @param rows the number of tile rows
+     */
+    private void copyPixels(BufferedImage img, boolean[] hint,
+			    int columns, int rows) {
+	int[] data = null;
+	int offset = 0;
+	int stride = 0;
+	if (img.getType() == BufferedImage.TYPE_INT_RGB &&
+	    img.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+	    WritableRaster raster = img.getRaster();
+	    SinglePixelPackedSampleModel model =
+		(SinglePixelPackedSampleModel) raster.getSampleModel();
+	    DataBufferInt ints = (DataBufferInt) raster.getDataBuffer();
+	    data = ints.getData();
+	    stride = model.getScanlineStride();
+	    offset = ints.getOffset() +
+		model.getOffset(-raster.getSampleModelTranslateX(),
+				-raster.getSampleModelTranslateY());
+	}
+
+	for (int row = 0; row < rows; row++) {
+	    int ty = row * TILESIZE;
+	    int th = Math.min(TILESIZE, height - ty);
+
+	    // Neighbouring tiles are copied as one run
+	    int column = 0;
+	    while (column < columns) {
+		if (hint != null && !hint[row * columns + column]) {
+		    column++;
+		    continue;
+		}
+		int first = column;
+		while (column < columns &&
+		       (hint == null || hint[row * columns + column]))
+		    column++;
+		int tx = first * TILESIZE;
+		int tw = Math.min(column * TILESIZE, width) - tx;
+		if (data == null)
+		    img.getRGB(tx, ty, tw, th, pixels, ty * width + tx, width);
+		for (int y = ty; y < ty + th; y++) {
+		    int dst = y * width + tx;
+		    if (data != null) {
+
+			// The same opaque pixels as getRGB gives
+			int src = offset + y * stride + tx;
+			for (int i = 0; i < tw; i++)
+			    pixels[dst + i] = data[src + i] | 0xff000000;
+		    }
+		    if (colorMode != ImageConverter.COLOR24)
+			converter.quantize(pixels, dst, tw, colorMode);
+		}
+	    }
+	}
+    }
+
+
+    /**
+     * Encodes the tiles of an image that differs from the last
+     * encoded image. If a client image is given the tiles are
+     * delta precompressed against it. Moved areas are copied
+     * within the client image as well.
+     *
+     * @param img the new image
+     * @param clientImg the client side image or null if delta
+     *        precompression is disabled
+     * @param quality the JPEG image quality
+     * @throws IOException if the encoding fails
+     * @throws IncompatibleImageException if the size of the images are unequal
+     * @return the frame data buffer
+     */
+    public byte[] encode(BufferedImage img, BufferedImage clientImg, float quality)
+    throws IOException, IncompatibleImageException {
+	return encode(img, clientImg, quality, null);
+    }
+
+
+    /**
+     * Encodes the tiles of an image that differs from the last
+     * encoded image. The hint tells which tiles that may have
+     * changed, tiles that aren't marked are not compared at all.
+     *
+     * @param img the new image
+     * @param clientImg the client side image or null if delta
+     *        precompression is disabled
+     * @param quality the JPEG image quality
+     * @param hint one boolean per tile row by row, or null
+     *        if all tiles may have changed
+     * @throws IOException if the encoding fails
+     * @throws IncompatibleImageException if the size of the images are unequal
+     * @return the frame data buffer
+     * @see TileMap#getHint
+     */
+    public byte[] encode(BufferedImage img, BufferedImage clientImg, float quality,
+			 boolean[] hint)
+    throws IOException, IncompatibleImageException {
+
+	boolean full = false;
+	if (reference == null || width != img.getWidth() ||
+	    height != img.getHeight()) {
+	    width = img.getWidth();
+	    height = img.getHeight();
+	    reference = new int[width * height];
+	    work = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	    pixels = ((DataBufferInt) work.getRaster().getDataBuffer()).getData();
+	    full = true;
+	}
+
+	int columns = (width + TILESIZE - 1) / TILESIZE;
+	int rows = (height + TILESIZE - 1) / TILESIZE;
+	copyPixels(img, full ? null : hint, columns, rows);
+
+	buffer.reset();
+	DataOutputStream out = new DataOutputStream(buffer);
+	long now = System.currentTimeMillis();
+
+	// Start all over with an empty tile cache
+	if (full) {
+	    cache.clear();
+	    out.writeByte(CLEAR);
+	}
+
+	// Find the changed tiles
+	if (dirty == null || dirty.length != columns * rows) {
+	    dirty = new boolean[columns * rows];
+	    jobs = new TileEncodeJob[columns * rows];
+	    order = new long[columns * rows];
+	    for (int i = 0; i < jobs.length; i++) jobs[i] = new TileEncodeJob();
+	    changed = new long[columns * rows];
+	    exact = new boolean[columns * rows];
+	}
+	if (full) {
+	    Arrays.fill(changed, now);
+	    Arrays.fill(exact, false);
+	}
+	for (int tile = 0; tile < dirty.length; tile++) {
+	    int tx = (tile % columns) * TILESIZE;
+	    int ty = (tile / columns) * TILESIZE;
+	    dirty[tile] = full || ((hint == null || hint[tile]) &&
+				   TileMap.differs(reference, pixels, width, tx, ty,
+						   Math.min(TILESIZE, width - tx),
+						   Math.min(TILESIZE, height - ty)));
+	}
+
+	// Copy moved areas instead of encoding them again
+	if (!full) {
+	    Vector moves = detector.detect(reference, pixels, width, height, dirty);
+	    for (int i = 0; i < moves.size(); i++) {
+		int[] move = (int[]) moves.elementAt(i);
+		out.writeByte(COPY);
+		for (int j = 0; j < move.length; j++) out.writeShort(move[j]);
+
+		// Do the same copy as the client
+		ScrollDetector.apply(reference, width, move);
+		if (clientImg != null) {
+		    Graphics g = clientImg.getGraphics();
+		    g.copyArea(move[0], move[1], move[4], move[5],
+			       move[2] - move[0], move[3] - move[1]);
+		    g.dispose();
+		}
+
+		// The copied tiles may not have to be encoded any more
+		for (int tile = 0; tile < dirty.length; tile++) {
+		    int tx = (tile % columns) * TILESIZE;
+		    int ty = (tile / columns) * TILESIZE;
+		    int tw = Math.min(TILESIZE, width - tx);
+		    int th = Math.min(TILESIZE, height - ty);
+		    if (tx < move[2] + move[4] && move[2] < tx + tw &&
+			ty < move[3] + move[5] && move[3] < ty + th) {
+			dirty[tile] = TileMap.differs(reference, pixels, width,
+						      tx, ty, tw, th);
+			changed[tile] = now;
+			exact[tile] = false;
+		    }
+		}
+	    }
+	}
+
+	// Encode the changed tiles in parallel, the
+	// ones nearest the focus first
+	int count = 0;
+	for (int tile = 0; tile < dirty.length; tile++) {
+	    if (dirty[tile]) order[count++] = getDistance(tile, columns) << 20 | tile;
+	}
+	Arrays.sort(order, 0, count);
+	for (int i = 0; i < count; i++) {
+	    int tile = (int) (order[i] & 0xfffff);
+	    int tx = (tile % columns) * TILESIZE;
+	    int ty = (tile / columns) * TILESIZE;
+	    jobs[i].set(work, clientImg, pixels, tx, ty,
+			Math.min(TILESIZE, width - tx),
+			Math.min(TILESIZE, height - ty),
+			getQuality(order[i] >> 20, quality), colorMode, false);
+	    lookup(jobs[i], false);
+	    changed[tile] = now;
+	}
+
+	// Refine tiles that have been unchanged for a while
+	if (refineDelay > 0) {
+	    for (int tile = 0; tile < dirty.length && count < REFINETILES; tile++) {
+		if (dirty[tile] || exact[tile] || now - changed[tile] < refineDelay)
+		    continue;
+		int tx = (tile % columns) * TILESIZE;
+		int ty = (tile / columns) * TILESIZE;
+		jobs[count].set(work, clientImg, pixels, tx, ty,
+				Math.min(TILESIZE, width - tx),
+				Math.min(TILESIZE, height - ty), quality,
+				colorMode, true);
+		lookup(jobs[count++], true);
+	    }
+	}
+
+	// The slots of the tiles are taken in the tile cache
+	// already, but the tiles will never reach the client
+	// if they fail. The next frame then starts over and
+	// empties the cache on both sides.
+	try {
+	    TileWorkers.getInstance().execute(jobs, count, converter);
+	} catch (IOException e) {
+	    reset();
+	    throw e;
+	} catch (IncompatibleImageException e) {
+	    reset();
+	    throw e;
+	} catch (Exception e) {
+	    reset();
+	    throw new IOException(e.toString());
+	}
+
+	for (int i = 0; i < count; i++) {
+	    TileEncodeJob job = jobs[i];
+	    out.writeByte(job.type);
+	    out.writeShort(job.x);
+	    out.writeShort(job.y);
+	    out.writeShort(job.width);
+	    out.writeShort(job.height);
+	    if (job.cached) {
+		out.writeShort(job.slot);
+	    } else {
+		out.writeInt(job.output.size());
+		job.output.writeTo(out);
+		cache.setExact(job.slot, job.type != TILE && job.type != GRAYTILE);
+	    }
+
+	    exact[(job.y / TILESIZE) * columns + job.x / TILESIZE] =
+		cache.isExact(job.slot);
+
+	    // Remember the tile until next time
+	    for (int row = job.y; row < job.y + job.height; row++)
+		System.arraycopy(pixels, row * width + job.x,
+				 reference, row * width + job.x, job.width);
+	}
+
+	// Send the mouse pointer if it has changed
+	if (cursor != null &&
+	    (cursor != sentcursor || cursorx != sentx || cursory != senty)) {
+	    out.writeByte(CURSOR);
+	    out.writeShort(cursorx);
+	    out.writeShort(cursory);
+	    out.writeShort(cursor.getId());
+	    Integer id = new Integer(cursor.getId());
+	    if (sentshapes.get(id) == cursor) {
+		out.writeByte(0);
+	    } else {
+		out.writeByte(1);
+		out.writeShort(cursor.getWidth());
+		out.writeShort(cursor.getHeight());
+		out.writeShort(cursor.getHotX());
+		out.writeShort(cursor.getHotY());
+		int[] shape = cursor.getPixels();
+		for (int i = 0; i < shape.length; i++) out.writeInt(shape[i]);
+		sentshapes.put(id, cursor);
+	    }
+	    sentcursor = cursor;
+	    sentx = cursorx;
+	    senty = cursory;
+	}
+
+	out.writeByte(END);
+	out.close();
+	plainFrame = buffer.toByteArray();
+	if (cipher == null) return plainFrame;
+
+	// Encrypt and seal a copy of the frame, in place
+	// and in parallel if the suite can do that
+	return cipher.encrypt(plainFrame);
+    }
+}
@@ -1,25 +1,52 @@
 package imageconversion;
 
 // Standard imports:
+import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
 import java.util.Arrays;
-
-// External imports:
-import com.sun.image.codec.jpeg.*;
+import java.util.zip.*;
+import javax.imageio.*;
 
 // Project imports:
 import exceptions.*;
 
 
 /**
- * This is a class for converting images.
+ * This is a class for converting images. The JPEG
+ * encoder and decoder are created once and then used
+ * for all images converted by the object, so every
+ * user of JPEG images should have an object of its own.
+ * Tiles that must be pixel exact can be compressed
+ * losslessly with deflate instead of JPEG.
  *
  * @author Bjorn Husberg and Louise Tysk
  * @version 1.0
  * @see java.awt.image.BufferedImage
  */
 public class ImageConverter {
+
+    /**
+     * The color mode with 24 bits per pixel
+     */
+    public static final int COLOR24 = 0;
+
+    /**
+     * The color mode with 16 bits per pixel, 5 bits
+     * of red, 6 bits of green and 5 bits of blue
+     */
+    public static final int COLOR16 = 1;
+
+    /**
+     * The color mode with 8 bits per pixel, using
+     * a fixed palette of 6 levels of each color
+     */
+    public static final int COLOR8 = 2;
+
+    /**
+     * The color mode with 8 bits of gray per pixel
+     */
+    public static final int GRAYSCALE = 3;
     
     /**
      * Predefined pixelbuffers.
@@ -33,6 +60,85 @@ public class ImageConverter {
      */
     private int buffersize;
 
+    /**
+     * The JPEG encoder
+     */
+    private ImageWriter writer;
+
+    /**
+     * The parameters of the JPEG encoder
+     */
+    private ImageWriteParam writeParam;
+
+    /**
+     * The JPEG decoder
+     */
+    private ImageReader reader;
+
+    /**
+     * The parameters of the JPEG decoder
+     */
+    private ImageReadParam readParam;
+
+    /**
+     * The stream that the JPEG encoder writes to
+     */
+    private ByteArrayImageOutputStream output;
+
+    /**
+     * The stream that the JPEG decoder reads from
+     */
+    private ByteArrayImageInputStream input;
+
+    /**
+     * A reusable point for the decoder destination offset
+     */
+    private Point offset;
+
+    /**
+     * Predefined RGB and grayscale tile images, one for
+     * each size up to a whole tile, by type, width and height
+     */
+    private BufferedImage[] tileImages;
+
+    /**
+     * Predefined images of other sizes and types, by type,
+     * width and height packed in a Long
+     */
+    private java.util.Hashtable otherImages;
+
+    /**
+     * The lossless codec for tiles with few colours
+     */
+    private PaletteCodec palette;
+
+    /**
+     * The lossless compressor, created when needed
+     */
+    private Deflater deflater;
+
+    /**
+     * The lossless decompressor, created when needed
+     */
+    private Inflater inflater;
+
+    /**
+     * A buffer for the RGB bytes of a losslessly
+     * compressed tile
+     */
+    private byte[] rgbbuffer;
+
+    /**
+     * A buffer for the compressed bytes of a tile
+     */
+    private byte[] deflatebuffer;
+
+    /**
+     * The colour sums of the source columns when
+     * scaling down, three ints per column
+     */
+    private int[] sums;
+
     
     /**
      * The constructor
@@ -40,6 +146,103 @@ public class ImageConverter {
      */
     public ImageConverter() {
 	buffersize = 0;
+	output = new ByteArrayImageOutputStream(65536);
+	input = new ByteArrayImageInputStream();
+	offset = new Point();
+	tileImages = new BufferedImage[2 * FrameEncoder.TILESIZE *
+				       FrameEncoder.TILESIZE];
+	otherImages = new java.util.Hashtable();
+	palette = new PaletteCodec();
+	rgbbuffer = new byte[0];
+	deflatebuffer = new byte[4096];
+    }
+
+
+    /**
+     * Gets the lossless codec of this converter
+     *
+     * @return the palette codec
+     */
+    public PaletteCodec getPaletteCodec() {
+	return palette;
+    }
+
+
+    /**
+     * Gets a predefined image of the given size. The same
+     * image is returned every time for the same size.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return a TYPE_INT_RGB image
+     */
+    public BufferedImage getTileImage(int width, int height) {
+	return getTileImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+
+    /**
+     * Gets a predefined image of the given size and type.
+     * The same image is returned every time for the same
+     * size and type.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param type the BufferedImage type of the image
+     * @return the image
+     */
+    public BufferedImage getTileImage(int width, int height, int type) {
+	int size = FrameEncoder.TILESIZE;
+	if (width < 1 || width > size || height < 1 || height > size ||
+	    (type != BufferedImage.TYPE_INT_RGB &&
+	     type != BufferedImage.TYPE_BYTE_GRAY)) {
+	    Long key = new Long((long) type << 32 | width << 16 | height);
+	    BufferedImage img = (BufferedImage) otherImages.get(key);
+	    if (img == null) {
+		img = new BufferedImage(width, height, type);
+		otherImages.put(key, img);
+	    }
+	    return img;
+	}
+
+	// The tile sizes are looked up without creating any key
+	int slot = (type == BufferedImage.TYPE_INT_RGB ? 0 : size * size) +
+	    (width - 1) * size + height - 1;
+	BufferedImage tile = tileImages[slot];
+	if (tile == null) {
+	    tile = new BufferedImage(width, height, type);
+	    tileImages[slot] = tile;
+	}
+	return tile;
+    }
+
+
+    /**
+     * Creates the JPEG encoder the first time it is needed
+     *
+     * @throws IOException if there is no JPEG encoder
+     */
+    private void initiateWriter() throws IOException {
+	if (writer != null) return;
+	java.util.Iterator writers = ImageIO.getImageWritersByFormatName("jpeg");
+	if (!writers.hasNext()) throw new IOException("No JPEG encoder");
+	writer = (ImageWriter) writers.next();
+	writeParam = writer.getDefaultWriteParam();
+	writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    }
+
+
+    /**
+     * Creates the JPEG decoder the first time it is needed
+     *
+     * @throws IOException if there is no JPEG decoder
+     */
+    private void initiateReader() throws IOException {
+	if (reader != null) return;
+	java.util.Iterator readers = ImageIO.getImageReadersByFormatName("jpeg");
+	if (!readers.hasNext()) throw new IOException("No JPEG decoder");
+	reader = (ImageReader) readers.next();
+	readParam = reader.getDefaultReadParam();
     }
     
 
@@ -58,20 +261,16 @@ public class ImageConverter {
 
 
     /**
-     * Creates a black image of the given size.
+     * Creates a black image of the given size. The
+     * image is taken from the ImagePool if possible.
      *
      * @param width  the width of the requested image.
      * @param height  the height of the requested image.
      * @return a black image
      */
     public BufferedImage createBlack(int width, int height) {
-	
-	int size = height * width;
-	initiateBuffers(size);
-	BufferedImage blkImg = 
-		new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB); 
-	Arrays.fill(pixelbuffer1, 0);
-	blkImg.setRGB(0, 0, width, height, pixelbuffer1, 0, width);
+	BufferedImage blkImg = ImagePool.getInstance().get(width, height);
+	Arrays.fill(getData(blkImg), 0);
 	return blkImg;
     }
 
@@ -91,17 +290,60 @@ public class ImageConverter {
     public byte[] encodeJPEG(BufferedImage img, float quality) 
     throws IOException {
 	
-	ByteArrayOutputStream out = new ByteArrayOutputStream();
-	JPEGImageEncoder encoder = JPEGCodec.createJPEGEncoder(out);
-	JPEGEncodeParam param = JPEGCodec.getDefaultJPEGEncodeParam(img);
-	param.setQuality(quality, false); 
-	encoder.encode(img, param);
-	byte[] bytearray = out.toByteArray();
-	out.close();
+	ByteArrayImageOutputStream out = encodeJPEGToBuffer(img, quality);
+	byte[] bytearray = new byte[out.size()];
+	System.arraycopy(out.getBuffer(), 0, bytearray, 0, out.size());
 	return bytearray;
     }
     
 
+    /**
+     * Encodes a BufferedImage to JPEG data using given quality.
+     * The data is written to an internal buffer that is
+     * overwritten by the next call, so it has to be used
+     * or copied before that.
+     *
+     * @see #encodeJPEG
+     *
+     * @param img an image that will be encoded
+     * @param quality the quality of the encoding
+     * @throws IOException
+     * @return the buffer holding the JPEG data
+     */
+    public ByteArrayImageOutputStream encodeJPEGToBuffer(BufferedImage img,
+							 float quality)
+    throws IOException {
+
+	encodeJPEG(img, quality, output);
+	return output;
+    }
+
+
+    /**
+     * Encodes a BufferedImage to JPEG data using given quality.
+     * The data is written to the given buffer which is
+     * emptied first.
+     *
+     * @see #encodeJPEG
+     *
+     * @param img an image that will be encoded
+     * @param quality the quality of the encoding
+     * @param out the buffer to write to
+     * @throws IOException
+     */
+    public void encodeJPEG(BufferedImage img, float quality,
+			   ByteArrayImageOutputStream out)
+    throws IOException {
+
+	initiateWriter();
+	out.reset();
+	writer.setOutput(out);
+	writeParam.setCompressionQuality(quality);
+	writer.write(null, new IIOImage(img, null, null), writeParam);
+	out.flush();
+    }
+
+
     /**
      * Decodes a JPEG byte array into a BufferedImage.
      *
@@ -114,56 +356,474 @@ public class ImageConverter {
     public BufferedImage decodeJPEG(byte[] imgdata) 
     throws IOException {
 	
-	ByteArrayInputStream in = new ByteArrayInputStream(imgdata);
-	JPEGImageDecoder decoder = JPEGCodec.createJPEGDecoder(in);
-	BufferedImage img = decoder.decodeAsBufferedImage();
-	in.close();
-	return img;
+	initiateReader();
+	input.setData(imgdata, 0, imgdata.length);
+	reader.setInput(input, true, true);
+	BufferedImage img = reader.read(0);
+	BufferedImage rgbimg = new BufferedImage(img.getWidth(), img.getHeight(),
+						 BufferedImage.TYPE_INT_RGB);
+	Graphics g = rgbimg.getGraphics();
+	g.drawImage(img, 0, 0, null);
+	g.dispose();
+	return rgbimg;
+    }
+
+
+    /**
+     * Decodes JPEG data straight into a part of an existing
+     * image. No new image is created.
+     *
+     * @see #encodeJPEGToBuffer
+     *
+     * @param imgdata an array holding the JPEG data
+     * @param off the position of the JPEG data in the array
+     * @param len the length of the JPEG data
+     * @param dest the image to decode into
+     * @param x the horisontal position in the image
+     * @param y the vertical position in the image
+     * @throws IOException
+     */
+    public void decodeJPEG(byte[] imgdata, int off, int len,
+			   BufferedImage dest, int x, int y)
+    throws IOException {
+
+	initiateReader();
+	input.setData(imgdata, off, len);
+	reader.setInput(input, true, true);
+	offset.setLocation(x, y);
+	readParam.setDestination(dest);
+	readParam.setDestinationOffset(offset);
+	try {
+	    reader.read(0, readParam);
+	} finally {
+	    readParam.setDestination(null);
+	}
     }
     
     
+    /**
+     * Reduces the colors of pixels to a color mode. Pixels
+     * that are reduced once are not changed if they are
+     * reduced again.
+     *
+     * @param pixels the pixels to reduce
+     * @param off the position of the first pixel
+     * @param len the number of pixels
+     * @param mode the color mode
+     */
+    public void quantize(int[] pixels, int off, int len, int mode) {
+	int r, g, b;
+	switch (mode) {
+	case COLOR16:
+	    for (int i = off; i < off + len; i++) {
+		r = (pixels[i] >> 19) & 0x1f;
+		g = (pixels[i] >> 10) & 0x3f;
+		b = (pixels[i] >> 3) & 0x1f;
+		pixels[i] = expand16((r << 11) | (g << 5) | b);
+	    }
+	    break;
+	case COLOR8:
+	    for (int i = off; i < off + len; i++) {
+		r = (((pixels[i] >> 16) & 0xff) * 5 + 127) / 255;
+		g = (((pixels[i] >> 8) & 0xff) * 5 + 127) / 255;
+		b = ((pixels[i] & 0xff) * 5 + 127) / 255;
+		pixels[i] = expand8(r * 36 + g * 6 + b);
+	    }
+	    break;
+	case GRAYSCALE:
+	    for (int i = off; i < off + len; i++) {
+		r = (pixels[i] >> 16) & 0xff;
+		g = (pixels[i] >> 8) & 0xff;
+		b = pixels[i] & 0xff;
+		pixels[i] = 0xff000000 | (((r * 77 + g * 150 + b * 29) >> 8) * 0x010101);
+	    }
+	    break;
+	default:
+	    break;
+	}
+    }
+
+
+    /**
+     * Gets the number of bytes per pixel of a color mode
+     *
+     * @param mode the color mode
+     * @return the number of bytes
+     */
+    private static int getBytesPerPixel(int mode) {
+	switch (mode) {
+	case COLOR16: return 2;
+	case COLOR8: return 1;
+	case GRAYSCALE: return 1;
+	default: return 3;
+	}
+    }
+
+
+    /**
+     * Expands a 16 bit pixel to 24 bits
+     */
+    private static int expand16(int v) {
+	int r = v >> 11, g = (v >> 5) & 0x3f, b = v & 0x1f;
+	return 0xff000000 | (((r << 3) | (r >> 2)) << 16) |
+	    (((g << 2) | (g >> 4)) << 8) | ((b << 3) | (b >> 2));
+    }
+
+
+    /**
+     * Expands an index into the 8 bit palette to 24 bits
+     */
+    private static int expand8(int index) {
+	return 0xff000000 | ((index / 36) * 51 << 16) |
+	    ((index / 6 % 6) * 51 << 8) | ((index % 6) * 51);
+    }
+
+
+    /**
+     * Compresses a tile losslessly. The first byte tells
+     * the color mode which decides how many bytes each
+     * pixel is written as. The pixels are then deflated.
+     * The pixels must already be reduced to the color mode.
+     *
+     * @see #decodeDeflate
+     * @see #quantize
+     *
+     * @param pixels the pixels of the image
+     * @param scan the width of the image
+     * @param x the horisontal position of the tile
+     * @param y the vertical position of the tile
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @param mode the color mode
+     * @param out the buffer to write the compressed tile to
+     * @throws IOException if the buffer fails
+     */
+    public void encodeDeflate(int[] pixels, int scan, int x, int y, int w, int h,
+			      int mode, ByteArrayImageOutputStream out)
+    throws IOException {
+
+	if (deflater == null) deflater = new Deflater();
+	int size = w * h * getBytesPerPixel(mode);
+	if (rgbbuffer.length < size) rgbbuffer = new byte[size];
+	int pos = 0;
+	for (int row = y; row < y + h; row++) {
+	    int offset = row * scan;
+	    for (int i = offset + x; i < offset + x + w; i++) {
+		int p = pixels[i];
+		switch (mode) {
+		case COLOR16:
+		    int v = ((p >> 8) & 0xf800) | ((p >> 5) & 0x07e0) | ((p >> 3) & 0x1f);
+		    rgbbuffer[pos++] = (byte) (v >> 8);
+		    rgbbuffer[pos++] = (byte) v;
+		    break;
+		case COLOR8:
+		    rgbbuffer[pos++] = (byte) (((p >> 16) & 0xff) / 51 * 36 +
+					       ((p >> 8) & 0xff) / 51 * 6 +
+					       (p & 0xff) / 51);
+		    break;
+		case GRAYSCALE:
+		    rgbbuffer[pos++] = (byte) p;
+		    break;
+		default:
+		    rgbbuffer[pos++] = (byte) (p >> 16);
+		    rgbbuffer[pos++] = (byte) (p >> 8);
+		    rgbbuffer[pos++] = (byte) p;
+		}
+	    }
+	}
+
+	out.reset();
+	out.writeByte(mode);
+	deflater.reset();
+	deflater.setInput(rgbbuffer, 0, size);
+	deflater.finish();
+	while (!deflater.finished()) {
+	    int n = deflater.deflate(deflatebuffer);
+	    out.write(deflatebuffer, 0, n);
+	}
+    }
+
+
+    /**
+     * Decompresses a losslessly compressed tile straight
+     * into a part of an existing image
+     *
+     * @see #encodeDeflate
+     *
+     * @param data an array holding the compressed tile
+     * @param off the position of the compressed tile in the array
+     * @param len the length of the compressed tile
+     * @param dest the image to decode into
+     * @param x the horisontal position in the image
+     * @param y the vertical position in the image
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @throws IOException if the data is corrupt
+     */
+    public void decodeDeflate(byte[] data, int off, int len, BufferedImage dest,
+			      int x, int y, int w, int h)
+    throws IOException {
+
+	if (inflater == null) inflater = new Inflater();
+	if (len < 1) throw new IOException("Corrupt lossless tile");
+	int mode = data[off];
+	int size = w * h * getBytesPerPixel(mode);
+	if (rgbbuffer.length < size) rgbbuffer = new byte[size];
+	initiateBuffers(w * h);
+
+	inflater.reset();
+	inflater.setInput(data, off + 1, len - 1);
+	try {
+	    int pos = 0;
+	    while (pos < size && !inflater.finished()) {
+		int n = inflater.inflate(rgbbuffer, pos, size - pos);
+		if (n == 0 && inflater.needsInput())
+		    throw new IOException("Corrupt lossless tile");
+		pos += n;
+	    }
+	    if (pos < size) throw new IOException("Corrupt lossless tile");
+	} catch (DataFormatException e) {
+	    throw new IOException("Corrupt lossless tile");
+	}
+
+	int pos = 0;
+	for (int i = 0; i < w * h; i++) {
+	    switch (mode) {
+	    case COLOR16:
+		pixelbuffer1[i] = expand16(((rgbbuffer[pos] & 0xff) << 8) |
+					   (rgbbuffer[pos + 1] & 0xff));
+		pos += 2;
+		break;
+	    case COLOR8:
+		pixelbuffer1[i] = expand8((rgbbuffer[pos++] & 0xff) % 216);
+		break;
+	    case GRAYSCALE:
+		pixelbuffer1[i] = 0xff000000 | ((rgbbuffer[pos++] & 0xff) * 0x010101);
+		break;
+	    default:
+		pixelbuffer1[i] = 0xff000000 | ((rgbbuffer[pos] & 0xff) << 16) |
+		    ((rgbbuffer[pos + 1] & 0xff) << 8) | (rgbbuffer[pos + 2] & 0xff);
+		pos += 3;
+	    }
+	}
+	dest.setRGB(x, y, w, h, pixelbuffer1, 0, w);
+    }
+
+
+    /**
+     * Encodes the gray levels of an image to a grayscale JPEG
+     * which is smaller than a color JPEG. The image must
+     * already be reduced to grayscale.
+     *
+     * @see #decodeGrayJPEG
+     *
+     * @param img the image to encode
+     * @param quality the JPEG image quality
+     * @param out the buffer to write the JPEG data to
+     * @throws IOException
+     */
+    public void encodeGrayJPEG(BufferedImage img, float quality,
+			       ByteArrayImageOutputStream out)
+    throws IOException {
+
+	int width = img.getWidth();
+	int height = img.getHeight();
+	BufferedImage gray =
+	    getTileImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+	byte[] levels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+
+	initiateBuffers(width * height);
+	int[] pixels = getPixels(img, pixelbuffer1);
+	int stride = getStride(img, pixels);
+	int offset = getOffset(img, pixels);
+	for (int row = 0; row < height; row++) {
+	    int i = offset + row * stride;
+	    int j = row * width;
+	    for (int end = j + width; j < end; i++, j++)
+		levels[j] = (byte) pixels[i];
+	}
+	encodeJPEG(gray, quality, out);
+    }
+
+
+    /**
+     * Decodes a grayscale JPEG straight into a part of an
+     * existing image
+     *
+     * @see #encodeGrayJPEG
+     *
+     * @param imgdata an array holding the JPEG data
+     * @param off the position of the JPEG data in the array
+     * @param len the length of the JPEG data
+     * @param dest the image to decode into
+     * @param x the horisontal position in the image
+     * @param y the vertical position in the image
+     * @throws IOException
+     */
+    public void decodeGrayJPEG(byte[] imgdata, int off, int len,
+			       BufferedImage dest, int x, int y)
+    throws IOException {
+
+	initiateReader();
+	input.setData(imgdata, off, len);
+	reader.setInput(input, true, true);
+	int width = reader.getWidth(0);
+	int height = reader.getHeight(0);
+	BufferedImage gray =
+	    getTileImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+	offset.setLocation(0, 0);
+	readParam.setDestination(gray);
+	readParam.setDestinationOffset(offset);
+	try {
+	    reader.read(0, readParam);
+	} finally {
+	    readParam.setDestination(null);
+	}
+
+	byte[] levels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+	initiateBuffers(width * height);
+	for (int i = 0; i < width * height; i++)
+	    pixelbuffer1[i] = 0xff000000 | ((levels[i] & 0xff) * 0x010101);
+	dest.setRGB(x, y, width, height, pixelbuffer1, 0, width);
+    }
+
+
+    /**
+     * Scales an image down by area-averaging. Every pixel
+     * of the destination gets the mean colour of the source
+     * pixels it covers, which gives much better thumbnails
+     * than dropping pixels. The pixels are accessed directly
+     * in the rasters if possible.
+     *
+     * @param src the image to scale
+     * @param dest the image to scale into, not larger than src
+     */
+    public void scaleDown(BufferedImage src, BufferedImage dest) {
+	int sw = src.getWidth();
+	int sh = src.getHeight();
+	int dw = dest.getWidth();
+	int dh = dest.getHeight();
+	initiateBuffers(sw * sh);
+	int[] spix = getPixels(src, pixelbuffer1);
+	int soff = getOffset(src, spix);
+	int sscan = getStride(src, spix);
+	int[] dpix = isDirect(dest) ? getData(dest) : pixelbuffer2;
+	int doff = getOffset(dest, dpix);
+	int dscan = getStride(dest, dpix);
+	if (sums == null || sums.length < sw * 3) sums = new int[sw * 3];
+
+	for (int dy = 0; dy < dh; dy++) {
+
+	    // Sum the source rows of this destination row
+	    int y0 = dy * sh / dh;
+	    int y1 = Math.max((dy + 1) * sh / dh, y0 + 1);
+	    Arrays.fill(sums, 0, sw * 3, 0);
+	    for (int y = y0; y < y1; y++) {
+		int i = soff + y * sscan;
+		for (int j = 0; j < sw * 3; j += 3) {
+		    int p = spix[i++];
+		    sums[j] += (p >> 16) & 0xff;
+		    sums[j + 1] += (p >> 8) & 0xff;
+		    sums[j + 2] += p & 0xff;
+		}
+	    }
+
+	    // Then the source columns of each destination pixel
+	    int o = doff + dy * dscan;
+	    for (int dx = 0; dx < dw; dx++) {
+		int x0 = dx * sw / dw;
+		int x1 = Math.max((dx + 1) * sw / dw, x0 + 1);
+		int r = 0;
+		int g = 0;
+		int b = 0;
+		for (int j = x0 * 3; j < x1 * 3; j += 3) {
+		    r += sums[j];
+		    g += sums[j + 1];
+		    b += sums[j + 2];
+		}
+		int n = (y1 - y0) * (x1 - x0);
+		dpix[o + dx] = (r / n << 16) | (g / n << 8) | (b / n);
+	    }
+	}
+	if (dpix == pixelbuffer2) dest.setRGB(0, 0, dw, dh, dpix, 0, dw);
+    }
+
+
     /**
      * Creates a BufferedImage as the new image subtracted by the old image.
      * This is for creating JPEG-friendly images with large one-color areas.
+     * The difference image is taken from the ImagePool.
      *
      * @see #restoreDelta
      * 
-     * @param img1 the original image
-     * @param img2 the new image
+     * @param oldimg the original image
+     * @param newimg the new image
      * @throws IncompatibleImageException if the size of the images are unequal
      * @return the difference image
      */
     public BufferedImage createDelta(BufferedImage oldimg, BufferedImage newimg) 
     throws IncompatibleImageException {		
 
+	BufferedImage difimg = ImagePool.getInstance().get(oldimg.getWidth(),
+							   oldimg.getHeight());
+	createDelta(oldimg, newimg, difimg);
+	return difimg;
+    }
+
+
+    /**
+     * Subtracts the old image from the new image and stores the
+     * difference in a given image. The pixels are accessed directly
+     * in the rasters of TYPE_INT_RGB and TYPE_INT_ARGB images,
+     * subimages included, so nothing is copied or allocated.
+     *
+     * @see #restoreDelta
+     *
+     * @param oldimg the original image
+     * @param newimg the new image
+     * @param difimg the image to store the difference in
+     * @throws IncompatibleImageException if the size of the images are unequal
+     */
+    public void createDelta(BufferedImage oldimg, BufferedImage newimg,
+			    BufferedImage difimg)
+    throws IncompatibleImageException {
+
 	int height = oldimg.getHeight();
 	int width = oldimg.getWidth();
-	int size = height * width;
 
-	if (height != newimg.getHeight() || width != newimg.getWidth())
+	if (height != newimg.getHeight() || width != newimg.getWidth() ||
+	    height != difimg.getHeight() || width != difimg.getWidth())
 	    throw new IncompatibleImageException();
 
-	initiateBuffers(size);
-
-	BufferedImage difimg = 
-	    new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-	oldimg.getRGB(0, 0, width, height, pixelbuffer1, 0, width);
-	newimg.getRGB(0, 0, width, height, pixelbuffer2, 0, width);
+	initiateBuffers(height * width);
+	int[] o = getPixels(oldimg, pixelbuffer1);
+	int[] n = getPixels(newimg, pixelbuffer2);
+	int[] d = isDirect(difimg) ? getData(difimg) : pixelbuffer1;
+	int ostride = getStride(oldimg, o);
+	int nstride = getStride(newimg, n);
+	int dstride = getStride(difimg, d);
+	int ooffset = getOffset(oldimg, o);
+	int noffset = getOffset(newimg, n);
+	int doffset = getOffset(difimg, d);
 
 	// for each color layer: dif = ((new[7 bits] - old[7 bits]) + 256) / 2
 
-	for (int i = 0; i < size; i++) pixelbuffer1[i] = (0xfe000000 | 
-			(((0x00fe0000 & pixelbuffer2[i]) - 
-			(0x00fe0000 & pixelbuffer1[i])) + 0x01000000) | 
-			(((0x0000fe00 & pixelbuffer2[i]) - 
-			(0x0000fe00 & pixelbuffer1[i])) + 0x00010000) | 
-			(((0x000000fe & pixelbuffer2[i]) - 
-			(0x000000fe & pixelbuffer1[i])) + 0x00000100)) >> 1;
-
-	difimg.setRGB(0, 0, width, height, pixelbuffer1, 0, width);
+	for (int row = 0; row < height; row++) {
+	    int oi = ooffset + row * ostride;
+	    int ni = noffset + row * nstride;
+	    int di = doffset + row * dstride;
+	    for (int end = di + width; di < end; oi++, ni++, di++)
+		d[di] = (0xfe000000 |
+			 (((0x00fe0000 & n[ni]) -
+			   (0x00fe0000 & o[oi])) + 0x01000000) |
+			 (((0x0000fe00 & n[ni]) -
+			   (0x0000fe00 & o[oi])) + 0x00010000) |
+			 (((0x000000fe & n[ni]) -
+			   (0x000000fe & o[oi])) + 0x00000100)) >> 1;
+	}
 
-	return difimg;
+	if (d == pixelbuffer1)
+	    difimg.setRGB(0, 0, width, height, pixelbuffer1, 0, width);
     }
     
 
@@ -171,46 +831,79 @@ public class ImageConverter {
      * Restores a BufferedImage from an old image and a difference image.
      * This method only makes sense when used on a difference image
      * created by the createDelta method over the same old image that
-     * is now passed to this method. 
+     * is now passed to this method. The restored image is taken
+     * from the ImagePool.
      *
      * @see #createDelta
      * 
-     * @param img1 the original image
-     * @param img2 the new image
+     * @param oldimg the original image
+     * @param difimg the difference image
      * @throws IncompatibleImageException if the size of the images are unequal
-     * @return the difference image
+     * @return the restored image
      */
     public BufferedImage restoreDelta(BufferedImage oldimg, BufferedImage difimg) 
     throws IncompatibleImageException {		
 
+	BufferedImage resimg = ImagePool.getInstance().get(oldimg.getWidth(),
+							   oldimg.getHeight());
+	restoreDelta(oldimg, difimg, resimg);
+	return resimg;
+    }
+
+
+    /**
+     * Restores an image from an old image and a difference image
+     * and stores it in a given image, which may be the old image
+     * itself. The pixels are accessed directly in the rasters of
+     * TYPE_INT_RGB and TYPE_INT_ARGB images, subimages included,
+     * so nothing is copied or allocated.
+     *
+     * @see #createDelta
+     *
+     * @param oldimg the original image
+     * @param difimg the difference image
+     * @param resimg the image to store the restored image in
+     * @throws IncompatibleImageException if the size of the images are unequal
+     */
+    public void restoreDelta(BufferedImage oldimg, BufferedImage difimg,
+			     BufferedImage resimg)
+    throws IncompatibleImageException {
+
 	int height = oldimg.getHeight();
 	int width = oldimg.getWidth();
-	int size = height * width;
 
-	if (height != difimg.getHeight() || width != difimg.getWidth())
+	if (height != difimg.getHeight() || width != difimg.getWidth() ||
+	    height != resimg.getHeight() || width != resimg.getWidth())
 	    throw new IncompatibleImageException();
 
-	initiateBuffers(size);
-
-	BufferedImage resimg = 
-	    new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-	oldimg.getRGB(0, 0, width, height, pixelbuffer1, 0, width);
-	difimg.getRGB(0, 0, width, height, pixelbuffer2, 0, width);
+	initiateBuffers(height * width);
+	int[] o = getPixels(oldimg, pixelbuffer1);
+	int[] f = getPixels(difimg, pixelbuffer2);
+	int[] d = isDirect(resimg) ? getData(resimg) : pixelbuffer1;
+	int ostride = getStride(oldimg, o);
+	int fstride = getStride(difimg, f);
+	int dstride = getStride(resimg, d);
+	int ooffset = getOffset(oldimg, o);
+	int foffset = getOffset(difimg, f);
+	int doffset = getOffset(resimg, d);
 
 	// for each color layer: new = ((dif * 2 - 256) + old[7 bits])
 
 	int r, g, b;
-	for (int i = 0; i < size; i++) {
+	for (int row = 0; row < height; row++) {
+	    int oi = ooffset + row * ostride;
+	    int fi = foffset + row * fstride;
+	    int di = doffset + row * dstride;
+	    for (int end = di + width; di < end; oi++, fi++, di++) {
 	
-		r = (((0x00ff0000 & pixelbuffer2[i]) << 1) - 0x01000000) 
-		    + (0x00fe0000 & pixelbuffer1[i]);
+		r = (((0x00ff0000 & f[fi]) << 1) - 0x01000000)
+		    + (0x00fe0000 & o[oi]);
 
-		g = (((0x0000ff00 & pixelbuffer2[i]) << 1) - 0x00010000) 
-		    + (0x0000fe00 & pixelbuffer1[i]);
+		g = (((0x0000ff00 & f[fi]) << 1) - 0x00010000)
+		    + (0x0000fe00 & o[oi]);
 
-		b = (((0x000000ff & pixelbuffer2[i]) << 1) - 0x00000100) 
-		    + (0x000000fe & pixelbuffer1[i]);
+		b = (((0x000000ff & f[fi]) << 1) - 0x00000100)
+		    + (0x000000fe & o[oi]);
 
 		// We have to clip since the image probably have been JPEG'd
 		// and thus risk to fall out of the interval.
@@ -222,25 +915,86 @@ public class ImageConverter {
 		if (g < 0x00000000) g = 0x00000000;
 		if (b < 0x00000000) b = 0x00000000;
 
-		pixelbuffer1[i] = 0xff000000 | r | g | b;
-	}	
-	resimg.setRGB(0, 0, width, height, pixelbuffer1, 0, width);	
-	return resimg;	
-    }
-}
-
-
-
-
-
+		d[di] = 0xff000000 | r | g | b;
+	    }
+	}
 
+	if (d == pixelbuffer1)
+	    resimg.setRGB(0, 0, width, height, pixelbuffer1, 0, width);
+    }
 
 
+    /**
+     * Checks if the pixels of an image can be accessed
+     * directly in its raster
+     *
+     * @param img the image
+     * @return true if the image has one int per pixel
+     */
+    private static boolean isDirect(BufferedImage img) {
+	int type = img.getType();
+	return (type == BufferedImage.TYPE_INT_RGB ||
+		type == BufferedImage.TYPE_INT_ARGB) &&
+	    img.getRaster().getDataBuffer() instanceof DataBufferInt &&
+	    img.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
 
 
+    /**
+     * Gets the pixel array of an image with direct access
+     *
+     * @param img the image
+     * @return the array behind the raster of the image
+     */
+    private static int[] getData(BufferedImage img) {
+	return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
 
 
+    /**
+     * Gets the pixels of an image. The array behind the raster
+     * is returned if possible, otherwise the pixels are copied
+     * to the given buffer.
+     *
+     * @param img the image
+     * @param buffer the buffer to copy to if needed
+     * @return the array holding the pixels
+     */
+    private static int[] getPixels(BufferedImage img, int[] buffer) {
+	if (isDirect(img)) return getData(img);
+	img.getRGB(0, 0, img.getWidth(), img.getHeight(), buffer, 0, img.getWidth());
+	return buffer;
+    }
 
 
+    /**
+     * Gets the position of the first pixel of an image in
+     * an array returned by getPixels
+     *
+     * @param img the image
+     * @param pixels the array holding the pixels
+     * @return the position in the array
+     */
+    private static int getOffset(BufferedImage img, int[] pixels) {
+	if (!isDirect(img) || pixels != getData(img)) return 0;
+	WritableRaster raster = img.getRaster();
+	return raster.getDataBuffer().getOffset() -
+	    raster.getSampleModelTranslateY() * getStride(img, pixels) -
+	    raster.getSampleModelTranslateX();
+    }
 
 
+    /**
+     * Gets the distance between two rows of an image in
+     * an array returned by getPixels
+     *
+     * @param img the image
+     * @param pixels the array holding the pixels
+     * @return the number of ints per row
+     */
+    private static int getStride(BufferedImage img, int[] pixels) {
+	if (!isDirect(img) || pixels != getData(img)) return img.getWidth();
+	return ((SinglePixelPackedSampleModel)
+		img.getRaster().getSampleModel()).getScanlineStride();
+    }
+}
@@ -0,0 +1,108 @@
+package imageconversion;
+
+// Standard imports:
+import java.awt.image.*;
+import java.util.*;
+
+
+/**
+ * This class keeps images that are no longer used so
+ * that they can be used again instead of allocating new
+ * ones. The images are kept by size and only a few of
+ * each size are kept. To make sure that there is only
+ * one pool the object is singleton. To get a handle of
+ * the object the getInstance method is used.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ */
+public class ImagePool {
+
+    /**
+     * The largest number of images of each size
+     * that are kept
+     */
+    private static final int MAXIMAGES = 4;
+
+    /**
+     * Private variable to hold the actual object
+     */
+    private static ImagePool s = null;
+
+    /**
+     * The kept images, a Vector for each size
+     */
+    private Hashtable images;
+
+
+    /**
+     * The constructor is private to prevent
+     * more than one object of this class.
+     */
+    private ImagePool() {
+	images = new Hashtable();
+    }
+
+
+    /**
+     * This static method is used instead of the
+     * constructor. It creates a new object if none
+     * exists or returns the existing one.
+     *
+     * @return the ImagePool object
+     */
+    public static synchronized ImagePool getInstance() {
+	if (s == null) s = new ImagePool();
+	return s;
+    }
+
+
+    /**
+     * Gets an image of the given size. A kept image is
+     * returned if there is one, otherwise a new image
+     * is created. The contents of a kept image are
+     * whatever was last drawn in it.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return a TYPE_INT_RGB image
+     */
+    public synchronized BufferedImage get(int width, int height) {
+	Vector kept = (Vector) images.get(key(width, height));
+	if (kept != null && !kept.isEmpty()) {
+	    BufferedImage img = (BufferedImage) kept.lastElement();
+	    kept.removeElementAt(kept.size() - 1);
+	    return img;
+	}
+	return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+
+    /**
+     * Returns an image to the pool. The image is flushed
+     * and must not be used any more by the caller.
+     *
+     * @param img the image to return, subimages and images
+     *        of other types than TYPE_INT_RGB are ignored
+     */
+    public synchronized void release(BufferedImage img) {
+	if (img == null || img.getType() != BufferedImage.TYPE_INT_RGB ||
+	    img.getRaster().getParent() != null) return;
+	img.flush();
+	Integer key = key(img.getWidth(), img.getHeight());
+	Vector kept = (Vector) images.get(key);
+	if (kept == null) {
+	    kept = new Vector();
+	    images.put(key, kept);
+	}
+	if (kept.size() < MAXIMAGES && !kept.contains(img)) kept.addElement(img);
+    }
+
+
+    /**
+     * Gets the key of an image size
+     */
+    private static Integer key(int width, int height) {
+	return new Integer(width * 65536 + height);
+    }
+}
@@ -0,0 +1,274 @@
+package imageconversion;
+
+// Standard imports:
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * This class encodes tiles with few colours losslessly as a
+ * palette followed by run-lengths of palette indices. This
+ * suits text and user interface elements much better than
+ * JPEG which blurs sharp edges.
+ *
+ * The encoded data looks like this:
+ *
+ * <pre>
+ * number of colours - 1 (1 byte)
+ * the colours (3 bytes each, red green blue)
+ * runs: palette index (1 byte, left out if there is only one colour)
+ *       run-length - 1 (7 bits per byte, high bit set if more bytes follow)
+ * </pre>
+ *
+ * An object of this class holds buffers and is not
+ * thread safe. Every ImageConverter has one of its own.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ */
+public class PaletteCodec {
+
+    /**
+     * The largest number of colours in a lossless tile
+     */
+    public static final int MAXCOLOURS = 64;
+
+    /**
+     * The size of the colour hash table
+     */
+    private static final int TABLESIZE = 256;
+
+    /**
+     * The colours in the hash table
+     */
+    private int[] keys;
+
+    /**
+     * The palette index of each colour in the hash table
+     * plus one, zero means an empty slot
+     */
+    private int[] values;
+
+    /**
+     * The colours of the palette in order
+     */
+    private int[] palette;
+
+    /**
+     * The hash table slot of each colour in the palette
+     */
+    private int[] slots;
+
+    /**
+     * The number of colours in the palette
+     */
+    private int colours;
+
+    /**
+     * A buffer for decoded pixels
+     */
+    private int[] pixelbuffer;
+
+
+    /**
+     * The constructor
+     */
+    public PaletteCodec() {
+	keys = new int[TABLESIZE];
+	values = new int[TABLESIZE];
+	palette = new int[MAXCOLOURS];
+	slots = new int[MAXCOLOURS];
+	pixelbuffer = new int[0];
+    }
+
+
+    /**
+     * Checks if a tile is worth encoding losslessly. This is
+     * the case if it has at most MAXCOLOURS colours and the
+     * encoded size is estimated to be less than half a byte
+     * per pixel. The palette is kept for a following encode.
+     *
+     * @param pixels the pixels of the image
+     * @param scan the width of the image
+     * @param x the horisontal position of the tile
+     * @param y the vertical position of the tile
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @return true if the tile should be encoded losslessly
+     */
+    public boolean isSuitable(int[] pixels, int scan, int x, int y, int w, int h) {
+	clear();
+	int runs = 0;
+	int last = pixels[y * scan + x] + 1;
+	for (int row = y; row < y + h; row++) {
+	    int offset = row * scan;
+	    for (int i = offset + x; i < offset + x + w; i++) {
+		if (pixels[i] == last) continue;
+		last = pixels[i];
+		runs++;
+		if (lookup(last) < 0) return false;
+	    }
+	}
+	return colours * 3 + runs * 2 < w * h / 2;
+    }
+
+
+    /**
+     * Encodes a tile. The isSuitable method must have
+     * been called on the same tile right before.
+     *
+     * @param pixels the pixels of the image
+     * @param scan the width of the image
+     * @param x the horisontal position of the tile
+     * @param y the vertical position of the tile
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @param out the stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void encode(int[] pixels, int scan, int x, int y, int w, int h,
+		       DataOutput out) throws IOException {
+	out.writeByte(colours - 1);
+	for (int i = 0; i < colours; i++) {
+	    out.writeByte(palette[i] >> 16);
+	    out.writeByte(palette[i] >> 8);
+	    out.writeByte(palette[i]);
+	}
+	if (colours == 1) return;
+
+	int current = pixels[y * scan + x];
+	int length = 0;
+	for (int row = y; row < y + h; row++) {
+	    int offset = row * scan;
+	    for (int i = offset + x; i < offset + x + w; i++) {
+		if (pixels[i] == current) {
+		    length++;
+		} else {
+		    writeRun(out, lookup(current), length);
+		    current = pixels[i];
+		    length = 1;
+		}
+	    }
+	}
+	writeRun(out, lookup(current), length);
+    }
+
+
+    /**
+     * Decodes a tile straight into an image
+     *
+     * @param data the array holding the encoded tile
+     * @param off the position of the encoded tile
+     * @param len the length of the encoded tile
+     * @param img the image to decode into
+     * @param x the horisontal position in the image
+     * @param y the vertical position in the image
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @throws IOException if the data is corrupt
+     */
+    public void decode(byte[] data, int off, int len, BufferedImage img,
+		       int x, int y, int w, int h) throws IOException {
+	int end = off + len;
+	int n = (data[off++] & 0xff) + 1;
+	if (n > MAXCOLOURS || off + n * 3 > end)
+	    throw new IOException("Corrupt lossless tile");
+	for (int i = 0; i < n; i++) {
+	    palette[i] = 0xff000000 | ((data[off] & 0xff) << 16) |
+		((data[off + 1] & 0xff) << 8) | (data[off + 2] & 0xff);
+	    off += 3;
+	}
+
+	int size = w * h;
+	if (pixelbuffer.length < size) pixelbuffer = new int[size];
+
+	if (n == 1) {
+	    Arrays.fill(pixelbuffer, 0, size, palette[0]);
+	} else {
+	    int pos = 0;
+	    while (pos < size) {
+		if (off >= end) throw new IOException("Corrupt lossless tile");
+		int index = data[off++] & 0xff;
+		int length = 0;
+		int shift = 0;
+		int b;
+		do {
+		    if (off >= end) throw new IOException("Corrupt lossless tile");
+		    b = data[off++] & 0xff;
+		    length |= (b & 0x7f) << shift;
+		    shift += 7;
+		} while ((b & 0x80) != 0);
+		length++;
+		if (index >= n || pos + length > size)
+		    throw new IOException("Corrupt lossless tile");
+		Arrays.fill(pixelbuffer, pos, pos + length, palette[index]);
+		pos += length;
+	    }
+	}
+	img.setRGB(x, y, w, h, pixelbuffer, 0, w);
+    }
+
+
+    /**
+     * Writes a run
+     *
+     * @param out the stream to write to
+     * @param index the palette index
+     * @param length the run-length
+     * @throws IOException if the stream fails
+     */
+    private void writeRun(DataOutput out, int index, int length)
+	throws IOException {
+	out.writeByte(index);
+	length--;
+	while (length >= 0x80) {
+	    out.writeByte((length & 0x7f) | 0x80);
+	    length >>>= 7;
+	}
+	out.writeByte(length);
+    }
+
+
+    /**
+     * Empties the palette
+     */
+    private void clear() {
+	for (int i = 0; i < colours; i++) values[slots[i]] = 0;
+	colours = 0;
+    }
+
+
+    /**
+     * Gets the palette index of a colour. The colour
+     * is added to the palette if it is new.
+     *
+     * @param colour the colour
+     * @return the index or -1 if the palette is full
+     */
+    private int lookup(int colour) {
+	int slot = slot(colour);
+	if (values[slot] != 0) return values[slot] - 1;
+	if (colours == MAXCOLOURS) return -1;
+	keys[slot] = colour;
+	slots[colours] = slot;
+	palette[colours] = colour;
+	values[slot] = ++colours;
+	return colours - 1;
+    }
+
+
+    /**
+     * Finds the hash table slot of a colour
+     *
+     * @param colour the colour
+     * @return the slot that holds the colour or the
+     *         empty slot where it belongs
+     */
+    private int slot(int colour) {
+	int slot = ((colour & 0xffffff) * 0x9e3779b1 >>> 24) % TABLESIZE;
+	while (values[slot] != 0 && keys[slot] != colour)
+	    slot = (slot + 1) % TABLESIZE;
+	return slot;
+    }
+}
@@ -0,0 +1,272 @@
+package imageconversion;
+
+// Standard imports:
+import java.util.*;
+
+
+/**
+ * This class searches for areas that have been moved
+ * between two images, as when a window is scrolled.
+ * The images are searched in stripes, one tile wide
+ * for vertical moves and one tile high for horizontal
+ * moves. Each stripe gives at most one move which is
+ * described as an int array:
+ *
+ * <pre>
+ * {source x, source y, destination x, destination y, width, height}
+ * </pre>
+ *
+ * Horizontal moves are only searched for if no
+ * vertical move was found.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ */
+public class ScrollDetector {
+
+    /**
+     * The smallest number of lines that
+     * are worth moving
+     */
+    private static int MINRUN = 16;
+
+    /**
+     * Line hashes of the old image
+     */
+    private int[] oldhashes;
+
+    /**
+     * Line hashes of the new image
+     */
+    private int[] newhashes;
+
+
+    /**
+     * The constructor
+     */
+    public ScrollDetector() {
+	oldhashes = new int[0];
+	newhashes = new int[0];
+    }
+
+
+    /**
+     * Searches for moved areas between two images.
+     * Only stripes with at least two changed tiles
+     * are searched.
+     *
+     * @param oldpixels the pixels of the old image
+     * @param newpixels the pixels of the new image
+     * @param width the width of the images
+     * @param height the height of the images
+     * @param dirty one boolean per tile row by row telling
+     *        which tiles that have changed
+     * @return a Vector with one int array per move
+     */
+    public Vector detect(int[] oldpixels, int[] newpixels,
+			 int width, int height, boolean[] dirty) {
+
+	int columns = (width + FrameEncoder.TILESIZE - 1) / FrameEncoder.TILESIZE;
+	int rows = (height + FrameEncoder.TILESIZE - 1) / FrameEncoder.TILESIZE;
+	Vector moves = new Vector();
+
+	if (oldhashes.length < Math.max(width, height)) {
+	    oldhashes = new int[Math.max(width, height)];
+	    newhashes = new int[Math.max(width, height)];
+	}
+
+	// Vertical moves in stripes of tile columns
+	for (int column = 0; column < columns; column++) {
+	    int count = 0;
+	    for (int row = 0; row < rows; row++)
+		if (dirty[row * columns + column]) count++;
+	    if (count < 2) continue;
+
+	    int x = column * FrameEncoder.TILESIZE;
+	    int w = Math.min(FrameEncoder.TILESIZE, width - x);
+	    int[] run = search(oldpixels, newpixels, width, height, x, w, false);
+	    if (run != null) add(moves, new int[] {x, run[0], x, run[1], w, run[2]}, false);
+	}
+	if (!moves.isEmpty()) return moves;
+
+	// Horizontal moves in stripes of tile rows
+	for (int row = 0; row < rows; row++) {
+	    int count = 0;
+	    for (int column = 0; column < columns; column++)
+		if (dirty[row * columns + column]) count++;
+	    if (count < 2) continue;
+
+	    int y = row * FrameEncoder.TILESIZE;
+	    int h = Math.min(FrameEncoder.TILESIZE, height - y);
+	    int[] run = search(oldpixels, newpixels, width, height, y, h, true);
+	    if (run != null) add(moves, new int[] {run[0], y, run[1], y, run[2], h}, true);
+	}
+	return moves;
+    }
+
+
+    /**
+     * Moves an area within an image
+     *
+     * @param pixels the pixels of the image
+     * @param width the width of the image
+     * @param move the move to perform
+     */
+    public static void apply(int[] pixels, int width, int[] move) {
+	int sx = move[0], sy = move[1], dx = move[2], dy = move[3];
+	int w = move[4], h = move[5];
+
+	// Copy the rows in an order that doesn't
+	// overwrite rows that are still to be copied
+	if (dy > sy) {
+	    for (int row = h - 1; row >= 0; row--)
+		System.arraycopy(pixels, (sy + row) * width + sx,
+				 pixels, (dy + row) * width + dx, w);
+	} else {
+	    for (int row = 0; row < h; row++)
+		System.arraycopy(pixels, (sy + row) * width + sx,
+				 pixels, (dy + row) * width + dx, w);
+	}
+    }
+
+
+    /**
+     * Searches one stripe for the longest run of lines
+     * that has been moved by the same distance
+     *
+     * @param oldpixels the pixels of the old image
+     * @param newpixels the pixels of the new image
+     * @param width the width of the images
+     * @param height the height of the images
+     * @param start the position of the stripe across the lines
+     * @param size the width of the stripe across the lines
+     * @param horizontal true if the lines are columns
+     * @return {source position, destination position, length}
+     *         of the run or null if none was found
+     */
+    private int[] search(int[] oldpixels, int[] newpixels, int width,
+			 int height, int start, int size, boolean horizontal) {
+
+	int lines = horizontal ? width : height;
+
+	// Hash every line of the stripe
+	Hashtable positions = new Hashtable();
+	for (int i = 0; i < lines; i++) {
+	    oldhashes[i] = hash(oldpixels, width, i, start, size, horizontal);
+	    newhashes[i] = hash(newpixels, width, i, start, size, horizontal);
+	    if (!isFlat(oldpixels, width, i, start, size, horizontal))
+		positions.put(new Integer(oldhashes[i]), new Integer(i));
+	}
+
+	// Let every changed line vote for a distance
+	Hashtable votes = new Hashtable();
+	int best = 0;
+	int bestvotes = 0;
+	for (int i = 0; i < lines; i++) {
+	    if (newhashes[i] == oldhashes[i]) continue;
+	    Integer position = (Integer) positions.get(new Integer(newhashes[i]));
+	    if (position == null) continue;
+	    Integer distance = new Integer(i - position.intValue());
+	    Integer count = (Integer) votes.get(distance);
+	    int n = (count == null) ? 1 : count.intValue() + 1;
+	    votes.put(distance, new Integer(n));
+	    if (n > bestvotes) {
+		bestvotes = n;
+		best = distance.intValue();
+	    }
+	}
+	if (bestvotes < MINRUN || best == 0) return null;
+
+	// Find the longest run of lines that really moved that distance
+	int runstart = 0;
+	int runlength = 0;
+	int current = 0;
+	for (int i = Math.max(best, 0); i < Math.min(lines, lines + best); i++) {
+	    if (newhashes[i] == oldhashes[i - best] &&
+		equals(oldpixels, newpixels, width, i - best, i, start, size, horizontal)) {
+		current++;
+		if (current > runlength) {
+		    runlength = current;
+		    runstart = i - current + 1;
+		}
+	    } else {
+		current = 0;
+	    }
+	}
+	if (runlength < MINRUN) return null;
+	return new int[] {runstart - best, runstart, runlength};
+    }
+
+
+    /**
+     * Adds a move to the Vector, merging it with the last
+     * move if they are neighbours with the same distance
+     *
+     * @param moves the moves so far
+     * @param move the new move
+     * @param horizontal true if the moves are horizontal
+     */
+    private void add(Vector moves, int[] move, boolean horizontal) {
+	if (!moves.isEmpty()) {
+	    int[] last = (int[]) moves.lastElement();
+	    if (!horizontal && last[1] == move[1] && last[3] == move[3] &&
+		last[5] == move[5] && last[0] + last[4] == move[0]) {
+		last[4] += move[4];
+		return;
+	    }
+	    if (horizontal && last[0] == move[0] && last[2] == move[2] &&
+		last[4] == move[4] && last[1] + last[5] == move[1]) {
+		last[5] += move[5];
+		return;
+	    }
+	}
+	moves.addElement(move);
+    }
+
+
+    /**
+     * Gets the index of a pixel along a line
+     */
+    private static int index(int width, int line, int pos, boolean horizontal) {
+	return horizontal ? pos * width + line : line * width + pos;
+    }
+
+
+    /**
+     * Hashes the part of a line that is inside a stripe
+     */
+    private static int hash(int[] pixels, int width, int line,
+			    int start, int size, boolean horizontal) {
+	int h = 0;
+	for (int pos = start; pos < start + size; pos++)
+	    h = h * 31 + pixels[index(width, line, pos, horizontal)];
+	return h;
+    }
+
+
+    /**
+     * Checks if the part of a line that is inside a stripe
+     * has only one colour. Such lines match everywhere and
+     * are useless when searching for moves.
+     */
+    private static boolean isFlat(int[] pixels, int width, int line,
+				  int start, int size, boolean horizontal) {
+	int first = pixels[index(width, line, start, horizontal)];
+	for (int pos = start + 1; pos < start + size; pos++)
+	    if (pixels[index(width, line, pos, horizontal)] != first) return false;
+	return true;
+    }
+
+
+    /**
+     * Compares the parts of two lines that are inside a stripe
+     */
+    private static boolean equals(int[] oldpixels, int[] newpixels, int width,
+				  int oldline, int newline,
+				  int start, int size, boolean horizontal) {
+	for (int pos = start; pos < start + size; pos++)
+	    if (oldpixels[index(width, oldline, pos, horizontal)] !=
+		newpixels[index(width, newline, pos, horizontal)]) return false;
+	return true;
+    }
+}
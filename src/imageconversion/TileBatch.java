@@ -0,0 +1,82 @@
+package imageconversion;
+
+
+/**
+ * This class keeps track of a group of tile jobs that
+ * has been handed to a TileWorkers pool. The pool uses
+ * it to tell the caller when all jobs are done.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see TileWorkers
+ */
+class TileBatch {
+
+    /**
+     * The number of jobs that are not finished
+     */
+    private int remaining;
+
+    /**
+     * The first exception thrown by a job
+     */
+    private Exception exception;
+
+
+    /**
+     * The constructor
+     *
+     * @param count the number of jobs in the batch
+     */
+    TileBatch(int count) {
+	remaining = count;
+	exception = null;
+    }
+
+
+    /**
+     * Runs one of the jobs in the batch
+     *
+     * @param job the job
+     * @param converter the image converter of the running thread
+     */
+    void run(TileJob job, ImageConverter converter) {
+	try {
+	    job.run(converter);
+	} catch (Exception e) {
+	    fail(e);
+	} finally {
+	    done();
+	}
+    }
+
+
+    /**
+     * Waits until all jobs are done
+     *
+     * @throws Exception the first exception thrown by a job
+     */
+    synchronized void await() throws Exception {
+	while (remaining > 0) wait();
+	if (exception != null) throw exception;
+    }
+
+
+    /**
+     * Tells that a job is finished
+     */
+    private synchronized void done() {
+	remaining--;
+	if (remaining == 0) notifyAll();
+    }
+
+
+    /**
+     * Stores the exception of a failed job
+     *
+     * @param e the exception
+     */
+    private synchronized void fail(Exception e) {
+	if (exception == null) exception = e;
+    }
+}
@@ -0,0 +1,273 @@
+package imageconversion;
+
+// Standard imports:
+import java.awt.image.*;
+import java.io.*;
+import java.math.BigInteger;
+import java.security.*;
+import java.util.*;
+
+
+/**
+ * This class is a cache of recently sent tiles. Both the
+ * server and the client keep one and they are kept in sync
+ * by doing exactly the same operations in the same order:
+ * every tile record stores a tile in the least recently
+ * used slot and every cache record uses a slot again.
+ *
+ * The server side cache maps the MD5 hash of the pixels of
+ * each tile to its slot, so that a tile that has been sent
+ * before is found. The client side cache holds the pixels
+ * of the tiles as they were decoded.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FrameEncoder
+ * @see FrameDecoder
+ */
+public class TileCache {
+
+    /**
+     * The number of slots in the cache
+     */
+    public static final int SIZE = 512;
+
+    /**
+     * The time each slot was last used, zero if it is empty
+     */
+    private long[] used;
+
+    /**
+     * The counter that gives the times
+     */
+    private long clock;
+
+    /**
+     * The key of the tile in each slot, server side only
+     */
+    private Object[] keys;
+
+    /**
+     * The slot of each key, server side only
+     */
+    private Hashtable slots;
+
+    /**
+     * true for each slot that holds a pixel exact
+     * tile, server side only
+     */
+    private boolean[] exact;
+
+    /**
+     * The pixels of the tile in each slot, client side only
+     */
+    private int[][] pixels;
+
+    /**
+     * The width of the tile in each slot, client side only
+     */
+    private int[] widths;
+
+    /**
+     * The height of the tile in each slot, client side only
+     */
+    private int[] heights;
+
+    /**
+     * The hash function, created when needed
+     */
+    private MessageDigest digest;
+
+    /**
+     * A buffer for the bytes that are hashed
+     */
+    private byte[] bytes;
+
+
+    /**
+     * The constructor creates an empty cache
+     */
+    public TileCache() {
+	used = new long[SIZE];
+	keys = new Object[SIZE];
+	slots = new Hashtable();
+	exact = new boolean[SIZE];
+	pixels = new int[SIZE][];
+	widths = new int[SIZE];
+	heights = new int[SIZE];
+	bytes = new byte[0];
+	clock = 0;
+    }
+
+
+    /**
+     * Empties the cache
+     */
+    public void clear() {
+	Arrays.fill(used, 0);
+	Arrays.fill(keys, null);
+	slots.clear();
+	clock = 0;
+    }
+
+
+    /**
+     * Takes the least recently used slot, or an empty
+     * one, for a new tile
+     *
+     * @return the slot
+     */
+    public int insert() {
+	int slot = 0;
+	for (int i = 0; i < SIZE; i++) {
+	    if (used[i] < used[slot]) slot = i;
+	    if (used[slot] == 0) break;
+	}
+	if (keys[slot] != null && new Integer(slot).equals(slots.get(keys[slot])))
+	    slots.remove(keys[slot]);
+	keys[slot] = null;
+	touch(slot);
+	return slot;
+    }
+
+
+    /**
+     * Marks a slot as the most recently used
+     *
+     * @param slot the slot
+     */
+    public void touch(int slot) {
+	used[slot] = ++clock;
+    }
+
+
+    /**
+     * Takes a slot for a new tile and remembers its key
+     *
+     * @param key the key of the tile
+     * @return the slot
+     * @see #getKey
+     */
+    public int insert(Object key) {
+	int slot = insert();
+	keys[slot] = key;
+	slots.put(key, new Integer(slot));
+	return slot;
+    }
+
+
+    /**
+     * Finds the slot of a tile
+     *
+     * @param key the key of the tile
+     * @return the slot or -1 if the tile is not in the cache
+     * @see #getKey
+     */
+    public int lookup(Object key) {
+	Integer slot = (Integer) slots.get(key);
+	return (slot == null) ? -1 : slot.intValue();
+    }
+
+
+    /**
+     * Tells if the tile in a slot is pixel exact
+     *
+     * @param slot the slot
+     * @param b true if the tile is pixel exact
+     */
+    public void setExact(int slot, boolean b) {
+	exact[slot] = b;
+    }
+
+
+    /**
+     * Checks if the tile in a slot is pixel exact
+     *
+     * @param slot the slot
+     * @return true if the tile is pixel exact
+     */
+    public boolean isExact(int slot) {
+	return exact[slot];
+    }
+
+
+    /**
+     * Computes the key of a tile. Tiles with the same
+     * size and pixels get equal keys.
+     *
+     * @param pix the pixels of the image
+     * @param scan the width of the image
+     * @param x the horisontal position of the tile
+     * @param y the vertical position of the tile
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @return the key
+     */
+    public Object getKey(int[] pix, int scan, int x, int y, int w, int h) {
+	if (digest == null) {
+	    try {
+		digest = MessageDigest.getInstance("MD5");
+	    } catch (NoSuchAlgorithmException e) {
+		throw new RuntimeException(e.toString());
+	    }
+	}
+	int size = w * h * 3 + 4;
+	if (bytes.length < size) bytes = new byte[size];
+	int pos = 0;
+	bytes[pos++] = (byte) (w >> 8);
+	bytes[pos++] = (byte) w;
+	bytes[pos++] = (byte) (h >> 8);
+	bytes[pos++] = (byte) h;
+	for (int row = y; row < y + h; row++) {
+	    int offset = row * scan;
+	    for (int i = offset + x; i < offset + x + w; i++) {
+		bytes[pos++] = (byte) (pix[i] >> 16);
+		bytes[pos++] = (byte) (pix[i] >> 8);
+		bytes[pos++] = (byte) pix[i];
+	    }
+	}
+	digest.update(bytes, 0, size);
+	return new BigInteger(1, digest.digest());
+    }
+
+
+    /**
+     * Stores the pixels of a tile in a slot
+     *
+     * @param slot the slot
+     * @param img the image that holds the tile
+     * @param x the horisontal position of the tile
+     * @param y the vertical position of the tile
+     * @param w the width of the tile
+     * @param h the height of the tile
+     */
+    public void store(int slot, BufferedImage img, int x, int y, int w, int h) {
+	if (pixels[slot] == null || pixels[slot].length < w * h)
+	    pixels[slot] = new int[Math.max(w * h, FrameEncoder.TILESIZE *
+					    FrameEncoder.TILESIZE)];
+	img.getRGB(x, y, w, h, pixels[slot], 0, w);
+	widths[slot] = w;
+	heights[slot] = h;
+    }
+
+
+    /**
+     * Draws the tile in a slot into an image
+     *
+     * @param slot the slot
+     * @param img the image to draw into
+     * @param x the horisontal position of the tile
+     * @param y the vertical position of the tile
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @throws IOException if the slot doesn't hold a tile of that size
+     */
+    public void load(int slot, BufferedImage img, int x, int y, int w, int h)
+	throws IOException {
+	if (slot < 0 || slot >= SIZE || used[slot] == 0 ||
+	    widths[slot] != w || heights[slot] != h)
+	    throw new IOException("Tile cache out of sync");
+	touch(slot);
+	img.setRGB(x, y, w, h, pixels[slot], 0, w);
+    }
+}
@@ -0,0 +1,130 @@
+package imageconversion;
+
+// Standard imports:
+import java.awt.image.*;
+
+
+/**
+ * This class is a job that decodes a single tile
+ * and patches it into an image, delta restoring it
+ * first if needed. Lossless tiles are decoded
+ * straight into the image.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FrameDecoder
+ */
+class TileDecodeJob implements TileJob {
+
+    /**
+     * The frame data buffer
+     */
+    private byte[] data;
+
+    /**
+     * The position of the JPEG data in the buffer
+     */
+    private int offset;
+
+    /**
+     * The length of the JPEG data
+     */
+    private int length;
+
+    /**
+     * The image to patch
+     */
+    private BufferedImage img;
+
+    /**
+     * The horisontal position of the tile
+     */
+    private int x;
+
+    /**
+     * The vertical position of the tile
+     */
+    private int y;
+
+    /**
+     * The width of the tile
+     */
+    private int width;
+
+    /**
+     * The height of the tile
+     */
+    private int height;
+
+    /**
+     * true if the tile is delta precompressed
+     */
+    private boolean delta;
+
+    /**
+     * The record type of the tile
+     */
+    private byte type;
+
+
+    /**
+     * Sets up the job for a new tile
+     *
+     * @param data the frame data buffer
+     * @param offset the position of the JPEG data
+     * @param length the length of the JPEG data
+     * @param img the image to patch
+     * @param x the horisontal position of the tile
+     * @param y the vertical position of the tile
+     * @param width the width of the tile
+     * @param height the height of the tile
+     * @param delta true if the tile is delta precompressed
+     * @param type the record type of the tile
+     */
+    void set(byte[] data, int offset, int length, BufferedImage img,
+	     int x, int y, int width, int height, boolean delta,
+	     byte type) {
+	this.data = data;
+	this.offset = offset;
+	this.length = length;
+	this.img = img;
+	this.x = x;
+	this.y = y;
+	this.width = width;
+	this.height = height;
+	this.delta = delta;
+	this.type = type;
+    }
+
+
+    /**
+     * Decodes the tile and patches it into the image.
+     * Without delta precompression the tile is decoded
+     * straight into the image, otherwise it is restored
+     * in place in the image.
+     *
+     * @param converter the image converter to use
+     * @throws Exception if the tile can't be decoded
+     */
+    public void run(ImageConverter converter) throws Exception {
+	if (type == FrameEncoder.PALETTE) {
+	    converter.getPaletteCodec().decode(data, offset, length, img,
+						x, y, width, height);
+	} else if (type == FrameEncoder.DEFLATE) {
+	    converter.decodeDeflate(data, offset, length, img,
+				    x, y, width, height);
+	} else if (delta) {
+	    BufferedImage tile = converter.getTileImage(width, height);
+	    if (type == FrameEncoder.GRAYTILE)
+		converter.decodeGrayJPEG(data, offset, length, tile, 0, 0);
+	    else
+		converter.decodeJPEG(data, offset, length, tile, 0, 0);
+	    BufferedImage area = img.getSubimage(x, y, width, height);
+	    converter.restoreDelta(area, tile, area);
+	} else if (type == FrameEncoder.GRAYTILE) {
+	    converter.decodeGrayJPEG(data, offset, length, img, x, y);
+	} else {
+	    converter.decodeJPEG(data, offset, length, img, x, y);
+	}
+    }
+}
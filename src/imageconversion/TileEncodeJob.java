@@ -0,0 +1,183 @@
+package imageconversion;
+
+// Standard imports:
+import java.awt.image.*;
+
+
+/**
+ * This class is a job that delta precompresses, if enabled,
+ * and JPEG encodes a single tile. Tiles with few colours,
+ * such as text, are encoded losslessly by the PaletteCodec
+ * instead and are never delta precompressed. Refined tiles
+ * are always encoded losslessly, with deflate if they have
+ * too many colours for the palette, and so are all tiles in
+ * the 8 bit color mode. In grayscale mode the JPEG tiles
+ * have only one component. The job keeps
+ * its own output buffer so that the encoded data survives
+ * until the tile has been written to the frame.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FrameEncoder
+ */
+class TileEncodeJob implements TileJob {
+
+    /**
+     * The image that the tile is taken from
+     */
+    private BufferedImage img;
+
+    /**
+     * The client side image or null if delta
+     * precompression is disabled
+     */
+    private BufferedImage clientImg;
+
+    /**
+     * The pixels of the image
+     */
+    private int[] pixels;
+
+    /**
+     * The width of the image
+     */
+    private int scan;
+
+    /**
+     * The horisontal position of the tile
+     */
+    int x;
+
+    /**
+     * The vertical position of the tile
+     */
+    int y;
+
+    /**
+     * The width of the tile
+     */
+    int width;
+
+    /**
+     * The height of the tile
+     */
+    int height;
+
+    /**
+     * The JPEG image quality
+     */
+    private float quality;
+
+    /**
+     * The color mode
+     */
+    private int mode;
+
+    /**
+     * true if the tile must be encoded losslessly
+     */
+    private boolean refine;
+
+    /**
+     * The record type of the encoded tile
+     */
+    byte type;
+
+    /**
+     * The tile cache slot of the tile
+     */
+    int slot;
+
+    /**
+     * true if the tile is already in the tile cache
+     * and doesn't have to be encoded
+     */
+    boolean cached;
+
+    /**
+     * The buffer that holds the encoded tile
+     */
+    ByteArrayImageOutputStream output;
+
+
+    /**
+     * The constructor
+     */
+    TileEncodeJob() {
+	output = new ByteArrayImageOutputStream(4096);
+    }
+
+
+    /**
+     * Sets up the job for a new tile
+     *
+     * @param img the image that the tile is taken from
+     * @param clientImg the client side image or null
+     * @param pixels the pixels of the image
+     * @param x the horisontal position of the tile
+     * @param y the vertical position of the tile
+     * @param width the width of the tile
+     * @param height the height of the tile
+     * @param quality the JPEG image quality
+     * @param mode the color mode
+     * @param refine true if the tile must be encoded losslessly
+     */
+    void set(BufferedImage img, BufferedImage clientImg, int[] pixels,
+	     int x, int y, int width, int height, float quality,
+	     int mode, boolean refine) {
+	this.img = img;
+	this.clientImg = clientImg;
+	this.pixels = pixels;
+	this.scan = img.getWidth();
+	this.x = x;
+	this.y = y;
+	this.width = width;
+	this.height = height;
+	this.quality = quality;
+	this.mode = mode;
+	this.refine = refine;
+	cached = false;
+    }
+
+
+    /**
+     * Encodes the tile unless it is cached
+     *
+     * @param converter the image converter to use
+     * @throws Exception if the tile can't be encoded
+     */
+    public void run(ImageConverter converter) throws Exception {
+	output.reset();
+	if (cached) {
+	    type = FrameEncoder.CACHED;
+	    return;
+	}
+
+	PaletteCodec codec = converter.getPaletteCodec();
+	if (codec.isSuitable(pixels, scan, x, y, width, height)) {
+	    type = FrameEncoder.PALETTE;
+	    codec.encode(pixels, scan, x, y, width, height, output);
+	    return;
+	}
+	if (refine || mode == ImageConverter.COLOR8) {
+	    type = FrameEncoder.DEFLATE;
+	    converter.encodeDeflate(pixels, scan, x, y, width, height, mode, output);
+	    return;
+	}
+
+	BufferedImage tile = img.getSubimage(x, y, width, height);
+	if (clientImg != null) {
+	    BufferedImage difimg = converter.getTileImage(width, height);
+	    converter.createDelta(clientImg.getSubimage(x, y, width, height),
+				  tile, difimg);
+	    tile = difimg;
+	}
+	if (mode == ImageConverter.GRAYSCALE) {
+	    type = FrameEncoder.GRAYTILE;
+	    converter.encodeGrayJPEG(tile, quality, output);
+	} else {
+	    type = FrameEncoder.TILE;
+	    converter.encodeJPEG(tile, quality, output);
+	}
+    }
+}
@@ -0,0 +1,15 @@
+package imageconversion;
+
+
+/**
+ * This is an interface for work on a single tile
+ * that can be done by a TileWorkers pool.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see TileWorkers
+ */
+public interface TileJob {
+
+    public void run(ImageConverter converter) throws Exception;
+}
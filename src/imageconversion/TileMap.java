@@ -0,0 +1,171 @@
+package imageconversion;
+
+
+/**
+ * This class keeps track of when the tiles of an image
+ * were last changed. Each tile holds a stamp, usually the
+ * number of the frame in which the tile last changed.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ */
+public class TileMap {
+
+    /**
+     * The stamps of the tiles, row by row
+     */
+    private int[] stamps;
+
+    /**
+     * The number of tile columns
+     */
+    private int columns;
+
+    /**
+     * The number of tile rows
+     */
+    private int rows;
+
+
+    /**
+     * Creates a map for an image of the given size.
+     * All stamps are initially zero.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     */
+    public TileMap(int width, int height) {
+	columns = (width + FrameEncoder.TILESIZE - 1) / FrameEncoder.TILESIZE;
+	rows = (height + FrameEncoder.TILESIZE - 1) / FrameEncoder.TILESIZE;
+	stamps = new int[columns * rows];
+    }
+
+
+    /**
+     * Creates a copy of another map
+     *
+     * @param map the map to copy
+     */
+    public TileMap(TileMap map) {
+	columns = map.columns;
+	rows = map.rows;
+	stamps = (int[]) map.stamps.clone();
+    }
+
+
+    /**
+     * Gives all tiles the same stamp
+     *
+     * @param stamp the stamp
+     */
+    public void fill(int stamp) {
+	for (int i = 0; i < stamps.length; i++) stamps[i] = stamp;
+    }
+
+
+    /**
+     * Compares two images of the same size tile by tile
+     * and stamps the tiles that differ
+     *
+     * @param oldpixels the pixels of the old image
+     * @param newpixels the pixels of the new image
+     * @param width the width of the images
+     * @param height the height of the images
+     * @param stamp the stamp to give the changed tiles
+     * @return true if any tile has changed
+     */
+    public boolean update(int[] oldpixels, int[] newpixels,
+			  int width, int height, int stamp) {
+	boolean changed = false;
+	for (int row = 0; row < rows; row++) {
+	    int ty = row * FrameEncoder.TILESIZE;
+	    int th = Math.min(FrameEncoder.TILESIZE, height - ty);
+	    for (int column = 0; column < columns; column++) {
+		int tx = column * FrameEncoder.TILESIZE;
+		int tw = Math.min(FrameEncoder.TILESIZE, width - tx);
+		if (differs(oldpixels, newpixels, width, tx, ty, tw, th)) {
+		    stamps[row * columns + column] = stamp;
+		    changed = true;
+		}
+	    }
+	}
+	return changed;
+    }
+
+
+    /**
+     * Checks if any tile that overlaps the given
+     * area has a stamp newer than the given one
+     *
+     * @param x the x value of the area
+     * @param y the y value of the area
+     * @param width the width of the area
+     * @param height the height of the area
+     * @param since the stamp to compare with
+     * @return true if the area may have changed
+     */
+    public boolean isChanged(int x, int y, int width, int height, int since) {
+	int c1 = Math.max(x / FrameEncoder.TILESIZE, 0);
+	int r1 = Math.max(y / FrameEncoder.TILESIZE, 0);
+	int c2 = Math.min((x + width - 1) / FrameEncoder.TILESIZE, columns - 1);
+	int r2 = Math.min((y + height - 1) / FrameEncoder.TILESIZE, rows - 1);
+	for (int row = r1; row <= r2; row++)
+	    for (int column = c1; column <= c2; column++)
+		if (stamps[row * columns + column] > since) return true;
+	return false;
+    }
+
+
+    /**
+     * Creates a change hint for the tiles of an area. The
+     * area is split into tiles of its own and a tile is
+     * marked if it overlaps a tile in this map that has
+     * a stamp newer than the given one.
+     *
+     * @param x the x value of the area
+     * @param y the y value of the area
+     * @param width the width of the area
+     * @param height the height of the area
+     * @param since the stamp to compare with
+     * @return the hint, one boolean per tile of the area row by row
+     */
+    public boolean[] getHint(int x, int y, int width, int height, int since) {
+	int hcolumns = (width + FrameEncoder.TILESIZE - 1) / FrameEncoder.TILESIZE;
+	int hrows = (height + FrameEncoder.TILESIZE - 1) / FrameEncoder.TILESIZE;
+	boolean[] hint = new boolean[hcolumns * hrows];
+	for (int row = 0; row < hrows; row++) {
+	    int ty = row * FrameEncoder.TILESIZE;
+	    int th = Math.min(FrameEncoder.TILESIZE, height - ty);
+	    for (int column = 0; column < hcolumns; column++) {
+		int tx = column * FrameEncoder.TILESIZE;
+		int tw = Math.min(FrameEncoder.TILESIZE, width - tx);
+		hint[row * hcolumns + column] =
+		    isChanged(x + tx, y + ty, tw, th, since);
+	    }
+	}
+	return hint;
+    }
+
+
+    /**
+     * Compares a tile of two images
+     *
+     * @param oldpixels the pixels of the old image
+     * @param newpixels the pixels of the new image
+     * @param width the width of the images
+     * @param tx the x value of the tile
+     * @param ty the y value of the tile
+     * @param tw the width of the tile
+     * @param th the height of the tile
+     * @return true if the tile differs
+     */
+    static boolean differs(int[] oldpixels, int[] newpixels, int width,
+			   int tx, int ty, int tw, int th) {
+	for (int row = ty; row < ty + th; row++) {
+	    int offset = row * width + tx;
+	    for (int i = offset; i < offset + tw; i++)
+		if (oldpixels[i] != newpixels[i]) return true;
+	}
+	return false;
+    }
+}
@@ -0,0 +1,49 @@
+package imageconversion;
+
+
+/**
+ * This thread class is one of the workers in a TileWorkers
+ * pool. Each worker has an image converter of its own since
+ * the JPEG encoder and decoder can only be used by one
+ * thread at a time.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see TileWorkers
+ */
+class TileWorker extends Thread {
+
+    /**
+     * The pool that this worker takes jobs from
+     */
+    private TileWorkers pool;
+
+    /**
+     * The image converter of this worker
+     */
+    private ImageConverter converter;
+
+
+    /**
+     * The constructor
+     *
+     * @param p the pool that owns this worker
+     */
+    TileWorker(TileWorkers p) {
+	pool = p;
+	converter = new ImageConverter();
+	setDaemon(true);
+    }
+
+
+    /**
+     * Loops infinitely running jobs from the pool
+     */
+    public void run() {
+	while (true) {
+	    try {
+		pool.runNext(converter);
+	    } catch (InterruptedException e) {}
+	}
+    }
+}
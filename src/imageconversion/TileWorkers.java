@@ -0,0 +1,141 @@
+package imageconversion;
+
+// Standard imports:
+import java.util.*;
+
+
+/**
+ * This class is a pool of worker threads that encode and
+ * decode tiles in parallel. There is one pool shared by all
+ * users in the virtual machine with one worker less than the
+ * number of processors, since the thread that hands over a
+ * group of jobs works on them too while it waits. To prevent
+ * more than one pool the object is singleton. To get a handle
+ * of the object the getInstance method is used.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see TileJob
+ */
+public class TileWorkers {
+
+    /**
+     * Private variable to hold the actual object
+     */
+    private static TileWorkers s = null;
+
+    /**
+     * The jobs waiting to be run. Each job is followed
+     * by the batch that it belongs to.
+     */
+    private Vector queue;
+
+    /**
+     * The number of worker threads
+     */
+    private int workers;
+
+
+    /**
+     * The constructor is private to prevent
+     * more than one object of this class.
+     *
+     * @param n the number of worker threads
+     */
+    private TileWorkers(int n) {
+	queue = new Vector();
+	workers = n;
+	for (int i = 0; i < n; i++) new TileWorker(this).start();
+    }
+
+
+    /**
+     * This static method is used instead of the
+     * constructor. It creates a new object if none
+     * exists or returns the existing one.
+     *
+     * @return the TileWorkers object
+     */
+    public static synchronized TileWorkers getInstance() {
+	if (s == null)
+	    s = new TileWorkers(Runtime.getRuntime().availableProcessors() - 1);
+	return s;
+    }
+
+
+    /**
+     * Runs a group of jobs and waits until all are done. The
+     * calling thread runs jobs as well using the given converter.
+     * Single jobs are run directly by the calling thread.
+     *
+     * @param jobs the jobs
+     * @param count the number of jobs to run from the array
+     * @param converter the image converter of the calling thread
+     * @throws Exception the first exception thrown by a job
+     */
+    public void execute(TileJob[] jobs, int count, ImageConverter converter)
+	throws Exception {
+
+	if (count == 0) return;
+	if (count == 1 || workers == 0) {
+	    for (int i = 0; i < count; i++) jobs[i].run(converter);
+	    return;
+	}
+
+	TileBatch batch = new TileBatch(count);
+	synchronized (queue) {
+	    for (int i = 0; i < count; i++) {
+		queue.addElement(jobs[i]);
+		queue.addElement(batch);
+	    }
+	    queue.notifyAll();
+	}
+
+	// Help the workers with our own jobs
+	TileJob job;
+	while ((job = take(batch)) != null) batch.run(job, converter);
+	batch.await();
+    }
+
+
+    /**
+     * Waits for a job in the queue and runs it. This
+     * is called by the worker threads.
+     *
+     * @param converter the image converter of the worker
+     * @throws InterruptedException if the worker is interrupted
+     */
+    void runNext(ImageConverter converter) throws InterruptedException {
+	TileJob job;
+	TileBatch batch;
+	synchronized (queue) {
+	    while (queue.isEmpty()) queue.wait();
+	    job = (TileJob) queue.elementAt(0);
+	    batch = (TileBatch) queue.elementAt(1);
+	    queue.removeElementAt(0);
+	    queue.removeElementAt(0);
+	}
+	batch.run(job, converter);
+    }
+
+
+    /**
+     * Takes a waiting job from the given batch out of the queue
+     *
+     * @param batch the batch
+     * @return the job or null if all jobs in the batch are taken
+     */
+    private TileJob take(TileBatch batch) {
+	synchronized (queue) {
+	    for (int i = 1; i < queue.size(); i += 2) {
+		if (queue.elementAt(i) == batch) {
+		    TileJob job = (TileJob) queue.elementAt(i - 1);
+		    queue.removeElementAt(i - 1);
+		    queue.removeElementAt(i - 1);
+		    return job;
+		}
+	    }
+	}
+	return null;
+    }
+}
@@ -0,0 +1,50 @@
+package imageupdate;
+
+// Project imports:
+import Client;
+
+
+/**
+ * This stage of the FramePipeline decodes the tiles of
+ * the decrypted frames, delta restores them if needed
+ * and patches them into the image of the client. The
+ * tiles of a frame are decoded in parallel by the
+ * TileWorkers pool.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see Client#patchFrame
+ */
+public class DecodeStage extends PipelineStage {
+
+    /**
+     * The client that the frames belong to
+     */
+    private Client client;
+
+
+    /**
+     * The constructor
+     *
+     * @param c the client that the frames belong to
+     * @param s the scheduler that is told about failures
+     * @param n the stage that paints the image
+     */
+    public DecodeStage(Client c, FrameScheduler s, PipelineStage n) {
+	super("DecodeStage", s, FramePipeline.QUEUESIZE, n);
+	client = c;
+    }
+
+
+    /**
+     * Decodes a frame and patches it into the image
+     *
+     * @param o the decrypted frame data buffer
+     * @return a Vector with a Rectangle for each updated
+     *         area, or null if nothing was updated
+     * @throws Exception if the frame can't be decoded
+     */
+    protected Object process(Object o) throws Exception {
+	return client.patchFrame((byte[]) o);
+    }
+}
@@ -0,0 +1,46 @@
+package imageupdate;
+
+// Project imports:
+import Client;
+
+
+/**
+ * This stage of the FramePipeline decrypts the
+ * frame data buffers if encryption is on
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see Client#decryptFrame
+ */
+public class DecryptStage extends PipelineStage {
+
+    /**
+     * The client that the frames belong to
+     */
+    private Client client;
+
+
+    /**
+     * The constructor
+     *
+     * @param c the client that the frames belong to
+     * @param s the scheduler that is told about failures
+     * @param n the stage that decodes the frames
+     */
+    public DecryptStage(Client c, FrameScheduler s, PipelineStage n) {
+	super("DecryptStage", s, FramePipeline.QUEUESIZE, n);
+	client = c;
+    }
+
+
+    /**
+     * Decrypts a frame
+     *
+     * @param o the frame data buffer
+     * @return the decrypted frame
+     * @throws Exception if the frame is corrupt
+     */
+    protected Object process(Object o) throws Exception {
+	return client.decryptFrame((byte[]) o);
+    }
+}
@@ -0,0 +1,65 @@
+package imageupdate;
+
+// Project imports:
+import rmiserver.RMIServerInterface;
+import rmiserver.FrameBatch;
+
+
+/**
+ * This thread class is used by the ImageUpdateThread
+ * to fetch new frames from the server. There are
+ * several fetchers so that several calls to the server
+ * can be in flight at a time. Each one waits for a
+ * credit, acknowledges the last frame patched in and
+ * hands the frames it gets over to the FrameScheduler.
+ * The fetcher ends when the scheduler is shut down.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ */
+public class FrameFetcher extends Thread {
+
+    /**
+     * A reference to the server
+     */
+    private RMIServerInterface server;
+
+    /**
+     * The scheduler that gives out the credits
+     */
+    private FrameScheduler scheduler;
+
+
+    /**
+     * The constructor
+     *
+     * @param s a reference to the server
+     * @param f the scheduler of the ImageUpdateThread
+     */
+    public FrameFetcher(RMIServerInterface s, FrameScheduler f) {
+	server = s;
+	scheduler = f;
+    }
+
+
+    /**
+     * The thread loops fetching frames as long
+     * as there are credits
+     */
+    public void run() {
+	while (true) {
+	    try {
+		int acked = scheduler.takeCredit();
+		long start = System.currentTimeMillis();
+		try {
+		    FrameBatch batch = server.nextFrames(acked, FrameScheduler.CREDITS);
+		    scheduler.received(batch, System.currentTimeMillis() - start);
+		} catch (Exception e) {
+		    scheduler.failed();
+		}
+	    } catch (InterruptedException e) {
+		if (scheduler.isShutdown()) return;
+	    }
+	}
+    }
+}
@@ -0,0 +1,128 @@
+package imageupdate;
+
+// Project imports:
+import Client;
+
+
+/**
+ * This class passes the received frames through the
+ * stages that show them: decrypt, decode and paint. Each
+ * stage is a thread of its own, so a frame is decrypted
+ * while the one before it is decoded and the one before
+ * that is painted, and the frame rate is set by the
+ * slowest stage instead of by all of them together.
+ * Between the stages are small queues that make a stage
+ * wait when the next one falls behind, except for the
+ * paint stage which only paints the latest image.
+ * A frame that fails in a stage is reported to the
+ * scheduler, which then starts over with a full frame.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see ImageUpdateThread
+ */
+public class FramePipeline {
+
+    /**
+     * The largest number of frames waiting for the
+     * decrypt stage and for the decode stage
+     */
+    static final int QUEUESIZE = 2;
+
+    /**
+     * The stage that decrypts the frames
+     */
+    private PipelineStage decrypt;
+
+    /**
+     * The stage that decodes the frames
+     */
+    private PipelineStage decode;
+
+    /**
+     * The stage that paints the image
+     */
+    private PipelineStage paint;
+
+
+    /**
+     * The constructor executes the stages
+     *
+     * @param c the client that the frames belong to
+     * @param s the scheduler that is told about failures
+     */
+    public FramePipeline(Client c, FrameScheduler s) {
+	paint = new PaintStage(c, s);
+	decode = new DecodeStage(c, s, paint);
+	decrypt = new DecryptStage(c, s, decode);
+    }
+
+
+    /**
+     * Puts a frame in the pipeline. This blocks while
+     * the decrypt stage has a full queue.
+     *
+     * @param frame the frame data buffer
+     * @throws InterruptedException if the pipeline is closed
+     */
+    public void put(byte[] frame) throws InterruptedException {
+	decrypt.put(frame);
+    }
+
+
+    /**
+     * Waits until all the frames in the
+     * pipeline have been painted
+     *
+     * @throws InterruptedException if the pipeline is closed
+     */
+    public void drain() throws InterruptedException {
+	decrypt.drain();
+	decode.drain();
+	paint.drain();
+    }
+
+
+    /**
+     * Stops the stages. The frames in the
+     * pipeline are thrown away.
+     */
+    public void close() {
+	decrypt.close();
+	decode.close();
+	paint.close();
+    }
+
+
+    /**
+     * Gets the average time the decrypt stage
+     * takes for a frame
+     *
+     * @return the time in milliseconds
+     */
+    public long getDecryptTime() {
+	return decrypt.getTime();
+    }
+
+
+    /**
+     * Gets the average time the decode stage
+     * takes for a frame
+     *
+     * @return the time in milliseconds
+     */
+    public long getDecodeTime() {
+	return decode.getTime();
+    }
+
+
+    /**
+     * Gets the average time the paint stage
+     * takes for an image
+     *
+     * @return the time in milliseconds
+     */
+    public long getPaintTime() {
+	return paint.getTime();
+    }
+}
@@ -0,0 +1,121 @@
+package imageupdate;
+
+// Standard imports:
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+
+/**
+ * This class receives the frames that the server pushes
+ * over a stream. The records are read with a blocking
+ * socket channel, one at a time, so a client that falls
+ * behind makes the server wait and skip screenshots
+ * instead of queueing frames.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see rmiserver.FrameStreamer
+ */
+public class FrameReceiver {
+
+    /**
+     * The size of the record header in bytes
+     */
+    private static final int HEADERSIZE = 8;
+
+    /**
+     * The largest frame that is accepted
+     */
+    private static final int MAXFRAME = 64 * 1024 * 1024;
+
+    /**
+     * The channel to the server
+     */
+    private SocketChannel channel;
+
+    /**
+     * The buffer that the headers are read into
+     */
+    private ByteBuffer header;
+
+    /**
+     * The generation of the image area of the last frame
+     */
+    private int generation;
+
+
+    /**
+     * The constructor connects to the stream and
+     * sends the ticket
+     *
+     * @param host the host of the server
+     * @param port the port of the stream
+     * @param ticket the ticket of the stream
+     * @throws IOException if the connection fails
+     */
+    public FrameReceiver(String host, int port, byte[] ticket)
+	throws IOException {
+	channel = SocketChannel.open(new InetSocketAddress(host, port));
+	channel.socket().setTcpNoDelay(true);
+	header = ByteBuffer.allocateDirect(HEADERSIZE);
+	ByteBuffer b = ByteBuffer.wrap(ticket);
+	while (b.hasRemaining()) channel.write(b);
+    }
+
+
+    /**
+     * Reads the next frame. This blocks until the
+     * server has sent one.
+     *
+     * @return the frame data
+     * @throws IOException if the stream is broken
+     */
+    public byte[] read() throws IOException {
+	header.clear();
+	fill(header);
+	header.flip();
+	int length = header.getInt();
+	generation = header.getInt();
+	if (length < 0 || length > MAXFRAME)
+	    throw new IOException("Corrupt stream");
+	byte[] frame = new byte[length];
+	fill(ByteBuffer.wrap(frame));
+	return frame;
+    }
+
+
+    /**
+     * Gets the generation of the image area that
+     * the last frame was encoded for
+     *
+     * @return the generation
+     * @see rmiserver.RMIServer#getGeneration
+     */
+    public int getGeneration() {
+	return generation;
+    }
+
+
+    /**
+     * Closes the stream
+     */
+    public void close() {
+	try {
+	    channel.close();
+	} catch (Exception e) {}
+    }
+
+
+    /**
+     * Reads until a buffer is full
+     *
+     * @param b the buffer
+     * @throws IOException if the stream ends or fails
+     */
+    private void fill(ByteBuffer b) throws IOException {
+	while (b.hasRemaining())
+	    if (channel.read(b) < 0) throw new EOFException();
+    }
+}
@@ -0,0 +1,388 @@
+package imageupdate;
+
+// Standard imports:
+import java.util.*;
+
+// Project imports:
+import rmiserver.FrameBatch;
+
+
+/**
+ * This class schedules the frames of an ImageUpdateThread
+ * and its FrameFetchers. The fetchers take credits before
+ * they call the server and hand the frames they get over
+ * to the scheduler, which hands them on to the update
+ * thread in the order of their sequence numbers. A credit
+ * is given back when a frame has been patched in, at the
+ * earliest when the next frame is due if there is a target
+ * frame rate.
+ *
+ * All the threads block on this object while they wait,
+ * so an idle client uses no processor time. A pause is
+ * taken when the frames in flight have been patched in,
+ * and a shutdown wakes every thread that waits so that
+ * it can end.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see ImageUpdateThread
+ * @see FrameFetcher
+ */
+public class FrameScheduler {
+
+    /**
+     * The largest number of frames in flight or waiting
+     * to be patched in, and the number of fetchers
+     */
+    static final int CREDITS = 3;
+
+    /**
+     * The received frames that are not patched in
+     * yet, by sequence number
+     */
+    private Hashtable frames;
+
+    /**
+     * The time it took to fetch each received frame
+     */
+    private Hashtable times;
+
+    /**
+     * The sequence number of the next frame to patch in
+     */
+    private int expected;
+
+    /**
+     * The number of calls to the server in flight
+     */
+    private int issued;
+
+    /**
+     * boolean to tell that the update thread holds
+     * a frame that it hasn't given the credit back for
+     */
+    private boolean handling;
+
+    /**
+     * The time it took to fetch the last frame
+     * handed to the update thread
+     */
+    private long fetchTime;
+
+    /**
+     * boolean to tell that a call failed and
+     * frames may have been lost
+     */
+    private boolean failed;
+
+    /**
+     * booelan to tell that someone has
+     * asked the update thread to pause
+     */
+    private boolean pausereq;
+
+    /**
+     * boolean to tell that the update
+     * thread is in pause state
+     */
+    private boolean paused;
+
+    /**
+     * boolean to tell that the threads
+     * should end
+     */
+    private boolean shutdown;
+
+    /**
+     * The shortest time between two frames in
+     * milliseconds, zero if there is no target
+     */
+    private long interval;
+
+    /**
+     * The time when the last frame was due
+     */
+    private long last;
+
+
+    /**
+     * The constructor
+     *
+     * @param fps the target frame rate, zero for no target
+     */
+    public FrameScheduler(int fps) {
+	frames = new Hashtable();
+	times = new Hashtable();
+	expected = 0;
+	issued = 0;
+	handling = false;
+	failed = false;
+	pausereq = false;
+	paused = false;
+	shutdown = false;
+	setTargetFPS(fps);
+    }
+
+
+    /**
+     * Sets the target frame rate
+     *
+     * @param fps the frames per second, zero for no target
+     */
+    public synchronized void setTargetFPS(int fps) {
+	interval = fps > 0 ? 1000 / fps : 0;
+    }
+
+
+    /**
+     * Sets a pause request and then waits until
+     * the update thread is paused. The frames in
+     * flight are patched in first.
+     */
+    public synchronized void pause() {
+	pausereq = true;
+	notifyAll();
+	while (!paused && !shutdown) {
+	    try {
+		wait();
+	    } catch (InterruptedException e) {}
+	}
+    }
+
+
+    /**
+     * Ends a pause
+     */
+    public synchronized void resume() {
+	pausereq = false;
+	paused = false;
+	notifyAll();
+    }
+
+
+    /**
+     * Tells all the threads to end
+     */
+    public synchronized void shutdown() {
+	shutdown = true;
+	notifyAll();
+    }
+
+
+    /**
+     * Tells if the threads should end
+     *
+     * @return true after a shutdown
+     */
+    public synchronized boolean isShutdown() {
+	return shutdown;
+    }
+
+
+    /**
+     * Tells if a pause is asked for
+     *
+     * @return true until the pause is ended
+     */
+    public synchronized boolean isPauseRequested() {
+	return pausereq;
+    }
+
+
+    /**
+     * Pauses the calling thread if a pause is asked
+     * for and waits until it is ended
+     *
+     * @throws InterruptedException if the threads are shut down
+     */
+    public synchronized void checkPause() throws InterruptedException {
+	if (pausereq) {
+	    paused = true;
+	    notifyAll();
+	    while (paused && !shutdown) wait();
+	}
+	if (shutdown) throw new InterruptedException();
+    }
+
+
+    /**
+     * Waits until a fetcher may call the server
+     * and counts the call as in flight. The frames in
+     * flight, the ones waiting and the one that the
+     * update thread holds are counted just like the
+     * server counts them, so the server always has a
+     * credit left for the call.
+     *
+     * @return the sequence number of the last frame
+     *         patched in, to acknowledge to the server
+     * @throws InterruptedException if the threads are shut down
+     */
+    synchronized int takeCredit() throws InterruptedException {
+	while (!shutdown &&
+	       (pausereq || failed ||
+		issued + frames.size() + (handling ? 1 : 0) >= CREDITS))
+	    wait();
+	if (shutdown) throw new InterruptedException();
+	issued++;
+	return expected - 1;
+    }
+
+
+    /**
+     * Takes the frames returned by a call to the server
+     *
+     * @param batch the frames
+     * @param millis the time the call took
+     */
+    synchronized void received(FrameBatch batch, long millis) {
+	issued--;
+	for (int i = 0; i < batch.size(); i++) {
+	    Integer key = new Integer(batch.getSequence() + i);
+	    frames.put(key, batch.getFrame(i));
+	    times.put(key, new Long(millis));
+	}
+	notifyAll();
+    }
+
+
+    /**
+     * Tells that a call to the server failed,
+     * or that frames were lost some other way
+     */
+    synchronized void failed() {
+	issued--;
+	setFailed();
+    }
+
+
+    /**
+     * Marks the frames as lost, without
+     * a call being in flight
+     */
+    synchronized void setFailed() {
+	failed = true;
+	notifyAll();
+    }
+
+
+    /**
+     * Tells if frames may have been lost
+     *
+     * @return true until the sequence numbers are resynced
+     */
+    synchronized boolean isFailed() {
+	return failed;
+    }
+
+
+    /**
+     * Throws away the frames that are not patched in
+     * and starts over with a new sequence number
+     *
+     * @param next the sequence number of the next frame
+     */
+    synchronized void resync(int next) {
+	frames.clear();
+	times.clear();
+	expected = next;
+	handling = false;
+	failed = false;
+	notifyAll();
+    }
+
+
+    /**
+     * Gets the sequence number of the next frame
+     *
+     * @return the sequence number
+     */
+    synchronized int getExpected() {
+	return expected;
+    }
+
+
+    /**
+     * Waits for the next frame in order. If a pause is
+     * asked for or a call failed the frames in flight are
+     * waited for first, and then no frame is returned.
+     *
+     * @return the frame data, or null
+     * @throws InterruptedException if the threads are shut down
+     */
+    synchronized byte[] nextFrame() throws InterruptedException {
+	Integer key = new Integer(expected);
+	while (!shutdown && !frames.containsKey(key) &&
+	       !(issued == 0 && (pausereq || failed)))
+	    wait();
+	if (shutdown) throw new InterruptedException();
+	byte[] frame = (byte[]) frames.remove(key);
+	if (frame != null) {
+	    fetchTime = ((Long) times.remove(key)).longValue();
+	    handling = true;
+	}
+	return frame;
+    }
+
+
+    /**
+     * Gets the time it took to fetch the frame that
+     * nextFrame returned last
+     *
+     * @return the time in milliseconds
+     */
+    synchronized long getFetchTime() {
+	return fetchTime;
+    }
+
+
+    /**
+     * Tells that a frame has been patched in and gives
+     * its credit back when the next frame is due
+     *
+     * @param delay the shortest time to wait in milliseconds
+     * @throws InterruptedException if the threads are shut down
+     */
+    synchronized void frameDone(long delay) throws InterruptedException {
+	pace(delay);
+	expected++;
+	handling = false;
+	notifyAll();
+    }
+
+
+    /**
+     * Waits until the next frame is due. The wait is
+     * cut short by a pause request.
+     *
+     * @param delay the shortest time to wait in milliseconds
+     * @throws InterruptedException if the threads are shut down
+     */
+    synchronized void pace(long delay) throws InterruptedException {
+	long now = System.currentTimeMillis();
+	long due = Math.max(now + delay, last + interval);
+	while (!shutdown && !pausereq && now < due) {
+	    wait(due - now);
+	    now = System.currentTimeMillis();
+	}
+	if (shutdown) throw new InterruptedException();
+
+	// A frame that is a little late doesn't move the
+	// next one, so the frame rate holds on average
+	last = now - due < interval ? due : now;
+    }
+
+
+    /**
+     * Waits for a while, unless the threads are shut down
+     *
+     * @param millis the time in milliseconds
+     * @throws InterruptedException if the threads are shut down
+     */
+    synchronized void sleep(long millis) throws InterruptedException {
+	long end = System.currentTimeMillis() + millis;
+	long now;
+	while (!shutdown && (now = System.currentTimeMillis()) < end)
+	    wait(end - now);
+	if (shutdown) throw new InterruptedException();
+    }
+}
@@ -2,6 +2,8 @@ package imageupdate;
 
 // Standard imports:
 import java.awt.image.*;
+import java.io.*;
+import java.rmi.RemoteException;
 
 // Project imports:
 import Client;
@@ -10,8 +12,32 @@ import rmiserver.RMIServerInterface;
 
 
 /**
- * This thread class loops infinitely asking
- * the server for new images. 
+ * This thread class loops infinitely patching
+ * new images from the server into the client image.
+ * The frames are fetched by FrameFetcher threads,
+ * several at a time, so that the server encodes new
+ * frames while the ones before are on their way. A
+ * FrameScheduler hands the frames over in the order of
+ * their sequence numbers, keeps the fetchers from having
+ * more frames in flight and waiting than there are
+ * credits, and paces the frames to the target frame rate
+ * of the user. The frames are then shown by a
+ * FramePipeline, which decrypts, decodes and paints
+ * them in stages of their own while the next frames are
+ * fetched.
+ *
+ * If the user has a target bitrate or latency the
+ * frames are also timed by a RateController which
+ * decides the JPEG quality of the stream. If the
+ * overview is on it is fetched now and then between
+ * the frames.
+ *
+ * If the server pushes the frames over a stream this
+ * thread reads them from a FrameReceiver instead, and
+ * the fetchers are not needed. The stream keeps pace
+ * with the network by itself, so only the target frame
+ * rate is kept. If the stream breaks the thread goes
+ * back to fetching the images.
  *
  * @author Bjorn Husberg and Louise Tysk
  * @version 1.0
@@ -19,10 +45,21 @@ import rmiserver.RMIServerInterface;
 public class ImageUpdateThread extends Thread {
 
     /**
-     * A reference for holding the last 
-     * received image data
+     * The time between two overviews in milliseconds
+     */
+    private static final long OVERVIEWINTERVAL = 1000;
+
+    /**
+     * The time to wait before trying again when
+     * the server can't be reached, in milliseconds
      */
-    private byte[] JPEGArray;
+    private static final long RETRYDELAY = 1000;
+
+    /**
+     * A reference for holding the last
+     * received frame data buffer
+     */
+    private byte[] frameArray;
 
     /**
      * A reference to the server
@@ -35,63 +72,95 @@ public class ImageUpdateThread extends Thread {
     private Client client;
 
     /**
-     * The lock that is shared with the
-     * ImageRestoreThread
+     * The scheduler that is shared with the fetchers
+     */
+    private FrameScheduler scheduler;
+
+    /**
+     * The threads that fetch the frames
+     */
+    private FrameFetcher[] fetchers;
+
+    /**
+     * The stages that show the frames
      */
-    private Object lock;
+    private FramePipeline pipeline;
 
     /**
-     * boolean to tell that this object
-     * is done
+     * The receiver of the stream, null if the
+     * images are fetched by RMI
      */
-    private boolean done;
+    private FrameReceiver receiver;
 
     /**
-     * boolean to tell that this object
-     * is in pause state
+     * The controller that adapts the stream to the network
      */
-    private boolean paused;
+    private RateController controller;
 
     /**
-     * booelan to tell that someone has
-     * asked this object to pause
+     * The stream quality that the server was last told
      */
-    private boolean pausereq;
+    private float streamQuality;
 
     /**
-     * A reference to the ImageRestoreThread
+     * The time when the overview was last fetched
      */
-    private ImageRestoreThread restorer;
+    private long lastOverview;
 
 
     /**
-     * The constructor creates and executes an 
-     * ImageRestoreThread and then executes this
-     * thread
+     * The constructor creates the FrameFetchers
+     * and then executes this thread
      *
      * @param c the client that started this thread
      * @param s a reference to the server
      */
     public ImageUpdateThread(Client c, RMIServerInterface s) {
+	this(c, s, null);
+    }
+
+
+    /**
+     * The constructor executes this thread, reading the
+     * frames from a stream if there is one. The fetchers
+     * are started when they are needed.
+     *
+     * @param c the client that started this thread
+     * @param s a reference to the server
+     * @param r the receiver of the stream, or null
+     */
+    public ImageUpdateThread(Client c, RMIServerInterface s, FrameReceiver r) {
 	client = c;
 	server = s;
-	lock = new Object();
-	paused = false;
-	pausereq = false;
-	done = true;
-	restorer = new ImageRestoreThread (server, this, lock, client);
-	restorer.start();
+	receiver = r;
+	streamQuality = c.getJPEGQuality();
+	try {
+	    controller = new RateController(server.getTargetBitrate(),
+					    server.getTargetLatency(),
+					    streamQuality);
+	} catch (Exception e) {
+	    controller = new RateController(0, 0, streamQuality);
+	}
+	try {
+	    scheduler = new FrameScheduler(server.getTargetFPS());
+	} catch (Exception e) {
+	    scheduler = new FrameScheduler(0);
+	}
+	pipeline = new FramePipeline(c, scheduler);
+	fetchers = new FrameFetcher[FrameScheduler.CREDITS];
+	for (int i = 0; i < fetchers.length; i++)
+	    fetchers[i] = new FrameFetcher(server, scheduler);
 	this.start();
     }
 
 
     /**
      * Sets a pause request and then waits until
-     * the thread is paused
+     * the thread is paused. The frames in flight
+     * are patched in first.
      */
     public void pause() {
-	pausereq = true;
-	while (!paused);
+	scheduler.pause();
 	client.setStatus("paused");
     }
 
@@ -100,46 +169,199 @@ public class ImageUpdateThread extends Thread {
      * Restarts the thread
      */
     public void restart() {
-	pausereq = false;
-	paused = false;	
+	scheduler.resume();
+    }
+
+
+    /**
+     * Stops this thread, the fetchers and the pipeline.
+     * Calls in flight are not waited for.
+     */
+    public void shutdown() {
+	scheduler.shutdown();
+	pipeline.close();
+	FrameReceiver r = receiver;
+	if (r != null) r.close();
+    }
+
+
+    /**
+     * Lets the controller measure a frame and tells the
+     * server about a new stream quality
+     *
+     * @param bytes the size of the frame
+     * @param millis the time it took to fetch the frame
+     */
+    private void adapt(int bytes, long millis) throws Exception {
+	controller.setMaxQuality(client.getJPEGQuality());
+	controller.frameReceived(bytes, millis);
+	if (controller.getQuality() != streamQuality) {
+	    streamQuality = controller.getQuality();
+	    server.setStreamQuality(streamQuality);
+	}
     }
 
+
     /**
-     * Checks if this thread is done
+     * Hands a frame over to the pipeline and shows
+     * the times of the stages
      *
-     * @return true if done / false if busy
+     * @param frame the frame data buffer
+     * @param millis the time it took to fetch the frame
+     * @throws InterruptedException if the thread is shut down
      */
-    public boolean isDone() {
-	return done;
+    private void show(byte[] frame, long millis) throws InterruptedException {
+	pipeline.put(frame);
+	client.setStageTimes(millis, pipeline.getDecryptTime(),
+			     pipeline.getDecodeTime(), pipeline.getPaintTime());
     }
 
+
     /**
-     * Sets the status to busy
+     * Pauses this thread if a pause is asked for, when
+     * the frames in the pipeline have been painted
+     *
+     * @throws InterruptedException if the thread is shut down
      */
-    public void setUndone() {
-	done = false;
+    private void checkPause() throws InterruptedException {
+	if (scheduler.isPauseRequested()) pipeline.drain();
+	scheduler.checkPause();
+    }
+
+
+    /**
+     * Fetches the overview if it is on and
+     * it is time for a new one
+     */
+    private void overview() {
+	long now = System.currentTimeMillis();
+	if (client.getOverviewStatus() &&
+	    now - lastOverview >= OVERVIEWINTERVAL) {
+	    lastOverview = now;
+	    client.updateOverview();
+	}
     }
 
+
     /**
-     * Loops infinitely alternating with the 
-     * ImageRestoreThread while asking the 
-     * server for new images
+     * Loops patching in the frames in the order of
+     * their sequence numbers until it is shut down
      */
     public void run() {
+	try {
+	    if (receiver != null) receive();
+	    resync();
+	    for (int i = 0; i < fetchers.length; i++) fetchers[i].start();
+	    while (true) {
+		client.setStatus("running");
+
+		// Wait for the next frame, or until all calls
+		// are back if a pause is asked for or a call failed
+		frameArray = scheduler.nextFrame();
+		if (frameArray == null) {
+		    if (scheduler.isFailed()) resync();
+		    else checkPause();
+		    continue;
+		}
+
+		show(frameArray, scheduler.getFetchTime());
+		long delay = 0;
+		try {
+		    overview();
+		    if (controller.isEnabled()) {
+			adapt(frameArray.length, scheduler.getFetchTime());
+			delay = controller.getDelay();
+		    }
+		} catch (Exception e) {} // Ignore errors!
+
+		// Give the credit back when the next frame is due
+		scheduler.frameDone(delay);
+	    }
+	} catch (InterruptedException e) {} // Shut down
+    }
+
+
+    /**
+     * Starts over with the sequence numbers of the server.
+     * This is done before the first frame and after a call
+     * has failed, when no calls are in flight. The frames
+     * after a lost one are of no use, so after a failure
+     * they are thrown away, the frames in the pipeline are
+     * let through and both the server and the client start
+     * over with a black image.
+     *
+     * @throws InterruptedException if the thread is shut down
+     */
+    private void resync() throws InterruptedException {
+	if (scheduler.isFailed()) pipeline.drain();
+	try {
+	    if (scheduler.isFailed()) startOver();
+	    int last = scheduler.getExpected() - 1;
+	    scheduler.resync(server.nextFrames(last, 0).getSequence());
+	} catch (Exception e) {
+	    scheduler.setFailed();
+	    scheduler.sleep(RETRYDELAY);
+	}
+    }
+
+
+    /**
+     * Tells the server to start over with a full frame
+     * against a black image, and resets the client image
+     * to black as well. The frames in the pipeline must
+     * have been let through first.
+     *
+     * @throws RemoteException if the server can't be reached
+     */
+    private void startOver() throws RemoteException {
+	server.setArea(client.getx(), client.gety(),
+		       client.getWidth(), client.getHeight());
+	client.resetImage();
+    }
+
+
+    /**
+     * Loops reading the frames from the stream until
+     * it breaks. Since some frames may have been lost
+     * the thread then starts over fetching the frames.
+     * A frame that fails in the pipeline makes the server
+     * start over with a full frame.
+     *
+     * @throws InterruptedException if the thread is shut down
+     */
+    private void receive() throws InterruptedException {
 	while (true) {
 	    client.setStatus("running");
-	    while (!restorer.isDone()) this.yield();
-	    try {  
-		synchronized(lock) {
-		    JPEGArray = server.getImage();
+	    long start = System.currentTimeMillis();
+	    try {
+		frameArray = receiver.read();
+	    } catch (IOException e) {
+		break;
+	    }
+
+	    // Frames encoded before the server started over
+	    // with a black image are skipped
+	    if (receiver.getGeneration() == client.getGeneration())
+		show(frameArray, System.currentTimeMillis() - start);
+	    overview();
+	    scheduler.pace(0);
+	    checkPause();
+
+	    // Start over if a frame failed in the pipeline, the
+	    // frames already on their way are skipped
+	    if (scheduler.isFailed()) {
+		pipeline.drain();
+		try {
+		    startOver();
+		} catch (RemoteException e) {
+		    break;
 		}
-		client.setImage(JPEGArray);
-		if (pausereq) paused = true;
-		while (paused) this.yield();
-		restorer.setUndone();
-		done = true;
-	    } catch (Exception e) {}
+		scheduler.resync(scheduler.getExpected());
+	    }
 	}
+	receiver.close();
+	receiver = null;
+	if (scheduler.isShutdown()) throw new InterruptedException();
+	scheduler.setFailed();
     }
 }
-
@@ -0,0 +1,83 @@
+package imageupdate;
+
+// Standard imports:
+import java.awt.*;
+import java.util.*;
+
+// Project imports:
+import Client;
+
+
+/**
+ * This stage of the FramePipeline passes the updated
+ * areas of the image of the client to the gui. It never
+ * queues more than one paint, so if the gui is slower
+ * than the decoding the areas of a new frame are added
+ * to the ones that wait and only the latest image
+ * is painted.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see Client#paintFrame
+ */
+public class PaintStage extends PipelineStage {
+
+    /**
+     * The largest number of areas that wait, more
+     * are joined into the area that covers them all
+     */
+    private static final int MAXAREAS = 64;
+
+    /**
+     * The client that the frames belong to
+     */
+    private Client client;
+
+
+    /**
+     * The constructor
+     *
+     * @param c the client that the frames belong to
+     * @param s the scheduler that is told about failures
+     */
+    public PaintStage(Client c, FrameScheduler s) {
+	super("PaintStage", s, 1, null);
+	client = c;
+    }
+
+
+    /**
+     * Adds the updated areas of a new frame to the ones
+     * of the frame that waits
+     *
+     * @param older the updated areas of the waiting frame
+     * @param newer the updated areas of the new frame
+     * @return a Vector with the areas of both frames
+     */
+    protected Object combine(Object older, Object newer) {
+	Vector areas = (Vector) older;
+	Vector added = (Vector) newer;
+	for (int i = 0; i < added.size(); i++)
+	    areas.addElement(added.elementAt(i));
+	if (areas.size() > MAXAREAS) {
+	    Rectangle r = new Rectangle((Rectangle) areas.elementAt(0));
+	    for (int i = 1; i < areas.size(); i++)
+		r.add((Rectangle) areas.elementAt(i));
+	    areas.removeAllElements();
+	    areas.addElement(r);
+	}
+	return areas;
+    }
+
+
+    /**
+     * Paints the updated areas of the image
+     *
+     * @param o a Vector with the updated areas
+     * @return null, this is the last stage
+     */
+    protected Object process(Object o) throws Exception {
+	client.paintFrame((Vector) o);
+	return null;
+    }
+}
@@ -0,0 +1,228 @@
+package imageupdate;
+
+// Standard imports:
+import java.util.*;
+
+
+/**
+ * This thread class is one stage of the FramePipeline.
+ * It takes the objects that the stage before it puts in
+ * its queue, processes them one at a time and puts the
+ * results in the queue of the next stage. The queue is
+ * bounded, so a stage that falls behind makes the stages
+ * before it wait. A stage can combine a new object with
+ * the one waiting in its queue instead, so that only the
+ * latest work is done.
+ *
+ * The stage measures the time it spends on each object
+ * and keeps an average of it. If an object can't be
+ * processed the scheduler is told that frames have been
+ * lost, since the image and the tile cache of the client
+ * are then out of step with the server.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FramePipeline
+ */
+public abstract class PipelineStage extends Thread {
+
+    /**
+     * The weight of the newest time in the average
+     */
+    private static final double WEIGHT = 0.125;
+
+    /**
+     * The objects waiting to be processed
+     */
+    private Vector queue;
+
+    /**
+     * The largest number of objects in the queue
+     */
+    private int capacity;
+
+    /**
+     * The scheduler that is told about failures
+     */
+    private FrameScheduler scheduler;
+
+    /**
+     * The stage that the results are put to,
+     * null if this is the last stage
+     */
+    private PipelineStage next;
+
+    /**
+     * boolean to tell that an object is
+     * being processed
+     */
+    private boolean busy;
+
+    /**
+     * boolean to tell that the stage is closed
+     */
+    private boolean closed;
+
+    /**
+     * The average time per object in nanoseconds
+     */
+    private double time;
+
+
+    /**
+     * The constructor executes the thread
+     *
+     * @param name the name of the thread
+     * @param s the scheduler that is told about failures
+     * @param c the largest number of objects in the queue
+     * @param n the next stage, or null
+     */
+    public PipelineStage(String name, FrameScheduler s, int c,
+			 PipelineStage n) {
+	super(name);
+	scheduler = s;
+	queue = new Vector();
+	capacity = c;
+	next = n;
+	busy = false;
+	closed = false;
+	time = 0;
+	setDaemon(true);
+	this.start();
+    }
+
+
+    /**
+     * Processes an object
+     *
+     * @param o the object
+     * @return the result for the next stage, or null
+     * @throws Exception if the object can't be processed
+     */
+    protected abstract Object process(Object o) throws Exception;
+
+
+    /**
+     * Combines a new object with the one that waits
+     * in the queue. Objects are not combined unless
+     * a stage overrides this method.
+     *
+     * @param older the waiting object
+     * @param newer the new object
+     * @return the object that replaces the waiting one,
+     *         or null to queue the new object
+     */
+    protected Object combine(Object older, Object newer) {
+	return null;
+    }
+
+
+    /**
+     * Puts an object in the queue, or combines it with
+     * the waiting one. This blocks while the queue is full.
+     *
+     * @param o the object
+     * @throws InterruptedException if the stage is closed
+     */
+    public synchronized void put(Object o) throws InterruptedException {
+	if (!queue.isEmpty()) {
+	    Object c = combine(queue.lastElement(), o);
+	    if (c != null) {
+		queue.setElementAt(c, queue.size() - 1);
+		return;
+	    }
+	}
+	while (!closed && queue.size() >= capacity) wait();
+	if (closed) throw new InterruptedException();
+	queue.addElement(o);
+	notifyAll();
+    }
+
+
+    /**
+     * Waits until the queue is empty and nothing
+     * is being processed
+     *
+     * @throws InterruptedException if the stage is closed
+     */
+    public synchronized void drain() throws InterruptedException {
+	while (!closed && (busy || !queue.isEmpty())) wait();
+	if (closed) throw new InterruptedException();
+    }
+
+
+    /**
+     * Stops the thread. The waiting
+     * objects are thrown away.
+     */
+    public synchronized void close() {
+	closed = true;
+	queue.removeAllElements();
+	notifyAll();
+    }
+
+
+    /**
+     * Gets the average time it takes to process an object
+     *
+     * @return the time in milliseconds
+     */
+    public synchronized long getTime() {
+	return Math.round(time / 1000000);
+    }
+
+
+    /**
+     * Takes the next object from the queue
+     *
+     * @return the object
+     * @throws InterruptedException if the stage is closed
+     */
+    private synchronized Object take() throws InterruptedException {
+	while (!closed && queue.isEmpty()) wait();
+	if (closed) throw new InterruptedException();
+	busy = true;
+	Object o = queue.firstElement();
+	queue.removeElementAt(0);
+	notifyAll();
+	return o;
+    }
+
+
+    /**
+     * Tells that an object has been processed
+     *
+     * @param nanos the time it took
+     */
+    private synchronized void done(long nanos) {
+	time = time == 0 ? nanos : time + WEIGHT * (nanos - time);
+	busy = false;
+	notifyAll();
+    }
+
+
+    /**
+     * Loops processing the objects in the queue
+     * until the stage is closed
+     */
+    public void run() {
+	try {
+	    while (true) {
+		Object o = take();
+		long start = System.nanoTime();
+		Object result = null;
+
+		// After a failure the image starts over in
+		// black, so the frames before that are skipped
+		try {
+		    if (!scheduler.isFailed()) result = process(o);
+		} catch (Exception e) {
+		    scheduler.setFailed();
+		}
+		long nanos = System.nanoTime() - start;
+		if (result != null && next != null) next.put(result);
+		done(nanos);
+	    }
+	} catch (InterruptedException e) {} // Closed
+    }
+}
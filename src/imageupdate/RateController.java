@@ -0,0 +1,213 @@
+package imageupdate;
+
+
+/**
+ * This class adapts the image stream to the network. It
+ * measures the size and transfer time of every frame and
+ * estimates the round-trip time and the bandwidth of the
+ * connection. From that it decides the JPEG quality to
+ * ask the server for and how long to wait before the next
+ * frame is fetched, so that the stream stays within a
+ * target bitrate and a target latency.
+ *
+ * The quality is lowered quickly when the latency target is
+ * missed or when frames have to be held back so long to fit
+ * the bitrate that the stream gets jerky. It is raised slowly
+ * when there is room to spare, but never above the quality
+ * chosen by the user.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see ImageUpdateThread
+ */
+public class RateController {
+
+    /**
+     * The lowest quality the controller goes down to
+     */
+    private static final float MINQUALITY = 0.1f;
+
+    /**
+     * The step that the quality is raised by
+     */
+    private static final float QUALITYSTEP = 0.05f;
+
+    /**
+     * The factor that the quality is lowered by
+     */
+    private static final float BACKOFF = 0.75f;
+
+    /**
+     * The weight of a new measurement in the averages
+     */
+    private static final double WEIGHT = 0.2;
+
+    /**
+     * Frames smaller than this are too small to
+     * say anything about the bandwidth
+     */
+    private static final int MINSAMPLE = 4096;
+
+    /**
+     * The longest time in milliseconds that a frame
+     * is held back before the quality is lowered
+     */
+    private static final long MAXDELAY = 200;
+
+    /**
+     * The target bitrate in kbit/s, zero if none
+     */
+    private int targetBitrate;
+
+    /**
+     * The target latency in milliseconds, zero if none
+     */
+    private int targetLatency;
+
+    /**
+     * The quality chosen by the user
+     */
+    private float maxQuality;
+
+    /**
+     * The current quality
+     */
+    private float quality;
+
+    /**
+     * The estimated round-trip time in milliseconds
+     */
+    private double rtt;
+
+    /**
+     * The estimated bandwidth in bytes per millisecond
+     */
+    private double bandwidth;
+
+    /**
+     * The average transfer time of a frame in milliseconds
+     */
+    private double latency;
+
+    /**
+     * The time to wait before the next frame in milliseconds
+     */
+    private long delay;
+
+
+    /**
+     * The constructor
+     *
+     * @param bitrate the target bitrate in kbit/s, zero if none
+     * @param latency the target latency in milliseconds, zero if none
+     * @param quality the quality chosen by the user
+     */
+    public RateController(int bitrate, int latency, float quality) {
+	targetBitrate = bitrate;
+	targetLatency = latency;
+	maxQuality = quality;
+	this.quality = quality;
+	rtt = 0;
+	bandwidth = 0;
+	this.latency = 0;
+	delay = 0;
+    }
+
+
+    /**
+     * Checks if the controller has anything to do
+     *
+     * @return true if there is a target
+     */
+    public boolean isEnabled() {
+	return targetBitrate > 0 || targetLatency > 0;
+    }
+
+
+    /**
+     * Sets the quality chosen by the user. The controller
+     * never asks for a higher quality than this.
+     *
+     * @param q the quality
+     */
+    public void setMaxQuality(float q) {
+	if (q != maxQuality) {
+	    maxQuality = q;
+	    quality = Math.min(quality, q);
+	}
+    }
+
+
+    /**
+     * Gets the quality to ask the server for
+     *
+     * @return the quality
+     */
+    public float getQuality() {
+	return quality;
+    }
+
+
+    /**
+     * Gets the time to wait before the next frame
+     * is fetched
+     *
+     * @return the time in milliseconds
+     */
+    public long getDelay() {
+	return delay;
+    }
+
+
+    /**
+     * Gets the estimated bandwidth
+     *
+     * @return the bandwidth in kbit/s, zero if unknown
+     */
+    public int getBandwidth() {
+	return (int) (bandwidth * 8);
+    }
+
+
+    /**
+     * Updates the estimates with a received frame and
+     * decides the quality and delay for the next one
+     *
+     * @param bytes the size of the frame
+     * @param millis the time it took to fetch the frame
+     */
+    public void frameReceived(int bytes, long millis) {
+	millis = Math.max(millis, 1);
+
+	// Small frames tell the round-trip time and
+	// large frames the bandwidth
+	if (bytes < MINSAMPLE) {
+	    rtt = (rtt == 0) ? millis : rtt + (millis - rtt) * WEIGHT;
+	} else {
+	    double sample = bytes / Math.max(millis - rtt, 1.0);
+	    bandwidth = (bandwidth == 0) ? sample :
+		bandwidth + (sample - bandwidth) * WEIGHT;
+	}
+	latency += (millis - latency) * WEIGHT;
+
+	// The bitrate to stay within
+	double budget = targetBitrate / 8.0;
+	if (budget == 0 || (bandwidth > 0 && bandwidth * 0.8 < budget))
+	    budget = bandwidth * 0.8;
+
+	// Wait so that the frame takes its share of the budget
+	delay = 0;
+	if (budget > 0)
+	    delay = Math.max((long) (bytes / budget) - millis, 0);
+
+	// Lower the quality quickly, raise it slowly
+	boolean late = targetLatency > 0 && latency > targetLatency;
+	boolean room = (targetLatency == 0 || latency < targetLatency * 0.5) &&
+	    delay < MAXDELAY / 2;
+	if (late || delay > MAXDELAY)
+	    quality = Math.max(quality * BACKOFF, MINQUALITY);
+	else if (room)
+	    quality = Math.min(quality + QUALITYSTEP, maxQuality);
+	delay = Math.min(delay, MAXDELAY);
+    }
+}
@@ -0,0 +1,158 @@
+package input;
+
+// Standard imports:
+import java.io.*;
+import java.util.*;
+
+// Project imports:
+import rmiserver.RMIInputInterface;
+
+
+/**
+ * This thread class sends the mouse and key events of
+ * the user to the server in batches. Mouse moves are
+ * held for a few milliseconds so that more events can
+ * go in the same call, and a move that is followed by
+ * another one before it is sent is replaced by it. A
+ * button or a key is sent at once, together with the
+ * moves before it, so nothing is sent out of order.
+ *
+ * The events are sent from this thread, so the user
+ * interface never waits for the server, and to an object
+ * of their own on the server, so they don't wait behind
+ * the frames. The thread runs at a high priority to be
+ * served ahead of the decoding of frames.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see rmiserver.RMIInput
+ */
+public class InputQueue extends Thread {
+
+    /**
+     * The longest time in milliseconds that
+     * a mouse move is held
+     */
+    private static final long FLUSHINTERVAL = 10;
+
+    /**
+     * A reference to the input object of the server
+     */
+    private RMIInputInterface server;
+
+    /**
+     * The records that are not sent yet
+     */
+    private Vector records;
+
+    /**
+     * The time when the oldest record was queued
+     */
+    private long oldest;
+
+    /**
+     * boolean to tell that a record must
+     * be sent at once
+     */
+    private boolean urgent;
+
+    /**
+     * boolean to tell that the queue is closed
+     */
+    private boolean closed;
+
+    /**
+     * The buffer that the records are encoded into
+     */
+    private ByteArrayOutputStream buffer;
+
+
+    /**
+     * The constructor executes the thread
+     *
+     * @param s a reference to the input object of the server
+     */
+    public InputQueue(RMIInputInterface s) {
+	server = s;
+	records = new Vector();
+	buffer = new ByteArrayOutputStream();
+	urgent = false;
+	closed = false;
+	setDaemon(true);
+	setPriority(Thread.MAX_PRIORITY);
+	this.start();
+    }
+
+
+    /**
+     * Queues a record. A mouse move replaces a move that
+     * was queued right before it. Nothing is queued once
+     * the queue is closed.
+     *
+     * @param r the record
+     */
+    public synchronized void add(InputRecord r) {
+	if (closed) return;
+	if (records.isEmpty()) {
+	    oldest = System.currentTimeMillis();
+	} else if (r.getType() == InputRecord.MOVE &&
+		   ((InputRecord) records.lastElement()).getType() ==
+		   InputRecord.MOVE) {
+	    records.removeElementAt(records.size() - 1);
+	}
+	records.addElement(r);
+	if (r.getType() != InputRecord.MOVE) urgent = true;
+	notifyAll();
+    }
+
+
+    /**
+     * Stops the thread. Records that are not
+     * sent yet are thrown away.
+     */
+    public synchronized void close() {
+	closed = true;
+	notifyAll();
+    }
+
+
+    /**
+     * Loops sending the queued records
+     */
+    public void run() {
+	while (true) {
+	    byte[] data;
+	    try {
+		synchronized (this) {
+		    while (!closed && (records.isEmpty() || !urgent &&
+			   System.currentTimeMillis() - oldest < FLUSHINTERVAL)) {
+			if (records.isEmpty()) wait();
+			else wait(Math.max(FLUSHINTERVAL -
+				(System.currentTimeMillis() - oldest), 1));
+		    }
+		    if (closed) return;
+		    data = encode();
+		}
+		server.input(data);
+	    } catch (Exception e) {} // Ignore errors!
+	}
+    }
+
+
+    /**
+     * Encodes the queued records and empties the queue
+     *
+     * @return the encoded records
+     * @throws IOException if the encoding fails
+     */
+    private byte[] encode() throws IOException {
+	buffer.reset();
+	DataOutputStream out = new DataOutputStream(buffer);
+	for (int i = 0; i < records.size(); i++)
+	    ((InputRecord) records.elementAt(i)).write(out);
+	out.flush();
+	records.removeAllElements();
+	urgent = false;
+	return buffer.toByteArray();
+    }
+}
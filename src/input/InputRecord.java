@@ -0,0 +1,251 @@
+package input;
+
+// Standard imports:
+import java.awt.event.*;
+import java.io.*;
+
+
+/**
+ * This class is a mouse or key event in the compact form
+ * that is sent to the server, instead of the whole AWT
+ * event with its source component. Every record is
+ * SIZE bytes long:
+ *
+ * <pre>
+ * type (1 byte)
+ * horisontal position on the screen (2 bytes)
+ * vertical position on the screen (2 bytes)
+ * mouse buttons (1 byte, BUTTON1, BUTTON2 and BUTTON3 or'ed together)
+ * key code (2 bytes)
+ * time of the event in milliseconds, the lowest 32 bits (4 bytes)
+ * </pre>
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see InputQueue
+ */
+public class InputRecord {
+
+    /**
+     * The size of an encoded record in bytes
+     */
+    public static final int SIZE = 12;
+
+    /**
+     * The type of a mouse move
+     */
+    public static final int MOVE = 1;
+
+    /**
+     * The type of a mouse button press
+     */
+    public static final int PRESS = 2;
+
+    /**
+     * The type of a mouse button release
+     */
+    public static final int RELEASE = 3;
+
+    /**
+     * The type of a key press
+     */
+    public static final int KEYPRESS = 4;
+
+    /**
+     * The type of a key release
+     */
+    public static final int KEYRELEASE = 5;
+
+    /**
+     * The bit of the first mouse button
+     */
+    public static final int BUTTON1 = 1;
+
+    /**
+     * The bit of the second mouse button
+     */
+    public static final int BUTTON2 = 2;
+
+    /**
+     * The bit of the third mouse button
+     */
+    public static final int BUTTON3 = 4;
+
+    /**
+     * The type of the record
+     */
+    private int type;
+
+    /**
+     * The horisontal position on the screen
+     */
+    private int x;
+
+    /**
+     * The vertical position on the screen
+     */
+    private int y;
+
+    /**
+     * The mouse buttons
+     */
+    private int buttons;
+
+    /**
+     * The key code
+     */
+    private int keycode;
+
+    /**
+     * The time of the event
+     */
+    private int time;
+
+
+    /**
+     * The constructor
+     *
+     * @param t the type of the record
+     * @param nx the horisontal position on the screen
+     * @param ny the vertical position on the screen
+     * @param b the mouse buttons
+     * @param k the key code
+     * @param when the time of the event in milliseconds
+     */
+    public InputRecord(int t, int nx, int ny, int b, int k, long when) {
+	type = t;
+	x = nx;
+	y = ny;
+	buttons = b;
+	keycode = k;
+	time = (int) when;
+    }
+
+
+    /**
+     * Creates a record of a mouse event
+     *
+     * @param t the type of the record
+     * @param e the MouseEvent, in screen coordinates
+     * @return the record
+     */
+    public static InputRecord mouse(int t, MouseEvent e) {
+	int m = e.getModifiers();
+	int b = 0;
+	if ((m & InputEvent.BUTTON1_MASK) != 0) b |= BUTTON1;
+	if ((m & InputEvent.BUTTON2_MASK) != 0) b |= BUTTON2;
+	if ((m & InputEvent.BUTTON3_MASK) != 0) b |= BUTTON3;
+	return new InputRecord(t, e.getX(), e.getY(), b, 0, e.getWhen());
+    }
+
+
+    /**
+     * Creates a record of a key event
+     *
+     * @param t the type of the record
+     * @param e the KeyEvent
+     * @return the record
+     */
+    public static InputRecord key(int t, KeyEvent e) {
+	return new InputRecord(t, 0, 0, 0, e.getKeyCode(), e.getWhen());
+    }
+
+
+    /**
+     * Reads a record
+     *
+     * @param in the stream to read from
+     * @return the record
+     * @throws IOException if the stream fails
+     */
+    public static InputRecord read(DataInput in) throws IOException {
+	int t = in.readUnsignedByte();
+	int nx = in.readShort();
+	int ny = in.readShort();
+	int b = in.readUnsignedByte();
+	int k = in.readUnsignedShort();
+	return new InputRecord(t, nx, ny, b, k, in.readInt());
+    }
+
+
+    /**
+     * Writes the record
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void write(DataOutput out) throws IOException {
+	out.writeByte(type);
+	out.writeShort(x);
+	out.writeShort(y);
+	out.writeByte(buttons);
+	out.writeShort(keycode);
+	out.writeInt(time);
+    }
+
+
+    /**
+     * Gets the type of the record
+     *
+     * @return the type
+     */
+    public int getType() {
+	return type;
+    }
+
+
+    /**
+     * Gets the horisontal position on the screen
+     *
+     * @return the x value
+     */
+    public int getX() {
+	return x;
+    }
+
+
+    /**
+     * Gets the vertical position on the screen
+     *
+     * @return the y value
+     */
+    public int getY() {
+	return y;
+    }
+
+
+    /**
+     * Gets the mouse buttons as the masks that a
+     * Robot takes
+     *
+     * @return the button masks or'ed together
+     * @see java.awt.Robot#mousePress
+     */
+    public int getButtonMask() {
+	int m = 0;
+	if ((buttons & BUTTON1) != 0) m |= InputEvent.BUTTON1_MASK;
+	if ((buttons & BUTTON2) != 0) m |= InputEvent.BUTTON2_MASK;
+	if ((buttons & BUTTON3) != 0) m |= InputEvent.BUTTON3_MASK;
+	return m;
+    }
+
+
+    /**
+     * Gets the key code
+     *
+     * @return the key code
+     */
+    public int getKeyCode() {
+	return keycode;
+    }
+
+
+    /**
+     * Gets the time of the event
+     *
+     * @return the lowest 32 bits of the time in milliseconds
+     */
+    public int getTime() {
+	return time;
+    }
+}
@@ -0,0 +1,244 @@
+package rmiserver;
+
+// Standard imports:
+import java.awt.*;
+import java.awt.image.*;
+
+// Project imports:
+import imageconversion.*;
+
+/**
+ * This thread class captures the screen at a fixed rate
+ * on behalf of all logged in users. The latest screenshot
+ * is shared read-only between the RMIServer objects together
+ * with a map of the tiles that changed in each capture. To
+ * make sure that there is only one capture service the object
+ * is singleton. To get a handle of the object the getInstance
+ * method is used.
+ *
+ * The service only captures while at least one
+ * RMIServer is registered.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see RMIServer
+ */
+public class CaptureService extends Thread {
+
+    /**
+     * Private variable to hold the actual object
+     */
+    private static CaptureService s = null;
+
+    /**
+     * Private static variable to hold the number
+     * of captures per second
+     */
+    private static int frameRate = 20;
+
+    /**
+     * The Robot that is used to capture the screen
+     */
+    private Robot robot;
+
+    /**
+     * The latest screenshot. It is never
+     * modified once it has been published
+     */
+    private BufferedImage frame;
+
+    /**
+     * The number of the latest screenshot
+     */
+    private int frameNumber;
+
+    /**
+     * The tile map of the latest screenshot where each
+     * tile is stamped with the number of the screenshot
+     * in which it last changed
+     */
+    private TileMap changes;
+
+    /**
+     * The pixels of the latest screenshot
+     */
+    private int[] pixels;
+
+    /**
+     * The pixels of the screenshot before the latest
+     */
+    private int[] oldpixels;
+
+    /**
+     * The number of registered RMIServer objects
+     */
+    private int sessions;
+
+
+    /**
+     * The constructor is private to prevent
+     * more than one object of this class.
+     */
+    private CaptureService() throws AWTException {
+	robot = new Robot();
+	frameNumber = 0;
+	sessions = 0;
+	setDaemon(true);
+	start();
+    }
+
+
+    /**
+     * This static method is used instead of the
+     * constructor. It creates a new object if none
+     * exists or returns the existing one.
+     *
+     * @throws AWTException if the screen can't be captured
+     * @return the CaptureService object
+     */
+    public static synchronized CaptureService getInstance()
+	throws AWTException {
+	if (s == null) s = new CaptureService();
+	return s;
+    }
+
+
+    /**
+     * Sets the number of captures per second.
+     * This should be done before the first call
+     * to getInstance.
+     *
+     * @param fps the number of captures per second
+     */
+    public static void setFrameRate(int fps) {
+	frameRate = Math.max(fps, 1);
+    }
+
+
+    /**
+     * Registers a new user of the service. The
+     * service starts capturing if it was idle.
+     */
+    public synchronized void register() {
+	sessions++;
+	notifyAll();
+    }
+
+
+    /**
+     * Unregisters a user of the service. The service
+     * stops capturing when there are no users left.
+     */
+    public synchronized void unregister() {
+	if (sessions > 0) sessions--;
+    }
+
+
+    /**
+     * Waits until a screenshot newer than the given
+     * one is available.
+     *
+     * @param since the number of the last used screenshot
+     * @throws InterruptedException if the thread is interrupted
+     * @return the number of the latest screenshot
+     */
+    public synchronized int waitForFrame(int since)
+	throws InterruptedException {
+	while (frameNumber <= since) wait();
+	return frameNumber;
+    }
+
+
+    /**
+     * Gets the latest screenshot. The image is shared
+     * and must not be modified.
+     *
+     * @return the latest screenshot
+     */
+    public synchronized BufferedImage getFrame() {
+	return frame;
+    }
+
+
+    /**
+     * Gets the number of the latest screenshot
+     *
+     * @return the screenshot number
+     */
+    public synchronized int getFrameNumber() {
+	return frameNumber;
+    }
+
+
+    /**
+     * Gets the tile map of the latest screenshot.
+     * The map is shared and must not be modified.
+     *
+     * @return the tile map
+     */
+    public synchronized TileMap getChanges() {
+	return changes;
+    }
+
+
+    /**
+     * Captures the screen at the given frame rate
+     * as long as there are registered users
+     */
+    public void run() {
+	while (true) {
+	    try {
+		synchronized (this) {
+		    while (sessions == 0) wait();
+		}
+
+		long start = System.currentTimeMillis();
+		capture();
+
+		long delay = 1000 / frameRate -
+		    (System.currentTimeMillis() - start);
+		if (delay > 0) sleep(delay);
+	    } catch (Exception e) {}
+	}
+    }
+
+
+    /**
+     * Captures the screen, stamps the changed tiles
+     * and publishes the new screenshot
+     */
+    private void capture() {
+	Dimension d = Toolkit.getDefaultToolkit().getScreenSize();
+	int width = (int) d.getWidth();
+	int height = (int) d.getHeight();
+
+	BufferedImage img =
+	    robot.createScreenCapture(new Rectangle(0, 0, width, height));
+
+	// Swap the pixel buffers and compare with the last screenshot
+	int[] tmp = oldpixels;
+	oldpixels = pixels;
+	pixels = tmp;
+	if (pixels == null || pixels.length != width * height)
+	    pixels = new int[width * height];
+	img.getRGB(0, 0, width, height, pixels, 0, width);
+
+	TileMap map;
+	if (changes == null || oldpixels == null ||
+	    oldpixels.length != pixels.length) {
+	    // Everything is new
+	    map = new TileMap(width, height);
+	    map.fill(frameNumber + 1);
+	} else {
+	    map = new TileMap(changes);
+	    map.update(oldpixels, pixels, width, height, frameNumber + 1);
+	}
+
+	synchronized (this) {
+	    frame = img;
+	    changes = map;
+	    frameNumber++;
+	    notifyAll();
+	}
+    }
+}
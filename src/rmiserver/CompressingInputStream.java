@@ -0,0 +1,179 @@
+package rmiserver;
+
+// Standard imports:
+import java.io.*;
+import java.util.zip.*;
+
+
+/**
+ * This class is a stream that reads the blocks written
+ * by a CompressingOutputStream. Raw blocks are read as
+ * they are and deflated blocks are inflated.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see CompressingOutputStream
+ */
+public class CompressingInputStream extends InputStream {
+
+    /**
+     * The stream that the blocks are read from
+     */
+    private DataInputStream in;
+
+    /**
+     * The decompressor
+     */
+    private Inflater inflater;
+
+    /**
+     * The deflated bytes of the current block
+     */
+    private byte[] packed;
+
+    /**
+     * The type of the current block
+     */
+    private byte type;
+
+    /**
+     * The number of bytes left in the current
+     * block if it is raw
+     */
+    private int remaining;
+
+    /**
+     * boolean that tells that the stream is closed
+     */
+    private boolean closed;
+
+
+    /**
+     * The constructor
+     *
+     * @param i the stream to read the blocks from
+     * @param size the size of the buffer
+     */
+    public CompressingInputStream(InputStream i, int size) {
+	in = new DataInputStream(new BufferedInputStream(i, size));
+	inflater = new Inflater();
+	packed = new byte[size];
+	type = CompressingOutputStream.RAW;
+	remaining = 0;
+	closed = false;
+    }
+
+
+    /**
+     * Reads a byte
+     *
+     * @return the byte, or -1 at the end of the stream
+     * @throws IOException if the stream fails
+     */
+    public synchronized int read() throws IOException {
+	byte[] b = new byte[1];
+	return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+
+    /**
+     * Reads bytes into a part of an array. This blocks
+     * until at least one byte can be read.
+     *
+     * @param b the array
+     * @param off the position of the first byte
+     * @param len the largest number of bytes
+     * @return the number of bytes, or -1 at the end of the stream
+     * @throws IOException if the stream fails
+     */
+    public synchronized int read(byte[] b, int off, int len)
+	throws IOException {
+	if (closed) throw new IOException("Stream closed");
+	if (len == 0) return 0;
+	while (true) {
+	    if (type == CompressingOutputStream.RAW && remaining > 0) {
+		int n = in.read(b, off, Math.min(len, remaining));
+		if (n < 0) throw new EOFException();
+		remaining -= n;
+		return n;
+	    }
+	    if (type == CompressingOutputStream.DEFLATED) {
+		try {
+		    int n = inflater.inflate(b, off, len);
+		    if (n > 0) return n;
+		} catch (DataFormatException e) {
+		    throw new IOException(e.toString());
+		}
+		if (!inflater.needsInput())
+		    throw new IOException("Corrupt block");
+	    }
+	    if (!nextBlock()) return -1;
+	}
+    }
+
+
+    /**
+     * Gets the number of bytes that can be read
+     * without blocking
+     *
+     * @return the number of bytes
+     * @throws IOException if the stream fails
+     */
+    public synchronized int available() throws IOException {
+	if (closed) throw new IOException("Stream closed");
+	if (type == CompressingOutputStream.RAW)
+	    return Math.min(remaining, in.available());
+	return inflater.needsInput() ? 0 : 1;
+    }
+
+
+    /**
+     * Closes the stream that the blocks are read from
+     *
+     * @throws IOException if the stream fails
+     */
+    public synchronized void close() throws IOException {
+	if (closed) return;
+	try {
+	    in.close();
+	} finally {
+	    end();
+	}
+    }
+
+
+    /**
+     * Frees the decompressor. Nothing more can be
+     * read from the stream after this.
+     */
+    public synchronized void end() {
+	closed = true;
+	inflater.end();
+    }
+
+
+    /**
+     * Reads the header of the next block, and all
+     * of it if it is deflated
+     *
+     * @return false at the end of the stream
+     * @throws IOException if the stream fails
+     */
+    private boolean nextBlock() throws IOException {
+	int t = in.read();
+	if (t < 0) return false;
+	int length = in.readInt();
+	if (length < 0) throw new IOException("Corrupt block");
+	type = (byte) t;
+	if (type == CompressingOutputStream.RAW) {
+	    remaining = length;
+	} else if (type == CompressingOutputStream.DEFLATED) {
+	    if (packed.length < length) packed = new byte[length];
+	    in.readFully(packed, 0, length);
+	    inflater.setInput(packed, 0, length);
+	} else {
+	    throw new IOException("Unknown block type " + t);
+	}
+	return true;
+    }
+}
@@ -0,0 +1,223 @@
+package rmiserver;
+
+// Standard imports:
+import java.io.*;
+import java.util.zip.*;
+
+
+/**
+ * This class is a stream that deflates small messages and
+ * sends large ones as they are. The bytes are buffered
+ * until the stream is flushed. If they fit in the buffer
+ * they are deflated with a sync flush and sent as one
+ * block, so everything written before a flush can be read
+ * at once by the other side. A message that overflows the
+ * buffer, such as a batch of frames that are already
+ * compressed, is sent in raw blocks up to the next flush
+ * instead, since deflating it costs time and saves nothing.
+ *
+ * Each block starts with its type and its length:
+ *
+ * <pre>
+ * RAW: type, length, bytes
+ * DEFLATED: type, length, deflated bytes
+ * </pre>
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see CompressingInputStream
+ */
+public class CompressingOutputStream extends OutputStream {
+
+    /**
+     * The block type of bytes that are sent as they are
+     */
+    static final byte RAW = 0;
+
+    /**
+     * The block type of deflated bytes
+     */
+    static final byte DEFLATED = 1;
+
+    /**
+     * The stream that the blocks are written to
+     */
+    private DataOutputStream out;
+
+    /**
+     * The compressor
+     */
+    private Deflater deflater;
+
+    /**
+     * The bytes written since the last block
+     */
+    private byte[] buf;
+
+    /**
+     * The number of bytes in the buffer
+     */
+    private int count;
+
+    /**
+     * The buffer that the bytes are deflated to
+     */
+    private byte[] packed;
+
+    /**
+     * boolean that tells that the buffer has overflowed
+     * since the last flush, so that the rest of the
+     * message is sent raw as well
+     */
+    private boolean large;
+
+    /**
+     * boolean that tells that the stream is closed
+     */
+    private boolean closed;
+
+
+    /**
+     * The constructor
+     *
+     * @param o the stream to write the blocks to
+     * @param size the size of the buffer, the largest
+     *        message that is deflated
+     */
+    public CompressingOutputStream(OutputStream o, int size) {
+	out = new DataOutputStream(new BufferedOutputStream(o, size + 5));
+	deflater = new Deflater(Deflater.BEST_SPEED);
+	buf = new byte[size];
+	packed = new byte[size + size / 8 + 64];
+	count = 0;
+	large = false;
+	closed = false;
+    }
+
+
+    /**
+     * Writes a byte
+     *
+     * @param b the byte
+     * @throws IOException if the stream fails
+     */
+    public synchronized void write(int b) throws IOException {
+	if (count == buf.length) overflow();
+	buf[count++] = (byte) b;
+    }
+
+
+    /**
+     * Writes a part of an array
+     *
+     * @param b the array
+     * @param off the position of the first byte
+     * @param len the number of bytes
+     * @throws IOException if the stream fails
+     */
+    public synchronized void write(byte[] b, int off, int len)
+	throws IOException {
+	while (len > 0) {
+	    if (count == buf.length) overflow();
+	    int n = Math.min(len, buf.length - count);
+	    System.arraycopy(b, off, buf, count, n);
+	    count += n;
+	    off += n;
+	    len -= n;
+	}
+    }
+
+
+    /**
+     * Sends the buffered bytes, deflated unless the
+     * buffer has overflowed since the last flush
+     *
+     * @throws IOException if the stream fails
+     */
+    public synchronized void flush() throws IOException {
+	if (closed) throw new IOException("Stream closed");
+	if (count > 0) {
+	    if (large) writeRaw();
+	    else writeDeflated();
+	}
+	large = false;
+	out.flush();
+    }
+
+
+    /**
+     * Flushes the stream and closes the one
+     * the blocks are written to
+     *
+     * @throws IOException if the stream fails
+     */
+    public synchronized void close() throws IOException {
+	if (closed) return;
+	try {
+	    flush();
+	    out.close();
+	} finally {
+	    end();
+	}
+    }
+
+
+    /**
+     * Frees the compressor. Nothing more can be written
+     * to the stream after this.
+     */
+    public synchronized void end() {
+	closed = true;
+	deflater.end();
+    }
+
+
+    /**
+     * Sends the full buffer raw, since the message
+     * is too large to be deflated
+     *
+     * @throws IOException if the stream fails
+     */
+    private void overflow() throws IOException {
+	if (closed) throw new IOException("Stream closed");
+	large = true;
+	writeRaw();
+    }
+
+
+    /**
+     * Sends the buffered bytes in a raw block
+     *
+     * @throws IOException if the stream fails
+     */
+    private void writeRaw() throws IOException {
+	out.writeByte(RAW);
+	out.writeInt(count);
+	out.write(buf, 0, count);
+	count = 0;
+    }
+
+
+    /**
+     * Deflates the buffered bytes with a sync
+     * flush and sends them in a block
+     *
+     * @throws IOException if the stream fails
+     */
+    private void writeDeflated() throws IOException {
+	deflater.setInput(buf, 0, count);
+	int size = 0;
+	while (true) {
+	    size += deflater.deflate(packed, size, packed.length - size,
+				     Deflater.SYNC_FLUSH);
+	    if (size < packed.length) break;
+	    byte[] b = new byte[packed.length * 2];
+	    System.arraycopy(packed, 0, b, 0, size);
+	    packed = b;
+	}
+	out.writeByte(DEFLATED);
+	out.writeInt(size);
+	out.write(packed, 0, size);
+	count = 0;
+    }
+}
@@ -0,0 +1,40 @@
+package rmiserver;
+
+// Standard imports:
+import java.io.*;
+import java.net.*;
+
+
+/**
+ * This class is a server socket that accepts
+ * compressing sockets
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see CompressingSocketFactory
+ */
+public class CompressingServerSocket extends ServerSocket {
+
+    /**
+     * The constructor
+     *
+     * @param port the port, zero for any free port
+     * @throws IOException if the port is taken
+     */
+    public CompressingServerSocket(int port) throws IOException {
+	super(port);
+    }
+
+
+    /**
+     * Waits for a connection
+     *
+     * @return a compressing socket for the connection
+     * @throws IOException if the socket fails
+     */
+    public Socket accept() throws IOException {
+	Socket s = new CompressingSocket();
+	implAccept(s);
+	return s;
+    }
+}
@@ -0,0 +1,103 @@
+package rmiserver;
+
+// Standard imports:
+import java.io.*;
+import java.net.*;
+
+
+/**
+ * This class is a socket that compresses the small
+ * messages it sends, such as the calls and replies that
+ * control the server, with deflate at its fastest level.
+ * Large messages, such as batches of frames that are
+ * already compressed, are sent as they are.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see CompressingSocketFactory
+ */
+public class CompressingSocket extends Socket {
+
+    /**
+     * The size of the stream buffers
+     */
+    private static final int BUFFERSIZE = 8192;
+
+    /**
+     * The input stream, created when it is first asked for
+     */
+    private CompressingInputStream in;
+
+    /**
+     * The output stream, created when it is first asked for
+     */
+    private CompressingOutputStream out;
+
+
+    /**
+     * The constructor of an unconnected socket, used
+     * by the server socket to accept a connection
+     */
+    public CompressingSocket() {
+	super();
+    }
+
+
+    /**
+     * The constructor connects to a server
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     * @throws IOException if the connection fails
+     */
+    public CompressingSocket(String host, int port) throws IOException {
+	super(host, port);
+    }
+
+
+    /**
+     * Gets the stream that inflates the received messages
+     *
+     * @return the input stream
+     * @throws IOException if the socket is closed
+     */
+    public synchronized InputStream getInputStream() throws IOException {
+	if (in == null)
+	    in = new CompressingInputStream(super.getInputStream(), BUFFERSIZE);
+	return in;
+    }
+
+
+    /**
+     * Gets the stream that deflates the small messages
+     *
+     * @return the output stream
+     * @throws IOException if the socket is closed
+     */
+    public synchronized OutputStream getOutputStream() throws IOException {
+	if (out == null)
+	    out = new CompressingOutputStream(super.getOutputStream(), BUFFERSIZE);
+	return out;
+    }
+
+
+    /**
+     * Closes the socket and frees the compressor and the
+     * decompressor. The socket is closed first, so that a
+     * thread that is blocked in a stream lets go of its lock
+     * before the stream is ended under the same lock.
+     *
+     * @throws IOException if the socket fails
+     */
+    public void close() throws IOException {
+	CompressingInputStream i;
+	CompressingOutputStream o;
+	synchronized (this) {
+	    i = in;
+	    o = out;
+	}
+	super.close();
+	if (o != null) o.end();
+	if (i != null) i.end();
+    }
+}
@@ -0,0 +1,71 @@
+package rmiserver;
+
+// Standard imports:
+import java.io.*;
+import java.net.*;
+import java.rmi.server.*;
+
+
+/**
+ * This class creates sockets that compress everything
+ * they send with deflate at its fastest level. The RMIServer
+ * of a user that has compression turned on is exported with
+ * it, so that the calls, and the frames as far as they are
+ * not already compressed or encrypted, take less bandwidth.
+ * The client gets the factory with the reference to the
+ * RMIServer and uses it to connect.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see CompressingSocket
+ */
+public class CompressingSocketFactory implements RMIClientSocketFactory,
+						 RMIServerSocketFactory,
+						 Serializable {
+
+    /**
+     * Creates a compressing socket to the server
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     * @return the socket
+     * @throws IOException if the connection fails
+     */
+    public Socket createSocket(String host, int port) throws IOException {
+	return new CompressingSocket(host, port);
+    }
+
+
+    /**
+     * Creates the socket that the server listens on
+     *
+     * @param port the port, zero for any free port
+     * @return the socket
+     * @throws IOException if the port is taken
+     */
+    public ServerSocket createServerSocket(int port) throws IOException {
+	return new CompressingServerSocket(port);
+    }
+
+
+    /**
+     * All factories of this class are equal, so that
+     * the users with compression share one port
+     *
+     * @param o the object to compare with
+     * @return true if the object is a CompressingSocketFactory
+     */
+    public boolean equals(Object o) {
+	return o != null && o.getClass() == getClass();
+    }
+
+
+    /**
+     * Gets the hash code, the same for all factories
+     *
+     * @return the hash code
+     */
+    public int hashCode() {
+	return getClass().getName().hashCode();
+    }
+}
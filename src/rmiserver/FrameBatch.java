@@ -0,0 +1,73 @@
+package rmiserver;
+
+// Standard imports:
+import java.io.*;
+
+
+/**
+ * This class holds the frames that one call to nextFrames
+ * returns. The frames have consecutive sequence numbers
+ * and the client must patch them into its image in the
+ * order of the numbers. A batch can be empty, it then
+ * only tells the number of the next frame.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see RMIServer#nextFrames
+ */
+public class FrameBatch implements Serializable {
+
+    /**
+     * The sequence number of the first frame
+     */
+    private int sequence;
+
+    /**
+     * The frame data buffers
+     */
+    private byte[][] frames;
+
+
+    /**
+     * The constructor
+     *
+     * @param s the sequence number of the first frame
+     * @param f the frame data buffers
+     */
+    public FrameBatch(int s, byte[][] f) {
+	sequence = s;
+	frames = f;
+    }
+
+
+    /**
+     * Gets the sequence number of the first frame, or
+     * of the next frame if the batch is empty
+     *
+     * @return the sequence number
+     */
+    public int getSequence() {
+	return sequence;
+    }
+
+
+    /**
+     * Gets the number of frames in the batch
+     *
+     * @return the number of frames
+     */
+    public int size() {
+	return frames.length;
+    }
+
+
+    /**
+     * Gets a frame data buffer
+     *
+     * @param i the index of the frame in the batch
+     * @return the frame data
+     */
+    public byte[] getFrame(int i) {
+	return frames[i];
+    }
+}
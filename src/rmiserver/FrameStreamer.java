@@ -0,0 +1,309 @@
+package rmiserver;
+
+// Standard imports:
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.*;
+import java.util.*;
+
+
+/**
+ * This thread pushes the frames of a user to the client over
+ * a socket channel, instead of letting the client fetch every
+ * frame with three RMI calls. The RMI connection is still used
+ * for everything else.
+ *
+ * The client connects to the port of the streamer and sends
+ * the ticket it got from the server over RMI. After that the
+ * server sends one record after the other:
+ *
+ * <pre>
+ * length of the frame data (int)
+ * generation of the image area (int)
+ * the frame data
+ * </pre>
+ *
+ * The generation is counted up each time the server starts
+ * over with a black image, so the client can skip the frames
+ * that were on their way when it changed the image area.
+ *
+ * The tickets of the connections are read at the same time,
+ * each with a short time limit of its own, so a connection
+ * that never sends its ticket can't keep the right client
+ * waiting.
+ *
+ * The socket channel is non-blocking. A new frame is only
+ * encoded when the last one has been written completely, and
+ * then from the latest screenshot, so the newest frame always
+ * wins when the client or the network falls behind. Frames
+ * can't be dropped once they are encoded since they are based
+ * on the ones before.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see RMIServer#openStream
+ */
+public class FrameStreamer extends Thread {
+
+    /**
+     * The size of the ticket in bytes
+     */
+    public static final int TICKETSIZE = 16;
+
+    /**
+     * The size of the record header in bytes
+     */
+    public static final int HEADERSIZE = 8;
+
+    /**
+     * The time in milliseconds that the client has
+     * to connect and send its ticket
+     */
+    private static final long CONNECTTIMEOUT = 10000;
+
+    /**
+     * The time in milliseconds that a connection has
+     * to send its ticket
+     */
+    private static final long TICKETTIMEOUT = 1000;
+
+    /**
+     * The longest time in milliseconds to wait
+     * for the channel to become writable
+     */
+    private static final long SELECTTIMEOUT = 1000;
+
+    /**
+     * The server that encodes the frames
+     */
+    private RMIServer server;
+
+    /**
+     * The channel that the client connects to
+     */
+    private ServerSocketChannel listener;
+
+    /**
+     * The channel to the client
+     */
+    private SocketChannel channel;
+
+    /**
+     * The selector that waits for the channels
+     */
+    private Selector selector;
+
+    /**
+     * The ticket the client must send
+     */
+    private byte[] ticket;
+
+    /**
+     * The buffer that holds the record being written
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * boolean to tell that the stream is closed
+     */
+    private boolean closed;
+
+
+    /**
+     * The constructor opens the channel that the
+     * client connects to on a free port
+     *
+     * @param s the server that encodes the frames
+     * @throws IOException if the channel can't be opened
+     */
+    public FrameStreamer(RMIServer s) throws IOException {
+	server = s;
+	ticket = new byte[TICKETSIZE];
+	new SecureRandom().nextBytes(ticket);
+	selector = Selector.open();
+	listener = ServerSocketChannel.open();
+	listener.socket().bind(new InetSocketAddress(0));
+	listener.configureBlocking(false);
+	listener.register(selector, SelectionKey.OP_ACCEPT);
+	closed = false;
+	setDaemon(true);
+    }
+
+
+    /**
+     * Gets the port that the client connects to
+     *
+     * @return the port
+     */
+    public int getPort() {
+	return listener.socket().getLocalPort();
+    }
+
+
+    /**
+     * Gets the ticket that the client sends to
+     * prove that it is the right client
+     *
+     * @return the ticket
+     */
+    public byte[] getTicket() {
+	return ticket;
+    }
+
+
+    /**
+     * Puts a frame record in a buffer, allocating a
+     * larger buffer if it doesn't fit
+     *
+     * @param b the buffer, or null
+     * @param frame the frame data
+     * @param generation the generation of the image area
+     * @return the buffer, ready to be written
+     */
+    static ByteBuffer put(ByteBuffer b, byte[] frame, int generation) {
+	int size = HEADERSIZE + frame.length;
+	if (b == null || b.capacity() < size)
+	    b = ByteBuffer.allocateDirect(Math.max(size, b == null ? 0 : b.capacity() * 2));
+	b.clear();
+	b.putInt(frame.length);
+	b.putInt(generation);
+	b.put(frame);
+	b.flip();
+	return b;
+    }
+
+
+    /**
+     * Closes the stream and stops the thread
+     */
+    public void close() {
+	closed = true;
+	try {
+	    listener.close();
+	} catch (Exception e) {}
+	try {
+	    if (channel != null) channel.close();
+	} catch (Exception e) {}
+	try {
+	    selector.close();
+	} catch (Exception e) {}
+	interrupt();
+    }
+
+
+    /**
+     * Waits for the client and then writes frames
+     * until the stream is closed or broken
+     */
+    public void run() {
+	try {
+	    accept();
+	    while (!closed) {
+		server.waitForFrame();
+		buffer = server.streamFrame(buffer);
+		while (buffer.hasRemaining() && !closed) {
+		    if (channel.write(buffer) == 0) {
+			selector.select(SELECTTIMEOUT);
+			selector.selectedKeys().clear();
+		    }
+		}
+	    }
+	} catch (Exception e) {} // The client is gone
+	close();
+    }
+
+
+    /**
+     * Accepts the client and checks its ticket. The tickets
+     * of all connections are read as they arrive, and the
+     * connections with the wrong ticket or that are too slow
+     * to send it are turned away.
+     *
+     * @throws IOException if no right client connects in time
+     */
+    private void accept() throws IOException {
+	long end = System.currentTimeMillis() + CONNECTTIMEOUT;
+	Hashtable pending = new Hashtable();
+	try {
+	    while (channel == null) {
+		long now = System.currentTimeMillis();
+		if (closed || now >= end) throw new IOException("No client");
+
+		// Turn away the connections whose time is up
+		long wake = end;
+		Enumeration keys = pending.keys();
+		while (keys.hasMoreElements()) {
+		    SelectionKey key = (SelectionKey) keys.nextElement();
+		    long t = ((Long) pending.get(key)).longValue();
+		    if (t <= now) {
+			pending.remove(key);
+			key.channel().close();
+		    } else {
+			wake = Math.min(wake, t);
+		    }
+		}
+
+		selector.select(Math.max(wake - now, 1));
+		Iterator selected = selector.selectedKeys().iterator();
+		while (selected.hasNext() && channel == null) {
+		    SelectionKey key = (SelectionKey) selected.next();
+		    selected.remove();
+		    if (!key.isValid()) continue;
+		    if (key.isAcceptable()) {
+			SocketChannel c = listener.accept();
+			if (c == null) continue;
+			c.configureBlocking(false);
+			pending.put(c.register(selector, SelectionKey.OP_READ,
+					       ByteBuffer.allocate(TICKETSIZE)),
+				    new Long(now + TICKETTIMEOUT));
+		    } else if (key.isReadable()) {
+			check(key, pending);
+		    }
+		}
+	    }
+	} finally {
+	    Enumeration keys = pending.keys();
+	    while (keys.hasMoreElements())
+		((SelectionKey) keys.nextElement()).channel().close();
+	}
+	listener.close();
+	selector.selectedKeys().clear();
+	selector.selectNow();
+	channel.socket().setTcpNoDelay(true);
+	channel.register(selector, SelectionKey.OP_WRITE);
+    }
+
+
+    /**
+     * Reads what has arrived of the ticket of a connection.
+     * The connection becomes the channel to the client when
+     * the whole ticket is right.
+     *
+     * @param key the key of the connection
+     * @param pending the time limits of the connections
+     *        that haven't sent their ticket yet
+     * @throws IOException if the connection can't be closed
+     */
+    private void check(SelectionKey key, Hashtable pending)
+	throws IOException {
+	SocketChannel c = (SocketChannel) key.channel();
+	ByteBuffer received = (ByteBuffer) key.attachment();
+	int n;
+	try {
+	    n = c.read(received);
+	} catch (IOException e) {
+	    n = -1;
+	}
+	if (n >= 0 && received.hasRemaining()) return;
+	pending.remove(key);
+	key.cancel();
+	if (!received.hasRemaining() &&
+	    MessageDigest.isEqual(received.array(), ticket)) {
+	    channel = c;
+	} else {
+	    c.close();
+	}
+    }
+}
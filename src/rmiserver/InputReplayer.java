@@ -0,0 +1,201 @@
+package rmiserver;
+
+// Standard imports:
+import java.awt.*;
+import java.io.*;
+import java.util.*;
+
+// Project imports:
+import input.*;
+
+
+/**
+ * This thread replays the mouse and key events of a user
+ * using a Robot object, in the order they were made. It
+ * runs at a high priority so that the events are served
+ * ahead of the encoding of frames.
+ *
+ * The events of a batch are spaced out as they were on the
+ * client, but never more than MAXGAP apart, and the time
+ * they waited to be sent is not added. When the thread
+ * falls behind only the last of several mouse moves in a
+ * row is replayed, the ones before it are stale.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see RMIInput
+ */
+public class InputReplayer extends Thread {
+
+    /**
+     * The longest time in milliseconds that is waited
+     * between two replayed events
+     */
+    private static final int MAXGAP = 20;
+
+    /**
+     * The Robot that executes the events
+     */
+    private Robot robot;
+
+    /**
+     * The position of the last mouse event. The point is
+     * never changed, a new one is set for each event.
+     */
+    private Point focus;
+
+    /**
+     * The events that are not replayed yet
+     */
+    private Vector records;
+
+    /**
+     * The time of the last replayed event
+     */
+    private int lastTime;
+
+    /**
+     * The local time when the last event was replayed
+     */
+    private long lastReplay;
+
+    /**
+     * boolean to tell that the replayer is closed
+     */
+    private boolean closed;
+
+
+    /**
+     * The constructor executes the thread
+     *
+     * @param r the Robot that executes the events
+     */
+    public InputReplayer(Robot r) {
+	robot = r;
+	focus = new Point(-1, -1);
+	records = new Vector();
+	lastReplay = 0;
+	closed = false;
+	setDaemon(true);
+	setPriority(Thread.MAX_PRIORITY);
+	this.start();
+    }
+
+
+    /**
+     * Queues a batch of events. A mouse move replaces
+     * a move that is waiting right before it.
+     *
+     * @param data the encoded InputRecords
+     */
+    public synchronized void add(byte[] data) {
+	DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+	try {
+	    while (in.available() >= InputRecord.SIZE) {
+		InputRecord r = InputRecord.read(in);
+		if (r.getType() == InputRecord.MOVE && !records.isEmpty() &&
+		    ((InputRecord) records.lastElement()).getType() ==
+		    InputRecord.MOVE)
+		    records.removeElementAt(records.size() - 1);
+		records.addElement(r);
+	    }
+	} catch (IOException e) {}
+	notifyAll();
+    }
+
+
+    /**
+     * Gets the position of the last mouse event. The
+     * point must not be changed, since it is shared.
+     *
+     * @return the position, (-1, -1) before any mouse event
+     */
+    public synchronized Point getFocus() {
+	return focus;
+    }
+
+
+    /**
+     * Sets the position of the last mouse event
+     *
+     * @param x the horisontal position
+     * @param y the vertical position
+     */
+    private synchronized void setFocus(int x, int y) {
+	focus = new Point(x, y);
+    }
+
+
+    /**
+     * Stops the thread
+     */
+    public synchronized void close() {
+	closed = true;
+	notifyAll();
+    }
+
+
+    /**
+     * Loops replaying the queued events
+     */
+    public void run() {
+	while (true) {
+	    InputRecord r;
+	    synchronized (this) {
+		while (!closed && records.isEmpty()) {
+		    try {
+			wait();
+		    } catch (InterruptedException e) {}
+		}
+		if (closed) return;
+		r = (InputRecord) records.elementAt(0);
+		records.removeElementAt(0);
+	    }
+
+	    // Keep the spacing of the events, less the
+	    // time that has already passed
+	    long wait = Math.min(r.getTime() - lastTime, MAXGAP) -
+		(System.currentTimeMillis() - lastReplay);
+	    if (wait > 0) robot.delay((int) wait);
+	    lastTime = r.getTime();
+	    lastReplay = System.currentTimeMillis();
+	    try {
+		replay(r);
+	    } catch (IllegalArgumentException e) {} // Bad button or key
+	}
+    }
+
+
+    /**
+     * Executes one event using the Robot. The position
+     * of every mouse event is remembered as the focus
+     * of the user.
+     *
+     * @param r the event
+     * @see java.awt.Robot
+     */
+    private void replay(InputRecord r) {
+	switch (r.getType()) {
+	case InputRecord.MOVE:
+	    setFocus(r.getX(), r.getY());
+	    robot.mouseMove(r.getX(), r.getY());
+	    break;
+	case InputRecord.PRESS:
+	    setFocus(r.getX(), r.getY());
+	    robot.mouseMove(r.getX(), r.getY());
+	    robot.mousePress(r.getButtonMask());
+	    break;
+	case InputRecord.RELEASE:
+	    setFocus(r.getX(), r.getY());
+	    robot.mouseMove(r.getX(), r.getY());
+	    robot.mouseRelease(r.getButtonMask());
+	    break;
+	case InputRecord.KEYPRESS:
+	    robot.keyPress(r.getKeyCode());
+	    break;
+	case InputRecord.KEYRELEASE:
+	    robot.keyRelease(r.getKeyCode());
+	    break;
+	}
+    }
+}
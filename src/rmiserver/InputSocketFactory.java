@@ -0,0 +1,72 @@
+package rmiserver;
+
+// Standard imports:
+import java.io.*;
+import java.net.*;
+import java.rmi.server.*;
+
+
+/**
+ * This class creates the sockets of the RMIInput objects.
+ * The sockets are plain ones, but since RMI keeps apart
+ * the connections of objects with different socket
+ * factories the input events get connections of their
+ * own and never wait behind a large frame.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see RMIInput
+ */
+public class InputSocketFactory implements RMIClientSocketFactory,
+					   RMIServerSocketFactory,
+					   Serializable {
+
+    /**
+     * Creates a socket to the server, without delaying
+     * small writes
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     * @return the socket
+     * @throws IOException if the connection fails
+     */
+    public Socket createSocket(String host, int port) throws IOException {
+	Socket s = new Socket(host, port);
+	s.setTcpNoDelay(true);
+	return s;
+    }
+
+
+    /**
+     * Creates the socket that the server listens on
+     *
+     * @param port the port, zero for any free port
+     * @return the socket
+     * @throws IOException if the port is taken
+     */
+    public ServerSocket createServerSocket(int port) throws IOException {
+	return new ServerSocket(port);
+    }
+
+
+    /**
+     * All factories of this class are equal, so that
+     * the input objects of all users share one port
+     *
+     * @param o the object to compare with
+     * @return true if the object is an InputSocketFactory
+     */
+    public boolean equals(Object o) {
+	return o != null && o.getClass() == getClass();
+    }
+
+
+    /**
+     * Gets the hash code, the same for all factories
+     *
+     * @return the hash code
+     */
+    public int hashCode() {
+	return getClass().getName().hashCode();
+    }
+}
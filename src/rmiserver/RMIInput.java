@@ -0,0 +1,72 @@
+package rmiserver;
+
+// Standard imports:
+import java.rmi.*;
+import java.rmi.server.UnicastRemoteObject;
+import java.awt.*;
+
+/**
+ * This class takes the mouse and key events of a user.
+ * It is exported with an InputSocketFactory so the events
+ * are sent over connections of their own, apart from the
+ * frames. The events are only queued here and replayed
+ * by an InputReplayer, so a call returns at once.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see RMIServer#getInput
+ */
+public class RMIInput extends UnicastRemoteObject
+    implements RMIInputInterface {
+
+    /**
+     * The thread that replays the events
+     */
+    private InputReplayer replayer;
+
+
+    /**
+     * The constructor exports the object and
+     * starts the replayer
+     *
+     * @param r the Robot that executes the events
+     */
+    public RMIInput(Robot r) throws RemoteException {
+	super(0, new InputSocketFactory(), new InputSocketFactory());
+	replayer = new InputReplayer(r);
+    }
+
+
+    /**
+     * Gets the position on the screen of the last
+     * replayed mouse event, where the user works
+     *
+     * @return the position, (-1, -1) before any mouse event
+     */
+    public Point getFocus() {
+	return replayer.getFocus();
+    }
+
+
+    /**
+     * Queues a batch of mouse and key events to
+     * be replayed in the order they were made
+     *
+     * @param records the encoded InputRecords
+     * @see input.InputQueue
+     */
+    public void input(byte[] records) throws RemoteException {
+	replayer.add(records);
+    }
+
+
+    /**
+     * Stops the replayer and unexports this object
+     */
+    public void close() {
+	replayer.close();
+	try {
+	    unexportObject(this, true);
+	} catch (Exception e) {}
+    }
+}
@@ -0,0 +1,17 @@
+package rmiserver;
+
+// Standard imports:
+import java.rmi.*;
+
+/**
+ * This is the interface for the RMIInput class.
+ *
+ * @see RMIInput
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ */
+public interface RMIInputInterface extends Remote {
+
+    public void input(byte[] records) throws RemoteException;
+}
@@ -14,7 +14,9 @@ import util.*;
  * This class takes care of the login process. The client 
  * first send a login request to get a key. The key is then
  * hashed with the password and finally returned to the 
- * login method together with the username.
+ * login method together with the username. Both sides
+ * also derive a session key from the key and the password
+ * which the frames are encrypted with.
  *
  * @author Bjorn Husberg and Louise Tysk
  * @version 1.0
@@ -104,10 +106,11 @@ public class RMILogin extends UnicastRemoteObject
 		if ((new Date()).getTime() - timestamp.getTime() > authTimeout)
 			throw new Exception();
 		
+		byte[] sessionKey = PasswordHash.sessionKey(key, password);
 		byte[] verification = PasswordHash.hash(key, password);
 		if (verification == null) throw new Exception();
 		if (!Arrays.equals(hashstring, verification)) throw new Exception();
-		server = new RMIServer(username, password);
+		server = new RMIServer(username, sessionKey);
 
 	} catch(Exception e) { 
 		System.out.println(new Date() + " - Failed to authenticate as " + username);
@@ -3,13 +3,16 @@ package rmiserver;
 // Standard imports:
 import java.rmi.*;
 import java.rmi.server.UnicastRemoteObject;
+import java.rmi.server.Unreferenced;
 import java.rmi.registry.*;
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.awt.*;
 import java.awt.image.*;
 import java.awt.event.*;
 import java.util.*;
+import java.security.GeneralSecurityException;
 
 // Project imports:
 import imageconversion.*;
@@ -20,12 +23,23 @@ import security.*;
 /**
  * This is the server class that creates images
  * and exectues forwarded events.
+ *
+ * The images are either fetched by the client with
+ * nextFrames, several calls at a time, or pushed to it by
+ * a FrameStreamer if the user has the stream turned on. The methods that
+ * change how the images are encoded are synchronized
+ * with the streamer.
  * 
  * @author Bjorn Husberg and Louise Tysk
  * @version 1.0
  */
 public class RMIServer extends UnicastRemoteObject
-    implements RMIServerInterface {
+    implements RMIServerInterface, Unreferenced {
+
+    /**
+     * The highest JPEG image quality of the overview
+     */
+    private static final float OVERVIEWQUALITY = 0.5f;
     
     /**
      * The image converter that is used to
@@ -39,30 +53,99 @@ public class RMIServer extends UnicastRemoteObject
      */
     private Robot robot;
 
+    /**
+     * The object that takes the mouse and key events
+     */
+    private RMIInput input;
+
+    /**
+     * The shared capture service that provides
+     * the screenshots
+     */
+    private CaptureService capture;
+
+    /**
+     * The number of the last encoded screenshot
+     */
+    private int lastFrame;
+
+    /**
+     * Tells if this object is registered
+     * at the capture service
+     */
+    private boolean registered;
+
     /**
      * A reproduction of the client side image
      * This is used in delta restoration
      */
     private BufferedImage clientImg;
 
+    /**
+     * The frame encoder that is used to encode
+     * the changed tiles of outgoing images
+     */
+    private FrameEncoder encoder;
+
+    /**
+     * The frame decoder that is used to restore
+     * the client side image
+     */
+    private FrameDecoder decoder;
+
+    /**
+     * The image converter that is used to scale
+     * and encode the overview of the screen
+     */
+    private ImageConverter overviewConverter;
+
+    /**
+     * The number of the screenshot in the last overview
+     */
+    private int overviewFrame;
+
+    /**
+     * The image that the screen is scaled down to. It is
+     * used for each overview and only replaced when the
+     * overview changes size.
+     */
+    private BufferedImage thumbnail;
+
     /**
      * A reference to the last created
-     * image data buffer
+     * frame data buffer
      */
-    private byte[] JPEGArray;
+    private byte[] frameArray;
 
     /**
-     * A reference to the encrypted version
-     * (if available) of the last created 
-     * image data buffer
+     * The sequence number of the last frame
+     * handed out by nextFrames
      */
-    private byte[] encryptedJPEGArray;
-    
+    private int sequence;
+
+    /**
+     * The sequence number of the last frame that
+     * the client has patched into its image
+     */
+    private int acked;
+
+    /**
+     * The generation of the image area, counted up each
+     * time the client side image starts over in black
+     */
+    private int generation;
+
+    /**
+     * The streamer that pushes the frames to the
+     * client, null if they are fetched by RMI
+     */
+    private FrameStreamer streamer;
+
     /**
-     * The cipher object used to encrypt outgoing
+     * The cipher suite used to encrypt outgoing
      * image data buffers
      */
-    private IceKey encrypter;
+    private CipherSuite encrypter;
     
     /**
      * The horisontal position of the top left
@@ -96,6 +179,17 @@ public class RMIServer extends UnicastRemoteObject
      */
     private float JPEGQuality;
 
+    /**
+     * The JPEG image quality that is used right now. It is
+     * lowered by the client when the network is congested.
+     */
+    private float streamQuality;
+
+    /**
+     * The refine delay of the user
+     */
+    private long refineDelay;
+
     /**
      * The current delta status 
      */
@@ -106,134 +200,203 @@ public class RMIServer extends UnicastRemoteObject
      */
     private boolean encryptionStatus;
 
+    /**
+     * The color mode
+     */
+    private int colorMode;
+
 
     /**
      * The constructor is called by a RMILogin object
      * that has already authenticated the user
      * 
      * @param user the username
-     * @param password the password of the user
+     * @param sessionKey the session key derived at the login
+     * @see PasswordHash#sessionKey
      */
-    public RMIServer(String user, String password) 
+    public RMIServer(String user, byte[] sessionKey)
 	throws RemoteException, FatalServerException {
+	super(0, socketFactory(user), socketFactory(user));
 	username = user;
 	converter = new ImageConverter();
-	encrypter = new IceKey(0);
-	
-	byte[] passwd = password.getBytes();
-	byte[] key = new byte[8];
-        for (int i = 0; i < 8; i++)
-	    key[i] = passwd[i % passwd.length];
-	encrypter.set(key);
+	encoder = new FrameEncoder(converter);
+	decoder = new FrameDecoder(converter);
+	overviewConverter = new ImageConverter();
 	
 	try {
+	    // Use the ICE suite if the chosen one isn't available
+	    try {
+		encrypter = CipherSuite.getInstance(
+		    Settings.getInstance().getCipherSuite(username), sessionKey);
+	    } catch (GeneralSecurityException e) {
+		encrypter = CipherSuite.getInstance(CipherSuite.ICE, sessionKey);
+	    }
+
 	    robot = new Robot();
+	    input = new RMIInput(robot);
 	    JPEGQuality = Settings.getInstance().getJPEGQuality(username);
 	    deltaStatus = Settings.getInstance().getDeltaStatus(username);
 	    encryptionStatus = Settings.getInstance().getEncryptionStatus(username);	    
+	    encoder.setCipher(encryptionStatus ? encrypter : null);
+	    streamQuality = JPEGQuality;
+	    refineDelay = Settings.getInstance().getRefineDelay(username);
+	    encoder.setRefineDelay(refineDelay);
+	    colorMode = Settings.getInstance().getColorMode(username);
+	    encoder.setColorMode(colorMode);
+
+	    // Register last, so that the capture thread isn't
+	    // left running if anything above fails
+	    capture = CaptureService.getInstance();
+	    capture.register();
+	    registered = true;
 	} catch (Exception e) {
+	    if (input != null) input.close();
 	    throw new FatalServerException();
 	}	   
     }
     
 
+    /**
+     * Gets the socket factory that this object is
+     * exported with, which depends on if the user
+     * has compression turned on
+     *
+     * @param user the username
+     * @return a CompressingSocketFactory, or null for plain sockets
+     */
+    private static CompressingSocketFactory socketFactory(String user) {
+	try {
+	    if (Settings.getInstance().getCompressionStatus(user))
+		return new CompressingSocketFactory();
+	} catch (Exception e) {} // Ignore errors!
+	return null;
+    }
+
+
     /**
      * Resets the image data
      */
-    public void reset() throws RemoteException {
+    public synchronized void reset() throws RemoteException {
 	    Dimension dimension = Toolkit.getDefaultToolkit().getScreenSize();
 	    width = (int) dimension.getWidth();
 	    height = (int) dimension.getHeight();
 	    x = 0;
 	    y = 0;
+	    ImagePool.getInstance().release(clientImg);
 	    clientImg = converter.createBlack(width, height);
+	    encoder.reset();
+	    generation++;
     }
 
     
     /**
-     * Executes a mousePressed event using a Robot object
+     * Gets the object that takes the mouse and key
+     * events of the user
      *
-     * @param e the incoming MouseEvent
-     * @see java.awt.Robot
-     * @see java.awt.event.MouseEvent
+     * @return the input object
+     * @see RMIInput
      */
-    public void mousePressed(MouseEvent e) throws RemoteException {
-       	robot.mouseMove(e.getX(), e.getY());
-       	robot.mousePress(e.getModifiers());
+    public RMIInputInterface getInput() throws RemoteException {
+	return input;
     }
 
 
     /**
-     * Executes a mouseReleased event using a Robot object
+     * Sets the JPEG image quality. This also affects the 
+     * users long time settings
      *
-     * @param e the incoming MouseEvent
-     * @see java.awt.Robot
-     * @see java.awt.event.MouseEvent
+     * @param q the JPEG image quality
      */
-    public void mouseReleased(MouseEvent e) throws RemoteException {
-	robot.mouseMove(e.getX(), e.getY());
-	robot.mouseRelease(e.getModifiers());
+    public synchronized void setJPEGQuality(float q) throws RemoteException {
+	JPEGQuality = q;
+	streamQuality = q;
+	encoder.setRefineDelay(refineDelay);
+	encoder.reset();
+	try {
+		Settings.getInstance().setJPEGQuality(username, q);
+	} catch(Exception e) {}
     }
-
+    
 
     /**
-     * Executes a mouseMoved event using a Robot object
+     * Gets the JPEG image quality
      *
-     * @param e the incoming MouseEvent
-     * @see java.awt.Robot
-     * @see java.awt.event.MouseEvent
+     * @return the JPEG image quality
      */
-    public void mouseMoved(MouseEvent e) throws RemoteException {
-	robot.mouseMove(e.getX(), e.getY());
-   }
+    public float getJPEGQuality() throws RemoteException {
+	return JPEGQuality;
+
+    }
 
 
     /**
-     * Executes a keyPressed event using a Robot object
+     * Sets the JPEG image quality of the stream without
+     * affecting the users long time settings. The quality
+     * is never set higher than the users JPEG image quality.
+     * Refinement of unchanged tiles is turned off while the
+     * quality is lowered since the network is congested.
+     * The tiles already sent are not sent again.
      *
-     * @param e the incoming KeyEvent
-     * @see java.awt.Robot
-     * @see java.awt.event.KeyEvent
+     * @param q the JPEG image quality
      */
-    public void keyPressed(KeyEvent e) throws RemoteException {
-	robot.keyPress(e.getKeyCode());
+    public synchronized void setStreamQuality(float q) throws RemoteException {
+	streamQuality = Math.min(q, JPEGQuality);
+	encoder.setRefineDelay(streamQuality < JPEGQuality ? 0 : refineDelay);
     }
 
-    
+
     /**
-     * Executes a keyReleased event using a Robot object
+     * Gets the target bitrate of the user
      *
-     * @param e the incoming KeyEvent
-     * @see java.awt.Robot
-     * @see java.awt.event.KeyEvent
+     * @return the bitrate in kbit/s, zero if there is no target
      */
-    public void keyReleased(KeyEvent e) throws RemoteException {
-	robot.keyRelease(e.getKeyCode());
+    public int getTargetBitrate() throws RemoteException {
+	try {
+	    return Settings.getInstance().getTargetBitrate(username);
+	} catch (Exception e) {
+	    return 0;
+	}
     }
 
 
     /**
-     * Sets the JPEG image quality. This also affects the 
-     * users long time settings
+     * Gets the target latency of the user
      *
-     * @param q the JPEG image quality
+     * @return the latency in milliseconds, zero if there is no target
      */
-    public void setJPEGQuality(float q) throws RemoteException {
-	JPEGQuality = q;
+    public int getTargetLatency() throws RemoteException {
 	try {
-		Settings.getInstance().setJPEGQuality(username, q);
-	} catch(Exception e) {}
+	    return Settings.getInstance().getTargetLatency(username);
+	} catch (Exception e) {
+	    return 0;
+	}
     }
-    
+
 
     /**
-     * Gets the JPEG image quality
+     * Gets the largest number of frames per second
+     * the user wants
      *
-     * @return the JPEG image quality
+     * @return the frame rate, zero if there is no target
      */
-    public float getJPEGQuality() throws RemoteException {
-	return JPEGQuality;
+    public int getTargetFPS() throws RemoteException {
+	try {
+	    return Settings.getInstance().getTargetFPS(username);
+	} catch (Exception e) {
+	    return 0;
+	}
+    }
+
 
+    /**
+     * Gets the name of the cipher suite that encrypts
+     * the image data buffers
+     *
+     * @return the name of the suite
+     * @see CipherSuite#getInstance
+     */
+    public String getCipherSuite() throws RemoteException {
+	return encrypter.getName();
     }
 
 
@@ -243,8 +406,9 @@ public class RMIServer extends UnicastRemoteObject
      *
      * @param b the new encryption status
      */
-    public void setEncryptionStatus(boolean b) throws RemoteException {
+    public synchronized void setEncryptionStatus(boolean b) throws RemoteException {
 	encryptionStatus = b;
+	encoder.setCipher(b ? encrypter : null);
 	try {
 		Settings.getInstance().setEncryptionStatus(username, b);
 	} catch(Exception e) {}
@@ -267,11 +431,14 @@ public class RMIServer extends UnicastRemoteObject
      *
      * @param b the new delta status
      */
-    public void setDeltaStatus(boolean b) throws RemoteException {
+    public synchronized void setDeltaStatus(boolean b) throws RemoteException {
 	deltaStatus = b;
 	try {
 		Settings.getInstance().setDeltaStatus(username, b);
+		ImagePool.getInstance().release(clientImg);
 		clientImg = converter.createBlack(width, height);
+		encoder.reset();
+		generation++;
 	} catch(Exception e) {}
     }
 
@@ -286,6 +453,32 @@ public class RMIServer extends UnicastRemoteObject
     }
 
 
+    /**
+     * Sets the color mode. This also affects the
+     * users long time settings
+     *
+     * @param mode the new color mode
+     * @see ImageConverter#COLOR24
+     */
+    public synchronized void setColorMode(int mode) throws RemoteException {
+	colorMode = mode;
+	encoder.setColorMode(mode);
+	try {
+		Settings.getInstance().setColorMode(username, mode);
+	} catch(Exception e) {}
+    }
+
+
+    /**
+     * Gets the color mode
+     *
+     * @return the color mode
+     */
+    public int getColorMode() throws RemoteException {
+	return colorMode;
+    }
+
+
     /**
      * Sets a new image area
      *
@@ -294,12 +487,27 @@ public class RMIServer extends UnicastRemoteObject
      * @param nwidth the new width
      * @param nheigth the new height
      */
-    public void setArea(int nx, int ny, int nwidth, int nheight) throws RemoteException {
+    public synchronized void setArea(int nx, int ny, int nwidth, int nheight) throws RemoteException {
 	x = nx;
 	y = ny;
 	width = nwidth;
 	height = nheight;
+	ImagePool.getInstance().release(clientImg);
 	clientImg = converter.createBlack(width, height);
+	encoder.reset();
+	generation++;
+    }
+
+
+    /**
+     * Gets the generation of the image area. It is
+     * counted up each time the client side image starts
+     * over in black, by reset, setArea and setDeltaStatus.
+     *
+     * @return the generation
+     */
+    public synchronized int getGeneration() throws RemoteException {
+	return generation;
     }
 
 
@@ -316,84 +524,236 @@ public class RMIServer extends UnicastRemoteObject
 
    
     /**
-     * Creates a screenshot and prepares it for transmission 
-     * using delta precompression and encryption if enabled
-     */
-    public void prepareImage() throws RemoteException, 
-                                      IncompatibleImageException, 
-				      FatalServerException {
+     * Gets an overview of the whole screen, scaled down by
+     * area-averaging and JPEG encoded at a low quality. It
+     * is meant to be fetched now and then to show what
+     * happens outside the image area. Nothing is encoded if
+     * the screen hasn't changed since the last overview of
+     * the same size.
+     *
+     * @param w the width of the overview
+     * @param h the height of the overview
+     * @return the JPEG data, encrypted if enabled, or an
+     *         empty array if the screen hasn't changed
+     */
+    public byte[] getOverview(int w, int h) throws RemoteException,
+						   FatalServerException {
+	BufferedImage screen;
+	int number;
+	synchronized (capture) {
+	    number = capture.getFrameNumber();
+	    screen = capture.getFrame();
+	}
+	if (screen == null) return new byte[0];
+	w = Math.max(1, Math.min(w, screen.getWidth()));
+	h = Math.max(1, Math.min(h, screen.getHeight()));
+	synchronized (overviewConverter) {
+	    if (thumbnail != null && number == overviewFrame &&
+		w == thumbnail.getWidth() && h == thumbnail.getHeight())
+		return new byte[0];
+	    overviewFrame = number;
+	    if (thumbnail == null || w != thumbnail.getWidth() ||
+		h != thumbnail.getHeight())
+		thumbnail = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+	    overviewConverter.scaleDown(screen, thumbnail);
+	    try {
+		byte[] data = overviewConverter.encodeJPEG(thumbnail,
+			Math.min(streamQuality, OVERVIEWQUALITY));
+		return encryptionStatus ? encrypter.encrypt(data) : data;
+	    } catch (IOException e) {
+		throw new FatalServerException();
+	    }
+	}
+    }
 
-	// Create screenshot
-	BufferedImage img = 
-	    robot.createScreenCapture(new Rectangle (x, y, width, height)); 
 
-	// Create delta precompressed image if enabled
-	if (deltaStatus) { 
-	    BufferedImage tmp = img;
-	    img = converter.createDelta(clientImg, img);
-	    tmp.flush();
-	}
-	
-	// Encode to JPEG image data
+    /**
+     * Opens a stream that pushes the frames to the client
+     * if the user has it turned on. The client must connect
+     * to the returned port and send the ticket of the stream
+     * within a few seconds. It must then stop fetching the
+     * frames by RMI.
+     *
+     * @return the port of the stream, or zero if the
+     *         frames are to be fetched by RMI
+     * @see FrameStreamer
+     */
+    public synchronized int openStream() throws RemoteException {
 	try {
-	    JPEGArray = converter.encodeJPEG(img, JPEGQuality);
+	    if (streamer != null || !Settings.getInstance().getStreamStatus(username))
+		return 0;
+	    streamer = new FrameStreamer(this);
+	    streamer.start();
+	    return streamer.getPort();
 	} catch (Exception e) {
-	    throw new FatalServerException();
+	    return 0;
 	}
-	
-	// Encrypt image data if enabled
-	if (encryptionStatus) {
-	    byte[] plain = new byte[8];
-	    byte[] cipher = new byte[8];
-	    encryptedJPEGArray = new byte[JPEGArray.length];
-	    
-	    int i;
-	    for (i = 0; i < JPEGArray.length - 8; i = i + 8) {
-		System.arraycopy(JPEGArray, i, plain, 0, 8);
-		encrypter.encrypt(plain, cipher);
-		System.arraycopy(cipher, 0, encryptedJPEGArray, i, 8);
+    }
+
+
+    /**
+     * Gets the ticket that the client sends when it
+     * connects to the stream
+     *
+     * @return the ticket, or null if there is no stream
+     */
+    public synchronized byte[] getStreamTicket() throws RemoteException {
+	return (streamer == null) ? null : streamer.getTicket();
+    }
+
+
+    /**
+     * Waits until there is a screenshot that hasn't
+     * been encoded yet
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    void waitForFrame() throws InterruptedException {
+	capture.waitForFrame(lastFrame);
+    }
+
+
+    /**
+     * Encodes the next frame for the stream and restores
+     * the client side image, the same as nextFrames does
+     *
+     * @param buffer the buffer to put the frame record in, or null
+     * @return the buffer holding the record
+     * @see FrameStreamer#put
+     */
+    synchronized ByteBuffer streamFrame(ByteBuffer buffer)
+	throws IncompatibleImageException, FatalServerException {
+	prepareImage();
+	buffer = FrameStreamer.put(buffer, frameArray, generation);
+	if (deltaStatus) restoreImage();
+	return buffer;
+    }
+
+
+    /**
+     * Gets the next frames for the client. Several calls can
+     * be made at the same time, so that frames are encoded
+     * while the ones before are on their way, and the client
+     * acknowledges the frames it has patched into its image
+     * as it makes new calls. No more frames are handed out
+     * than the client has credits for beyond the last frame
+     * it acknowledged.
+     *
+     * Every frame is delta precompressed against the client
+     * side image as it will be once the client has patched
+     * in all the frames before it, which it must do in the
+     * order of the sequence numbers.
+     *
+     * @param lastAcked the sequence number of the last frame
+     *        the client has patched into its image
+     * @param credits the largest number of frames the client
+     *        can take beyond that one, zero to only get the
+     *        sequence number of the next frame
+     * @return the frames, empty if there are no credits left
+     */
+    public FrameBatch nextFrames(int lastAcked, int credits)
+	throws RemoteException, IncompatibleImageException,
+	       FatalServerException {
+	while (true) {
+	    synchronized (this) {
+		acked = Math.max(acked, lastAcked);
+		if (sequence - acked >= credits)
+		    return new FrameBatch(sequence + 1, new byte[0][]);
+
+		// Encode if no other call has taken the screenshot
+		if (capture.getFrameNumber() > lastFrame) {
+		    prepareImage();
+		    byte[] frame = frameArray;
+		    if (deltaStatus) restoreImage();
+		    return new FrameBatch(++sequence, new byte[][] {frame});
+		}
+	    }
+	    try {
+		waitForFrame();
+	    } catch (InterruptedException e) {
+		throw new FatalServerException();
 	    }
-	    
-	    // The last bytes (less than 8) will be sent unencrypted
-	    System.arraycopy(JPEGArray, i, encryptedJPEGArray, i, JPEGArray.length - i);
 	}
     }
 
-    
+
     /**
-     * Gets the last image data
+     * Creates a screenshot and prepares the tiles that have
+     * changed since the last screenshot for transmission
+     * using delta precompression and encryption if enabled
      */
-    public byte[] getImage() throws RemoteException {
-	if (encryptionStatus) return encryptedJPEGArray;
-	return JPEGArray;
-    }
+    private void prepareImage() throws IncompatibleImageException,
+				       FatalServerException {
+
+	// Wait for a new screenshot from the capture service
+	BufferedImage screen;
+	TileMap changes;
+	int number;
+	try {
+	    capture.waitForFrame(lastFrame);
+	} catch (InterruptedException e) {
+	    throw new FatalServerException();
+	}
+	synchronized (capture) {
+	    number = capture.getFrameNumber();
+	    screen = capture.getFrame();
+	    changes = capture.getChanges();
+	}
+
+	// Cut out our area, the shared screenshot must not be modified
+	BufferedImage img;
+	if (x >= 0 && y >= 0 && x + width <= screen.getWidth() &&
+	    y + height <= screen.getHeight()) {
+	    img = screen.getSubimage(x, y, width, height);
+	} else {
+	    img = converter.createBlack(width, height);
+	    Graphics g = img.getGraphics();
+	    g.drawImage(screen, -x, -y, null);
+	    g.dispose();
+	}
+	boolean[] hint = changes.getHint(x, y, width, height, lastFrame);
+	lastFrame = number;
+
+	// The mouse pointer is not part of the screenshot
+	try {
+	    Point p = MouseInfo.getPointerInfo().getLocation();
+	    encoder.setCursor(p.x, p.y, CursorShape.getDefault());
+	} catch (Exception e) {} // No pointer information
+
+	// Encode the changed tiles, delta precompressed and
+	// encrypted if enabled, with the best quality where
+	// the user works
+	Point focus = input.getFocus();
+	encoder.setFocus(focus.x < 0 ? -1 : focus.x - x, focus.y < 0 ? -1 : focus.y - y);
+	try {
+	    frameArray = encoder.encode(img, deltaStatus ? clientImg : null,
+					streamQuality, hint);
+	} catch (IOException e) {
+	    throw new FatalServerException();
+	}
 
+	// Subimages of the screenshot are not taken by the pool
+	ImagePool.getInstance().release(img);
+    }
 
+    
     /**
      * Restores the image from the encoded format. This
      * is used to be able to base next delta precompression
-     * on the same image that the client received
+     * on the same image that the client received. Only
+     * the tiles in the last frame are restored, from the
+     * frame as it was before it was encrypted.
      */
-    public void restoreImage() throws RemoteException, 
-                                      FatalServerException, 
-				      IncompatibleImageException {
+    private void restoreImage() throws FatalServerException,
+				       IncompatibleImageException {
 	
-	BufferedImage img = null;
+	// The encoder has already done the copies in clientImg
 	try {
-	    img = converter.decodeJPEG(JPEGArray);
+	    decoder.decode(encoder.getPlainFrame(), clientImg, deltaStatus,
+			   false);
 	} catch (IOException e) {
 	    throw new FatalServerException();
 	}
-
-	if (deltaStatus) {
-	    BufferedImage tmp = img;
-	    img = converter.restoreDelta(clientImg, img);
-	    tmp.flush();
-	}				
-	
-	BufferedImage tmp = clientImg;
-	clientImg = img;
-	tmp.flush();
     }
 
 
@@ -402,15 +762,41 @@ public class RMIServer extends UnicastRemoteObject
      */
     public void logout() throws RemoteException {
 	System.out.println(new Date() + " - " + username + " logged out");
+	unregister();
+	closeStream();
+	input.close();
 	try {
 	    this.unexportObject(this, true);
 	} catch (Exception e) {}
     }
-}	
-
 
 
+    /**
+     * Called by the rmi runtime when no client holds a
+     * reference to this object any more. This happens
+     * if the client dies without logging out.
+     */
+    public void unreferenced() {
+	unregister();
+	closeStream();
+	input.close();
+    }
 
 
+    /**
+     * Closes the stream if there is one
+     */
+    private synchronized void closeStream() {
+	if (streamer != null) streamer.close();
+	streamer = null;
+    }
 
 
+    /**
+     * Stops using the capture service
+     */
+    private synchronized void unregister() {
+	if (registered) capture.unregister();
+	registered = false;
+    }
+}
@@ -3,7 +3,6 @@ package rmiserver;
 // Standard imports:
 import java.rmi.*;
 import java.awt.*;
-import java.awt.event.*;
 
 // Project imports:
 import exceptions.*;
@@ -24,32 +23,43 @@ public interface RMIServerInterface extends Remote {
 
     public Dimension getScreenSize() throws RemoteException;
 
-    public void prepareImage() throws RemoteException, IncompatibleImageException, FatalServerException;	
-    public byte[] getImage() throws RemoteException;
+    public FrameBatch nextFrames(int lastAcked, int credits) throws RemoteException, IncompatibleImageException, FatalServerException;
 
-    public void restoreImage() throws RemoteException, FatalServerException, IncompatibleImageException ;
+    public int openStream() throws RemoteException;
+
+    public byte[] getStreamTicket() throws RemoteException;
+
+    public byte[] getOverview(int w, int h) throws RemoteException, FatalServerException;
 
     public void setJPEGQuality(float q) throws RemoteException;
     
     public float getJPEGQuality() throws RemoteException;
 
+    public void setStreamQuality(float q) throws RemoteException;
+
+    public int getTargetBitrate() throws RemoteException;
+
+    public int getTargetLatency() throws RemoteException;
+
+    public int getTargetFPS() throws RemoteException;
+
+    public int getGeneration() throws RemoteException;
+
     public void setEncryptionStatus(boolean b) throws RemoteException;
 
     public boolean getEncryptionStatus() throws RemoteException;
 
+    public String getCipherSuite() throws RemoteException;
+
     public void setDeltaStatus(boolean b) throws RemoteException;
 
     public boolean getDeltaStatus() throws RemoteException;
 
-    public void mousePressed(MouseEvent e) throws RemoteException;
-
-    public void mouseReleased(MouseEvent e) throws RemoteException;
-
-    public void mouseMoved(MouseEvent e) throws RemoteException;
+    public void setColorMode(int mode) throws RemoteException;
 
-    public void keyPressed(KeyEvent e) throws RemoteException;
+    public int getColorMode() throws RemoteException;
 
-    public void keyReleased(KeyEvent e) throws RemoteException;
+    public RMIInputInterface getInput() throws RemoteException;
     
     public void logout() throws RemoteException;
 }	
@@ -0,0 +1,122 @@
+package security;
+
+// Standard imports:
+import java.io.*;
+import java.security.*;
+import javax.crypto.*;
+import javax.crypto.spec.*;
+
+
+/**
+ * This class is the cipher suite that encrypts the frames
+ * with AES in Galois/Counter Mode from the Java Cryptography
+ * Architecture. The virtual machine uses the AES and carry-less
+ * multiplication instructions of the processor when it has
+ * them, which makes it much faster than ICE. The random IV of
+ * each frame is written before the encrypted bytes and the
+ * authentication tag after them, so that a frame that has been
+ * tampered with is detected.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ */
+public class AESGCMSuite extends CipherSuite {
+
+    /**
+     * The name of the transformation
+     */
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    /**
+     * The number of bytes of the IV
+     */
+    private static final int IVSIZE = 12;
+
+    /**
+     * The number of bits of the authentication tag
+     */
+    private static final int TAGBITS = 128;
+
+    /**
+     * The AES key
+     */
+    private SecretKey key;
+
+    /**
+     * The generator of the IVs
+     */
+    private SecureRandom random;
+
+
+    /**
+     * The constructor
+     *
+     * @param sessionKey the session key, the first
+     *        16 bytes are used
+     * @throws GeneralSecurityException if AES-GCM is not available
+     */
+    public AESGCMSuite(byte[] sessionKey) throws GeneralSecurityException {
+	key = new SecretKeySpec(sessionKey, 0, 16, "AES");
+	random = new SecureRandom();
+	Cipher.getInstance(TRANSFORMATION);
+    }
+
+
+    /**
+     * Gets the name of the suite
+     *
+     * @return the name
+     */
+    public String getName() {
+	return AESGCM;
+    }
+
+
+    /**
+     * Creates a stream that encrypts a frame with a new
+     * IV. A new Cipher is used for every frame so that
+     * several frames can be encrypted at the same time.
+     *
+     * @param out the stream to write the sealed frame to
+     * @return the stream to write the frame to
+     * @throws IOException if the cipher can't be created
+     */
+    public OutputStream encrypt(OutputStream out) throws IOException {
+	byte[] iv = new byte[IVSIZE];
+	synchronized (random) {
+	    random.nextBytes(iv);
+	}
+	try {
+	    Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+	    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAGBITS, iv));
+	    out.write(iv);
+	    return new javax.crypto.CipherOutputStream(out, cipher);
+	} catch (GeneralSecurityException e) {
+	    throw new IOException(e.toString());
+	}
+    }
+
+
+    /**
+     * Decrypts a sealed frame and checks its integrity
+     *
+     * @param data the array holding the sealed frame
+     * @param off the position of the sealed frame
+     * @param len the length of the sealed frame
+     * @param dest the array to decrypt to, at least len bytes
+     * @return the length of the decrypted frame
+     * @throws IOException if the frame is corrupt or has been tampered with
+     */
+    public int decrypt(byte[] data, int off, int len, byte[] dest)
+	throws IOException {
+	if (len < IVSIZE + TAGBITS / 8) throw new IOException("Frame too short");
+	try {
+	    Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+	    cipher.init(Cipher.DECRYPT_MODE, key,
+			new GCMParameterSpec(TAGBITS, data, off, IVSIZE));
+	    return cipher.doFinal(data, off + IVSIZE, len - IVSIZE, dest, 0);
+	} catch (GeneralSecurityException e) {
+	    throw new IOException("Frame failed the integrity check");
+	}
+    }
+}
@@ -0,0 +1,77 @@
+package security;
+
+// Project imports:
+import imageconversion.*;
+
+
+/**
+ * This class is a job that encrypts or decrypts one chunk
+ * of a buffer. A FrameCipher hands a group of them to the
+ * TileWorkers pool to process a large buffer in parallel.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FrameCipher
+ */
+class CipherJob implements TileJob {
+
+    /**
+     * The cipher
+     */
+    private FrameCipher cipher;
+
+    /**
+     * The array holding the data
+     */
+    private byte[] data;
+
+    /**
+     * The position of the chunk in the array
+     */
+    private int off;
+
+    /**
+     * The number of bytes in the chunk
+     */
+    private int len;
+
+    /**
+     * The nonce of the frame
+     */
+    private long nonce;
+
+    /**
+     * The position of the chunk in the frame
+     */
+    private long position;
+
+
+    /**
+     * The constructor
+     *
+     * @param c the cipher
+     * @param d the array holding the data
+     * @param o the position of the chunk in the array
+     * @param l the number of bytes in the chunk
+     * @param n the nonce of the frame
+     * @param p the position of the chunk in the frame
+     */
+    CipherJob(FrameCipher c, byte[] d, int o, int l, long n, long p) {
+	cipher = c;
+	data = d;
+	off = o;
+	len = l;
+	nonce = n;
+	position = p;
+    }
+
+
+    /**
+     * Processes the chunk. The converter is not used.
+     *
+     * @param converter the image converter of the worker
+     */
+    public void run(ImageConverter converter) {
+	cipher.process(data, off, len, nonce, position);
+    }
+}
@@ -0,0 +1,110 @@
+package security;
+
+// Standard imports:
+import java.io.*;
+
+
+/**
+ * This class is an output stream that encrypts the bytes
+ * with a FrameCipher as they are written and passes them
+ * on to another stream. The bytes are copied to a buffer
+ * and the key stream is applied to it a block at a time.
+ * When the
+ * stream is closed the nonce is written after the
+ * encrypted bytes so that they can be decrypted again.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FrameCipher
+ */
+public class CipherOutputStream extends FilterOutputStream {
+
+    /**
+     * The size of the buffer for encrypted bytes
+     */
+    private static final int BUFFERSIZE = 4096;
+
+    /**
+     * The cipher
+     */
+    private FrameCipher cipher;
+
+    /**
+     * The nonce of the frame
+     */
+    private long nonce;
+
+    /**
+     * The number of bytes written so far
+     */
+    private long position;
+
+    /**
+     * A buffer for encrypted bytes
+     */
+    private byte[] buffer;
+
+
+    /**
+     * The constructor
+     *
+     * @param out the stream to write the encrypted bytes to
+     * @param c the cipher
+     * @param n the nonce of the frame
+     */
+    public CipherOutputStream(OutputStream out, FrameCipher c, long n) {
+	super(out);
+	cipher = c;
+	nonce = n;
+	position = 0;
+	buffer = new byte[BUFFERSIZE];
+    }
+
+
+    /**
+     * Encrypts and writes a byte
+     *
+     * @param b the byte
+     * @throws IOException if the stream fails
+     */
+    public void write(int b) throws IOException {
+	buffer[0] = (byte) b;
+	cipher.process(buffer, 0, 1, nonce, position++);
+	out.write(buffer, 0, 1);
+    }
+
+
+    /**
+     * Encrypts and writes a part of an array. The
+     * array itself is not changed.
+     *
+     * @param b the array
+     * @param off the position of the bytes in the array
+     * @param len the number of bytes
+     * @throws IOException if the stream fails
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+	while (len > 0) {
+	    int n = Math.min(len, BUFFERSIZE);
+	    System.arraycopy(b, off, buffer, 0, n);
+	    cipher.process(buffer, 0, n, nonce, position);
+	    position += n;
+	    out.write(buffer, 0, n);
+	    off += n;
+	    len -= n;
+	}
+    }
+
+
+    /**
+     * Writes the nonce and closes the stream
+     *
+     * @throws IOException if the stream fails
+     */
+    public void close() throws IOException {
+	flush();
+	for (int i = 0; i < FrameCipher.NONCESIZE; i++)
+	    out.write((int) (nonce >>> (56 - i * 8)));
+	out.close();
+    }
+}
@@ -0,0 +1,119 @@
+package security;
+
+// Standard imports:
+import java.io.*;
+import java.security.*;
+
+
+/**
+ * This class is the base of the cipher suites that
+ * encrypt the frames. Each suite seals a whole frame,
+ * that is it adds whatever it needs to decrypt the
+ * frame again, such as a nonce, to the encrypted bytes.
+ * Both sides create the same suite from the name that
+ * the server tells and a session key that is derived
+ * from the login handshake.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see PasswordHash#sessionKey
+ */
+public abstract class CipherSuite {
+
+    /**
+     * The name of the ICE suite
+     *
+     * @see IceSuite
+     */
+    public static final String ICE = "ice";
+
+    /**
+     * The name of the AES-GCM suite
+     *
+     * @see AESGCMSuite
+     */
+    public static final String AESGCM = "aes-gcm";
+
+
+    /**
+     * Creates a cipher suite
+     *
+     * @param name the name of the suite
+     * @param sessionKey the session key, at least 16 bytes
+     * @return the suite
+     * @throws GeneralSecurityException if the suite is unknown
+     *         or not available in this virtual machine
+     */
+    public static CipherSuite getInstance(String name, byte[] sessionKey)
+	throws GeneralSecurityException {
+	if (ICE.equals(name)) return new IceSuite(sessionKey);
+	if (AESGCM.equals(name)) return new AESGCMSuite(sessionKey);
+	throw new NoSuchAlgorithmException(name);
+    }
+
+
+    /**
+     * Gets the name of the suite
+     *
+     * @return the name
+     */
+    public abstract String getName();
+
+
+    /**
+     * Creates a stream that encrypts a frame. Everything that
+     * is written to it is encrypted and written to the given
+     * stream, and the frame is sealed when it is closed.
+     *
+     * @param out the stream to write the sealed frame to
+     * @return the stream to write the frame to
+     * @throws IOException if the stream can't be created
+     */
+    public abstract OutputStream encrypt(OutputStream out) throws IOException;
+
+
+    /**
+     * Decrypts a sealed frame
+     *
+     * @param data the array holding the sealed frame
+     * @param off the position of the sealed frame
+     * @param len the length of the sealed frame
+     * @param dest the array to decrypt to, at least len bytes
+     * @return the length of the decrypted frame
+     * @throws IOException if the frame is corrupt
+     */
+    public abstract int decrypt(byte[] data, int off, int len, byte[] dest)
+	throws IOException;
+
+
+    /**
+     * Encrypts and seals a whole array
+     *
+     * @param data the data to encrypt
+     * @return the sealed data
+     * @throws IOException if the encryption fails
+     */
+    public byte[] encrypt(byte[] data) throws IOException {
+	ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length + 32);
+	OutputStream out = encrypt(buffer);
+	out.write(data);
+	out.close();
+	return buffer.toByteArray();
+    }
+
+
+    /**
+     * Decrypts a whole sealed array
+     *
+     * @param data the sealed data
+     * @return the decrypted data
+     * @throws IOException if the data is corrupt
+     */
+    public byte[] decrypt(byte[] data) throws IOException {
+	byte[] plain = new byte[data.length];
+	int len = decrypt(data, 0, data.length, plain);
+	byte[] result = new byte[len];
+	System.arraycopy(plain, 0, result, 0, len);
+	return result;
+    }
+}
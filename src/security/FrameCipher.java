@@ -0,0 +1,158 @@
+package security;
+
+// Standard imports:
+import java.security.SecureRandom;
+
+// Project imports:
+import imageconversion.*;
+
+
+/**
+ * This class encrypts and decrypts frame data with an
+ * IceKey in counter mode. Every 8 byte block of the data
+ * is XORed with the encryption of a counter, which is
+ * the nonce of the frame plus the number of the block.
+ * Encryption and decryption are therefore the same
+ * operation, the data is processed in place and the last
+ * bytes are covered even if they don't fill a block.
+ *
+ * Since every block can be processed on its own, large
+ * buffers are split in chunks that are processed in
+ * parallel by the shared TileWorkers pool. The cipher can
+ * also be used through a CipherOutputStream to encrypt the
+ * data as it is written.
+ *
+ * A new nonce must be used for every frame. The nonce is
+ * not secret and is sent along with the frame.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see CipherOutputStream
+ */
+public class FrameCipher {
+
+    /**
+     * The number of bytes of the nonce
+     */
+    public static final int NONCESIZE = 8;
+
+    /**
+     * The number of bytes processed by each job
+     * when a buffer is processed in parallel
+     */
+    private static final int CHUNKSIZE = 16384;
+
+    /**
+     * The key that encrypts the counters
+     */
+    private IceKey key;
+
+    /**
+     * The generator of the nonces
+     */
+    private SecureRandom random;
+
+
+    /**
+     * The constructor
+     *
+     * @param k the key, its schedule must be set
+     */
+    public FrameCipher(IceKey k) {
+	key = k;
+	random = new SecureRandom();
+    }
+
+
+    /**
+     * Creates a nonce for a new frame
+     *
+     * @return the nonce
+     */
+    public synchronized long newNonce() {
+	return random.nextLong();
+    }
+
+
+    /**
+     * Encrypts or decrypts a buffer in place. Buffers larger
+     * than a chunk are processed in parallel.
+     *
+     * @param data the array holding the data
+     * @param off the position of the data in the array
+     * @param len the number of bytes
+     * @param nonce the nonce of the frame
+     */
+    public void process(byte[] data, int off, int len, long nonce) {
+	int count = (len + CHUNKSIZE - 1) / CHUNKSIZE;
+	if (count <= 1) {
+	    process(data, off, len, nonce, 0);
+	    return;
+	}
+	CipherJob[] jobs = new CipherJob[count];
+	for (int i = 0; i < count; i++) {
+	    int start = i * CHUNKSIZE;
+	    jobs[i] = new CipherJob(this, data, off + start,
+				    Math.min(CHUNKSIZE, len - start), nonce, start);
+	}
+	try {
+	    TileWorkers.getInstance().execute(jobs, count, null);
+	} catch (Exception e) {
+	    throw new RuntimeException(e.toString());
+	}
+    }
+
+
+    /**
+     * Encrypts or decrypts a part of a frame in place. This
+     * method is thread safe, so different parts of the same
+     * frame can be processed by different threads.
+     *
+     * @param data the array holding the data
+     * @param off the position of the data in the array
+     * @param len the number of bytes
+     * @param nonce the nonce of the frame
+     * @param position the position of the data in the frame
+     */
+    public void process(byte[] data, int off, int len, long nonce, long position) {
+	long block = position >>> 3;
+	int i = (int) (position & 7);
+	int end = off + len;
+	while (off < end && i != 0) {
+	    long stream = keyBlock(nonce + block++);
+	    for (; i < 8 && off < end; i++)
+		data[off++] ^= (byte) (stream >>> (56 - i * 8));
+	    i = 0;
+	}
+
+	// Whole blocks, eight bytes at a time
+	while (end - off >= 8) {
+	    long stream = keyBlock(nonce + block++);
+	    data[off] ^= (byte) (stream >>> 56);
+	    data[off + 1] ^= (byte) (stream >>> 48);
+	    data[off + 2] ^= (byte) (stream >>> 40);
+	    data[off + 3] ^= (byte) (stream >>> 32);
+	    data[off + 4] ^= (byte) (stream >>> 24);
+	    data[off + 5] ^= (byte) (stream >>> 16);
+	    data[off + 6] ^= (byte) (stream >>> 8);
+	    data[off + 7] ^= (byte) stream;
+	    off += 8;
+	}
+	if (off < end) {
+	    long stream = keyBlock(nonce + block);
+	    for (i = 0; off < end; i++)
+		data[off++] ^= (byte) (stream >>> (56 - i * 8));
+	}
+    }
+
+
+    /**
+     * Computes a block of the key stream
+     *
+     * @param value the counter of the block
+     * @return the block, the first byte in the highest bits
+     */
+    long keyBlock(long value) {
+	return key.encrypt(value);
+    }
+}
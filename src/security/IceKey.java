@@ -4,16 +4,20 @@ package security;
  * This class implements the ICE encryption algorithm.
  *
  * Written by Matthew Kwan - December 1996
+ *
+ * The key schedule and the four S-boxes are kept in flat
+ * arrays and the blocks can be encrypted as longs without
+ * any packing of bytes. The S-boxes are built once when the
+ * class is loaded, and since encryption only reads the key
+ * schedule one key can be used by several threads at once
+ * after it has been set.
  */
 
 public class IceKey {
 
     private int	size;
     private int	rounds;
-    private int	keySchedule[][];
-    
-    private static int spBox[][];
-    private static boolean spBoxInitialised = false;
+    private int	keySchedule[];	// 3 subkeys per round
     
     private static final int sMod[][] = {
 	{333, 313, 505, 369},
@@ -44,7 +48,7 @@ public class IceKey {
     // 8-bit Galois Field multiplication of a by b, modulo m.
     // Just like arithmetic multiplication, except that
     // additions and subtractions are replaced by XOR.
-    private int	gf_mult (int a, int b, int m) {
+    private static int	gf_mult (int a, int b, int m) {
 	int res = 0;
 	
 	while (b != 0) {
@@ -62,7 +66,7 @@ public class IceKey {
     
     // 8-bit Galois Field exponentiation.
     // Raise the base to the power of 7, modulo m.
-    private int	gf_exp7 (int b, int m) {
+    private static int	gf_exp7 (int b, int m) {
 	int x;
 	
 	if (b == 0)
@@ -75,7 +79,7 @@ public class IceKey {
     }
     
     // Carry out the ICE 32-bit permutation.
-    private int	perm32 (int x) {
+    private static int	perm32 (int x) {
 	int res = 0;
 	int i = 0;
 	
@@ -89,11 +93,13 @@ public class IceKey {
 	return (res);
     }
     
+    // The four substitution/permutation boxes after each other.
+    private static final int spBox[] = spBoxInit ();
+
     // Initialise the substitution/permutation boxes.
-    private void spBoxInit () {
+    private static int[] spBoxInit () {
 	int i;
-	
-	spBox = new int[4][1024];
+	int box[] = new int[4 * 1024];
 	
 	for (i=0; i<1024; i++) {
 	    int	col = (i >>> 1) & 0xff;
@@ -101,26 +107,22 @@ public class IceKey {
 	    int	x;
 	    
 	    x = gf_exp7 (col ^ sXor[0][row], sMod[0][row]) << 24;
-	    spBox[0][i] = perm32 (x);
+	    box[i] = perm32 (x);
 	    
 	    x = gf_exp7 (col ^ sXor[1][row], sMod[1][row]) << 16;
-	    spBox[1][i] = perm32 (x);
+	    box[1024 + i] = perm32 (x);
 	    
 	    x = gf_exp7 (col ^ sXor[2][row], sMod[2][row]) << 8;
-	    spBox[2][i] = perm32 (x);
+	    box[2048 + i] = perm32 (x);
 	    
 	    x = gf_exp7 (col ^ sXor[3][row], sMod[3][row]);
-	    spBox[3][i] = perm32 (x);
+	    box[3072 + i] = perm32 (x);
 	}
+	return (box);
     }
     
     // Create a new ICE key with the specified level.
     public IceKey (int level) {
-	if (!spBoxInitialised) {
-	    spBoxInit ();
-	    spBoxInitialised = true;
-	}
-	
 	if (level < 1) {
 	    size = 1;
 	    rounds = 8;
@@ -129,7 +131,7 @@ public class IceKey {
 	    rounds = level * 16;
 	}
 	
-	keySchedule = new int[rounds][3];
+	keySchedule = new int[rounds * 3];
     }
     
     // Set 8 rounds [n, n+7] of the key schedule of an ICE key.
@@ -139,10 +141,10 @@ public class IceKey {
 	for (i=0; i<8; i++) {
 	    int	j;
 	    int	kr = keyrot[krot_idx + i];
-	    int	subkey[] = keySchedule[n + i];
+	    int	sk = (n + i) * 3;
 	    
 	    for (j=0; j<3; j++)
-		keySchedule[n + i][j] = 0;
+		keySchedule[sk + j] = 0;
 	    
 	    for (j=0; j<15; j++) {
 		int k;
@@ -152,7 +154,7 @@ public class IceKey {
 		    int	curr_kb = kb[(kr + k) & 3];
 		    int	bit = curr_kb & 1;
 		    
-		    subkey[curr_sk] = (subkey[curr_sk] << 1) | bit;
+		    keySchedule[sk + curr_sk] = (keySchedule[sk + curr_sk] << 1) | bit;
 		    kb[(kr + k) & 3] = (curr_kb >>> 1) | ((bit ^ 1) << 15);
 		}
 	    }
@@ -187,79 +189,90 @@ public class IceKey {
     
     // Clear the key schedule to prevent memory snooping.
     public void	clear () {
-	int i, j;
+	int i;
 	
-	for (i=0; i<rounds; i++)
-	    for (j=0; j<3; j++)
-		keySchedule[i][j] = 0;
+	for (i=0; i<keySchedule.length; i++)
+	    keySchedule[i] = 0;
     }
     
-    // The single round ICE f function.
-    private int	roundFunc (int p, int subkey[]) {
+    // The single round ICE f function, with the subkey
+    // of the round at position sk in the key schedule.
+    private static int	roundFunc (int p, int ks[], int sk) {
 	int tl, tr;
 	int al, ar;
 	
 	tl = ((p >>> 16) & 0x3ff) | (((p >>> 14) | (p << 18)) & 0xffc00);
 	tr = (p & 0x3ff) | ((p << 2) & 0xffc00);
 	
-	    			// al = (tr & subkey[2]) | (tl & ~subkey[2]);
-	    			// ar = (tl & subkey[2]) | (tr & ~subkey[2]);
-	al = subkey[2] & (tl ^ tr);
+				// al = (tr & sk2) | (tl & ~sk2);
+				// ar = (tl & sk2) | (tr & ~sk2);
+	al = ks[sk + 2] & (tl ^ tr);
 	ar = al ^ tr;
 	al ^= tl;
 	
-	al ^= subkey[0];
-	ar ^= subkey[1];
+	al ^= ks[sk];
+	ar ^= ks[sk + 1];
 	
-	return (spBox[0][al >>> 10] | spBox[1][al & 0x3ff]
-		| spBox[2][ar >>> 10] | spBox[3][ar & 0x3ff]);
+	return (spBox[al >>> 10] | spBox[1024 + (al & 0x3ff)]
+		| spBox[2048 + (ar >>> 10)] | spBox[3072 + (ar & 0x3ff)]);
     }
-    
-    // Encrypt a block of 8 bytes of data.
-    public void	encrypt (byte plaintext[], byte ciphertext[]) {
+
+    // Encrypt a block of 8 bytes held in a long, the first
+    // byte in the most significant bits.
+    public long	encrypt (long plaintext) {
 	int i;
-	int l = 0, r = 0;
-	
-	for (i=0; i<4; i++) {
-	    l |= (plaintext[i] & 0xff) << (24 - i*8);
-	    r |= (plaintext[i + 4] & 0xff) << (24 - i*8);
-	}
-	
+	int l = (int) (plaintext >>> 32), r = (int) plaintext;
+	int ks[] = keySchedule;
+
 	for (i=0; i<rounds; i+=2) {
-	    l ^= roundFunc (r, keySchedule[i]);
-	    r ^= roundFunc (l, keySchedule[i + 1]);
+	    l ^= roundFunc (r, ks, i * 3);
+	    r ^= roundFunc (l, ks, i * 3 + 3);
 	}
-	
-	for (i=0; i<4; i++) {
-	    ciphertext[3 - i] = (byte) (r & 0xff);
-	    ciphertext[7 - i] = (byte) (l & 0xff);
-	    
-	    r >>>= 8;
-	    l >>>= 8;
+
+	return (((long) r << 32) | (l & 0xffffffffL));
+    }
+
+    // Decrypt a block of 8 bytes held in a long.
+    public long	decrypt (long ciphertext) {
+	int i;
+	int l = (int) (ciphertext >>> 32), r = (int) ciphertext;
+	int ks[] = keySchedule;
+
+	for (i = rounds - 1; i > 0; i -= 2) {
+	    l ^= roundFunc (r, ks, i * 3);
+	    r ^= roundFunc (l, ks, i * 3 - 3);
 	}
+
+	return (((long) r << 32) | (l & 0xffffffffL));
+    }
+    
+    // Encrypt a block of 8 bytes of data.
+    public void	encrypt (byte plaintext[], byte ciphertext[]) {
+	unpack (encrypt (pack (plaintext)), ciphertext);
     }
     
     // Decrypt a block of 8 bytes of data.
     public void	decrypt (byte ciphertext[], byte plaintext[]) {
+	unpack (decrypt (pack (ciphertext)), plaintext);
+    }
+
+    // Read a block of 8 bytes into a long.
+    private static long	pack (byte b[]) {
 	int i;
-	int l = 0, r = 0;
-	
-	for (i=0; i<4; i++) {
-	    l |= (ciphertext[i] & 0xff) << (24 - i*8);
-	    r |= (ciphertext[i + 4] & 0xff) << (24 - i*8);
-	}
+	long x = 0;
 	
-	for (i = rounds - 1; i > 0; i -= 2) {
-	    l ^= roundFunc (r, keySchedule[i]);
-	    r ^= roundFunc (l, keySchedule[i - 1]);
-	}
+	for (i=0; i<8; i++)
+	    x = (x << 8) | (b[i] & 0xff);
+	return (x);
+    }
+
+    // Write a long as a block of 8 bytes.
+    private static void	unpack (long x, byte b[]) {
+	int i;
 	
-	for (i=0; i<4; i++) {
-	    plaintext[3 - i] = (byte) (r & 0xff);
-	    plaintext[7 - i] = (byte) (l & 0xff);
-	    
-	    r >>>= 8;
-	    l >>>= 8;
+	for (i=7; i>=0; i--) {
+	    b[i] = (byte) x;
+	    x >>>= 8;
 	}
     }
     
@@ -0,0 +1,100 @@
+package security;
+
+// Standard imports:
+import java.io.*;
+
+
+/**
+ * This class is the cipher suite that encrypts the frames
+ * with ICE in counter mode. The nonce of each frame is
+ * appended after the encrypted bytes. There is no check
+ * of integrity.
+ *
+ * @author Bjorn Husberg and Louise Tysk
+ * @version 1.0
+ * @see FrameCipher
+ */
+public class IceSuite extends CipherSuite {
+
+    /**
+     * The counter mode cipher
+     */
+    private FrameCipher cipher;
+
+
+    /**
+     * The constructor
+     *
+     * @param sessionKey the session key, the first
+     *        8 bytes are used
+     */
+    public IceSuite(byte[] sessionKey) {
+	IceKey key = new IceKey(0);
+	key.set(sessionKey);
+	cipher = new FrameCipher(key);
+    }
+
+
+    /**
+     * Gets the name of the suite
+     *
+     * @return the name
+     */
+    public String getName() {
+	return ICE;
+    }
+
+
+    /**
+     * Creates a stream that encrypts a frame with
+     * a new nonce
+     *
+     * @param out the stream to write the sealed frame to
+     * @return the stream to write the frame to
+     */
+    public OutputStream encrypt(OutputStream out) {
+	return new CipherOutputStream(out, cipher, cipher.newNonce());
+    }
+
+
+    /**
+     * Decrypts a sealed frame in parallel
+     *
+     * @param data the array holding the sealed frame
+     * @param off the position of the sealed frame
+     * @param len the length of the sealed frame
+     * @param dest the array to decrypt to, at least len bytes
+     * @return the length of the decrypted frame
+     * @throws IOException if the frame is too short
+     */
+    public int decrypt(byte[] data, int off, int len, byte[] dest)
+	throws IOException {
+	int size = len - FrameCipher.NONCESIZE;
+	if (size < 0) throw new IOException("Frame too short");
+	long nonce = 0;
+	for (int i = 0; i < FrameCipher.NONCESIZE; i++)
+	    nonce = (nonce << 8) | (data[off + size + i] & 0xff);
+	System.arraycopy(data, off, dest, 0, size);
+	cipher.process(dest, 0, size, nonce);
+	return size;
+    }
+
+
+    /**
+     * Encrypts and seals a whole array. The array is copied
+     * and the copy is encrypted in place in parallel, instead
+     * of a byte at a time through a stream.
+     *
+     * @param data the data to encrypt, which is not changed
+     * @return the sealed data
+     */
+    public byte[] encrypt(byte[] data) {
+	long nonce = cipher.newNonce();
+	byte[] sealed = new byte[data.length + FrameCipher.NONCESIZE];
+	System.arraycopy(data, 0, sealed, 0, data.length);
+	cipher.process(sealed, 0, data.length, nonce);
+	for (int i = 0; i < FrameCipher.NONCESIZE; i++)
+	    sealed[data.length + i] = (byte) (nonce >>> (56 - i * 8));
+	return sealed;
+    }
+}
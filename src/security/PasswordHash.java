@@ -73,5 +73,29 @@ public class PasswordHash {
 	}
 	return hash;
     }
+
+
+    /**
+     * This method derives a session key from the key of a
+     * login request and the password. Both sides of the
+     * login can do this but nobody else, and every login
+     * gets a new session key. It must be called before
+     * the key is passed to the hash method.
+     *
+     * @param key the key of the login request
+     * @param password the password
+     * @return a session key of 32 bytes
+     */
+    public static byte[] sessionKey (byte[] key, String password) throws AuthorizationException {
+	try {
+	    MessageDigest md = MessageDigest.getInstance("SHA-256");
+	    md.update("winv session key".getBytes());
+	    md.update(key);
+	    md.update(password.getBytes());
+	    return md.digest();
+	} catch(Exception e) {
+	    throw new AuthorizationException();
+	}
+    }
 }
 
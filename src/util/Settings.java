@@ -108,6 +108,14 @@ public class Settings {
 	setJPEGQuality(user, 0.6f);
 	setEncryptionStatus(user, false);
 	setDeltaStatus(user, false);	 
+	setRefineDelay(user, 2000);
+	setColorMode(user, 0);
+	setTargetBitrate(user, 0);
+	setTargetLatency(user, 0);
+	setTargetFPS(user, 0);
+	setCipherSuite(user, "aes-gcm");
+	setStreamStatus(user, false);
+	setCompressionStatus(user, false);
     }
     
     /**
@@ -196,4 +204,211 @@ public class Settings {
     public boolean getDeltaStatus(String user) throws IOException {
 	return Boolean.valueOf(getProperty(user, "delta")).booleanValue();
     }
+
+
+    /**
+     * This method is used to set the color mode for a user
+     *
+     * @param user the username
+     * @param value the color mode
+     * @see imageconversion.ImageConverter#COLOR24
+     */
+    public void setColorMode(String user, int value) throws IOException {
+	setProperty(user, "colorMode", String.valueOf(value));
+    }
+
+
+    /**
+     * This method is used to get the color mode for a user.
+     * Users added before the setting existed get full color.
+     *
+     * @param user the username
+     * @return value the color mode
+     * @see imageconversion.ImageConverter#COLOR24
+     */
+    public int getColorMode(String user) throws IOException {
+	String value = getProperty(user, "colorMode");
+	if (value == null) return 0;
+	return Integer.parseInt(value);
+    }
+
+
+    /**
+     * This method is used to set the target bitrate for a user
+     *
+     * @param user the username
+     * @param value the bitrate in kbit/s, zero if there is no target
+     */
+    public void setTargetBitrate(String user, int value) throws IOException {
+	setProperty(user, "targetBitrate", String.valueOf(value));
+    }
+
+
+    /**
+     * This method is used to get the target bitrate for a user.
+     * Users added before the setting existed get no target.
+     *
+     * @param user the username
+     * @return value the bitrate in kbit/s, zero if there is no target
+     */
+    public int getTargetBitrate(String user) throws IOException {
+	String value = getProperty(user, "targetBitrate");
+	if (value == null) return 0;
+	return Integer.parseInt(value);
+    }
+
+
+    /**
+     * This method is used to set the target latency for a user
+     *
+     * @param user the username
+     * @param value the latency in milliseconds, zero if there is no target
+     */
+    public void setTargetLatency(String user, int value) throws IOException {
+	setProperty(user, "targetLatency", String.valueOf(value));
+    }
+
+
+    /**
+     * This method is used to get the target latency for a user.
+     * Users added before the setting existed get no target.
+     *
+     * @param user the username
+     * @return value the latency in milliseconds, zero if there is no target
+     */
+    public int getTargetLatency(String user) throws IOException {
+	String value = getProperty(user, "targetLatency");
+	if (value == null) return 0;
+	return Integer.parseInt(value);
+    }
+
+
+    /**
+     * This method is used to set the target frame rate for a user
+     *
+     * @param user the username
+     * @param value the frames per second, zero if there is no target
+     */
+    public void setTargetFPS(String user, int value) throws IOException {
+	setProperty(user, "targetFPS", String.valueOf(value));
+    }
+
+
+    /**
+     * This method is used to get the target frame rate for a user.
+     * Users added before the setting existed get no target.
+     *
+     * @param user the username
+     * @return value the frames per second, zero if there is no target
+     */
+    public int getTargetFPS(String user) throws IOException {
+	String value = getProperty(user, "targetFPS");
+	if (value == null) return 0;
+	return Integer.parseInt(value);
+    }
+
+
+    /**
+     * This method is used to set how long a screen area must be
+     * unchanged before it is sent again losslessly for a user
+     *
+     * @param user the username
+     * @param value the time in milliseconds, zero disables refinement
+     */
+    public void setRefineDelay(String user, long value) throws IOException {
+	setProperty(user, "refineDelay", String.valueOf(value));
+    }
+
+
+    /**
+     * This method is used to get how long a screen area must be
+     * unchanged before it is sent again losslessly for a user.
+     * Users added before the setting existed get the default.
+     *
+     * @param user the username
+     * @return value the time in milliseconds, zero if refinement is disabled
+     */
+    public long getRefineDelay(String user) throws IOException {
+	String value = getProperty(user, "refineDelay");
+	if (value == null) return 2000;
+	return Long.parseLong(value);
+    }
+
+
+    /**
+     * This method is used to set the cipher suite that
+     * encrypts the images for a user
+     *
+     * @param user the username
+     * @param value the name of the suite, "aes-gcm" or "ice"
+     */
+    public void setCipherSuite(String user, String value) throws IOException {
+	setProperty(user, "cipherSuite", value);
+    }
+
+
+    /**
+     * This method is used to get the cipher suite that
+     * encrypts the images for a user. Users added before
+     * the setting existed get the default.
+     *
+     * @param user the username
+     * @return value the name of the suite
+     */
+    public String getCipherSuite(String user) throws IOException {
+	String value = getProperty(user, "cipherSuite");
+	if (value == null) return "aes-gcm";
+	return value;
+    }
+
+
+    /**
+     * This method is used to set if the images are pushed
+     * to a user over a stream instead of fetched by RMI
+     *
+     * @param user the username
+     * @param value true if the stream is used
+     */
+    public void setStreamStatus(String user, boolean value) throws IOException {
+	setProperty(user, "stream", new Boolean(value).toString());
+    }
+
+
+    /**
+     * This method is used to get if the images are pushed
+     * to a user over a stream instead of fetched by RMI.
+     * Users added before the setting existed don't use it.
+     *
+     * @param user the username
+     * @return value true if the stream is used
+     */
+    public boolean getStreamStatus(String user) throws IOException {
+	return Boolean.valueOf(getProperty(user, "stream")).booleanValue();
+    }
+
+
+    /**
+     * This method is used to set if the calls to the
+     * server of a user are compressed
+     *
+     * @param user the username
+     * @param value true if the calls are compressed
+     */
+    public void setCompressionStatus(String user, boolean value)
+	throws IOException {
+	setProperty(user, "compression", new Boolean(value).toString());
+    }
+
+
+    /**
+     * This method is used to get if the calls to the
+     * server of a user are compressed. Users added before
+     * the setting existed don't use it.
+     *
+     * @param user the username
+     * @return value true if the calls are compressed
+     */
+    public boolean getCompressionStatus(String user) throws IOException {
+	return Boolean.valueOf(getProperty(user, "compression")).booleanValue();
+    }
 }